@@ -0,0 +1,41 @@
+package assign11;
+
+/**
+ * An insert effect that changes stereo audio one block at a time.
+ * Effects allocate all of their buffers when they are created, so
+ * process can be used on a real-time audio thread.
+ *
+ * @version 2026-10-19
+ */
+public interface AudioEffect {
+
+	/**
+	 * Processes a block of audio in place.
+	 *
+	 * @param left - samples for the left channel
+	 * @param right - samples for the right channel
+	 * @param frames - number of frames to process
+	 */
+	void process(float[] left, float[] right, int frames);
+
+	/**
+	 * Clears any audio the effect is holding, such as delay lines or filter state.
+	 */
+	void reset();
+
+	/**
+	 * Creates a new effect with the same settings but no audio in it.
+	 * This lets the same settings be used by the real-time and offline
+	 * paths at the same time.
+	 *
+	 * @return a fresh copy of this effect
+	 */
+	AudioEffect copy();
+
+	/**
+	 * Gets a short name for the effect, used in CPU reports.
+	 *
+	 * @return name of the effect
+	 */
+	String getName();
+}
@@ -0,0 +1,30 @@
+package assign11;
+
+import java.io.IOException;
+
+/**
+ * Something that writes rendered audio to a file a block at a time,
+ * so a whole song never has to be held in memory.
+ *
+ * @version 2026-10-19
+ */
+public interface AudioFileWriter extends AutoCloseable {
+
+	/**
+	 * Writes a block of samples. Samples are clipped to the range -1 to 1.
+	 *
+	 * @param left - samples for the left channel
+	 * @param right - samples for the right channel
+	 * @param frames - number of frames to write, at most SoftwareSynthesizer.BLOCK_SIZE
+	 * @throws IOException if the file can't be written
+	 */
+	void write(float[] left, float[] right, int frames) throws IOException;
+
+	/**
+	 * Finishes writing the file.
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	@Override
+	void close() throws IOException;
+}
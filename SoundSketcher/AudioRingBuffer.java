@@ -0,0 +1,87 @@
+package assign11;
+
+/**
+ * A ring buffer of stereo audio that one thread writes and another thread reads,
+ * without locks. The audio thread writes every block it produces and never waits.
+ * A reader, such as the GUI, copies out the most recent frames whenever it wants
+ * them; if the writer overwrote them during the copy, the read reports failure
+ * and the reader simply tries again next time.
+ *
+ * @version 2026-10-19
+ */
+public class AudioRingBuffer {
+	private final float[] left, right;
+	private final int mask;
+	private volatile long written;
+
+	/**
+	 * Creates a ring buffer. The capacity is rounded up to a power of two.
+	 *
+	 * @param capacity - number of frames kept
+	 */
+	public AudioRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		left = new float[size];
+		right = new float[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Gets the number of frames the buffer keeps.
+	 *
+	 * @return capacity in frames
+	 */
+	public int getCapacity() {
+		return left.length;
+	}
+
+	/**
+	 * Appends a block of audio, overwriting the oldest frames.
+	 * Only one thread may write.
+	 *
+	 * @param blockLeft - samples for the left channel
+	 * @param blockRight - samples for the right channel
+	 * @param frames - number of frames to append
+	 */
+	public void write(float[] blockLeft, float[] blockRight, int frames) {
+		long position = written;
+		for(int i = 0; i < frames; i++) {
+			int slot = (int) ((position + i) & mask);
+			left[slot] = blockLeft[i];
+			right[slot] = blockRight[i];
+		}
+		written = position + frames;
+	}
+
+	/**
+	 * Gets the total number of frames ever written. This changes whenever
+	 * new audio arrives.
+	 *
+	 * @return number of frames written
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * Copies the most recent frames, oldest first.
+	 *
+	 * @param outLeft - receives samples for the left channel
+	 * @param outRight - receives samples for the right channel
+	 * @param frames - number of frames to copy, at most the capacity
+	 * @return true if the copy is complete and consistent
+	 */
+	public boolean readLatest(float[] outLeft, float[] outRight, int frames) {
+		long end = written;
+		if(end < frames || frames > left.length)
+			return false;
+		long start = end - frames;
+		for(int i = 0; i < frames; i++) {
+			int slot = (int) ((start + i) & mask);
+			outLeft[i] = left[slot];
+			outRight[i] = right[slot];
+		}
+		// If the writer lapped the frames being copied, they may be mixed up
+		return written - start <= left.length;
+	}
+}
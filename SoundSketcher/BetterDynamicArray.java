@@ -127,7 +127,7 @@ public class BetterDynamicArray<T> implements Iterable<T>{
 		for (int i = index; i < elementCount -1; i++ ) {
 			elements[i] = elements[i +1];
 		}
-		elements[elementCount] = null;
+		elements[elementCount - 1] = null;
 		elementCount--;
 	}
 	
@@ -141,7 +141,7 @@ public class BetterDynamicArray<T> implements Iterable<T>{
 		int indexAtValue = -1; 
 		for(int i = 0; i < elementCount; i++) {
 			if (elements[i].equals(value)) {
-				i = indexAtValue;
+				indexAtValue = i;
 				break;
 			}
 		}
@@ -166,7 +166,7 @@ public class BetterDynamicArray<T> implements Iterable<T>{
 	 * Comparable interface.
 	 */
 	public void sort() {
-		Arrays.sort((T[]) Arrays.copyOf(elements, elementCount));
+		Arrays.sort(elements, 0, elementCount);
 	}
 
 	@Override
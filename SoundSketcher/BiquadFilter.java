@@ -0,0 +1,103 @@
+package assign11;
+
+/**
+ * A second order filter using the common "audio EQ cookbook" formulas.
+ * It can be a low pass, high pass or band pass filter.
+ *
+ * @version 2026-10-19
+ */
+public class BiquadFilter implements AudioEffect {
+
+	/**
+	 * The shape of the filter.
+	 */
+	public enum Type {
+		LOW_PASS, HIGH_PASS, BAND_PASS
+	}
+
+	private final Type type;
+	private final float sampleRate, frequency, q;
+	private final float b0, b1, b2, a1, a2;
+	private float leftZ1, leftZ2, rightZ1, rightZ2;
+
+	/**
+	 * Creates a filter.
+	 *
+	 * @param type - shape of the filter
+	 * @param sampleRate - of the audio
+	 * @param frequency - cutoff or center frequency in Hz
+	 * @param q - resonance, 0.707 for no peak
+	 */
+	public BiquadFilter(Type type, float sampleRate, float frequency, float q) {
+		this.type = type;
+		this.sampleRate = sampleRate;
+		this.frequency = frequency;
+		this.q = q;
+
+		double w0 = 2.0 * Math.PI * Math.min(frequency, sampleRate * 0.49) / sampleRate;
+		double cos = Math.cos(w0);
+		double alpha = Math.sin(w0) / (2.0 * q);
+		double n0, n1, n2;
+		if(type == Type.LOW_PASS) {
+			n0 = (1 - cos) / 2;
+			n1 = 1 - cos;
+			n2 = (1 - cos) / 2;
+		} else if(type == Type.HIGH_PASS) {
+			n0 = (1 + cos) / 2;
+			n1 = -(1 + cos);
+			n2 = (1 + cos) / 2;
+		} else {
+			n0 = alpha;
+			n1 = 0;
+			n2 = -alpha;
+		}
+		double d0 = 1 + alpha;
+		b0 = (float) (n0 / d0);
+		b1 = (float) (n1 / d0);
+		b2 = (float) (n2 / d0);
+		a1 = (float) (-2 * cos / d0);
+		a2 = (float) ((1 - alpha) / d0);
+	}
+
+	@Override
+	public void process(float[] left, float[] right, int frames) {
+		// Transposed direct form II
+		float z1 = leftZ1, z2 = leftZ2;
+		for(int i = 0; i < frames; i++) {
+			float x = left[i];
+			float y = b0 * x + z1;
+			z1 = b1 * x - a1 * y + z2;
+			z2 = b2 * x - a2 * y;
+			left[i] = y;
+		}
+		leftZ1 = z1;
+		leftZ2 = z2;
+
+		z1 = rightZ1;
+		z2 = rightZ2;
+		for(int i = 0; i < frames; i++) {
+			float x = right[i];
+			float y = b0 * x + z1;
+			z1 = b1 * x - a1 * y + z2;
+			z2 = b2 * x - a2 * y;
+			right[i] = y;
+		}
+		rightZ1 = z1;
+		rightZ2 = z2;
+	}
+
+	@Override
+	public void reset() {
+		leftZ1 = leftZ2 = rightZ1 = rightZ2 = 0f;
+	}
+
+	@Override
+	public AudioEffect copy() {
+		return new BiquadFilter(type, sampleRate, frequency, q);
+	}
+
+	@Override
+	public String getName() {
+		return type.toString().toLowerCase().replace('_', ' ') + " " + Math.round(frequency) + " Hz";
+	}
+}
@@ -10,7 +10,7 @@ import javax.swing.JSpinner;
  */
 public class ChangeEvent extends AudioEvent{
 	private int value;
-	private SimpleSynthesizer simpleSynth;
+	private SynthesizerBackend simpleSynth;
 	
 	/**
 	 * The constructor for the ChangeEvent class. It takes the 3 parameters for the parents class and 
@@ -20,7 +20,7 @@ public class ChangeEvent extends AudioEvent{
 	 * @param channel is which layer the change occurs on.
 	 * @param value is how much it will change by.
 	 */
-	public ChangeEvent(int time, String type, int channel, int value, SimpleSynthesizer simpleSynth) {
+	public ChangeEvent(int time, String type, int channel, int value, SynthesizerBackend simpleSynth) {
 		super(time, type, channel);
 		this.value = value;
 		this.simpleSynth = simpleSynth;
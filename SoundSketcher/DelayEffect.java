@@ -0,0 +1,67 @@
+package assign11;
+
+import java.util.Arrays;
+
+/**
+ * A stereo echo. Each channel has a delay line whose output is fed back
+ * into its input, and the echoes are mixed with the original sound.
+ *
+ * @version 2026-10-19
+ */
+public class DelayEffect implements AudioEffect {
+	private final float sampleRate, seconds, feedback, mix;
+	private final float[] leftLine, rightLine;
+	private int position;
+
+	/**
+	 * Creates a delay.
+	 *
+	 * @param sampleRate - of the audio
+	 * @param seconds - time between echoes
+	 * @param feedback - how much of each echo is repeated, 0 to less than 1
+	 * @param mix - level of the echoes added to the original
+	 */
+	public DelayEffect(float sampleRate, float seconds, float feedback, float mix) {
+		this.sampleRate = sampleRate;
+		this.seconds = seconds;
+		this.feedback = Math.max(0f, Math.min(0.95f, feedback));
+		this.mix = mix;
+		int length = Math.max(1, Math.round(seconds * sampleRate));
+		leftLine = new float[length];
+		rightLine = new float[length];
+	}
+
+	@Override
+	public void process(float[] left, float[] right, int frames) {
+		int p = position;
+		int length = leftLine.length;
+		for(int i = 0; i < frames; i++) {
+			float delayedLeft = leftLine[p];
+			float delayedRight = rightLine[p];
+			leftLine[p] = left[i] + delayedLeft * feedback;
+			rightLine[p] = right[i] + delayedRight * feedback;
+			left[i] += delayedLeft * mix;
+			right[i] += delayedRight * mix;
+			if(++p == length)
+				p = 0;
+		}
+		position = p;
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(leftLine, 0f);
+		Arrays.fill(rightLine, 0f);
+		position = 0;
+	}
+
+	@Override
+	public AudioEffect copy() {
+		return new DelayEffect(sampleRate, seconds, feedback, mix);
+	}
+
+	@Override
+	public String getName() {
+		return "delay " + Math.round(seconds * 1000) + " ms";
+	}
+}
@@ -0,0 +1,492 @@
+package assign11;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A journal of the edits made to a song, kept in a file next to the song file
+ * so edits can be saved as they are made instead of rewriting the whole song.
+ *
+ * Every edit is one fixed size record: a sequence number, the kind of edit,
+ * the track, up to three values, and a checksum, so a record cut short by a
+ * crash is recognized and ignored. Records are collected in memory and
+ * appended to the journal by autosave, so saving costs as much as the edits
+ * since the last autosave. Compaction saves the whole song and drops the
+ * records it contains, keeping the journal short.
+ *
+ * Every save of the song has an id (see SongSnapshot). Before a song is saved,
+ * a BASE record with the save's id is appended: the song file written by that
+ * save contains every edit before the BASE record. When a song is loaded, the
+ * edits after the BASE record of the file's save id are replayed, so the
+ * journal can be recovered whether or not a crash happened during a save.
+ *
+ * Edits are recorded and autosave is called on the event dispatch thread; all
+ * file writes, including saves of the song, happen in order on the journal's
+ * own thread.
+ *
+ * @version 2026-10-19
+ */
+public class EditJournal implements Closeable {
+	// Kinds of records. Values are [a, b, c]; unused values are 0.
+	/** A note was added: [time, pitch, duration]. */
+	public static final int NOTE_ADDED = 1;
+	/** Notes were removed: [time, pitch]. */
+	public static final int NOTE_REMOVED = 2;
+	/** A track event was added to the song: [time, 0, duration]. */
+	public static final int TRACK_EVENT_ADDED = 3;
+	/** Track events were removed from the song: [time]. */
+	public static final int TRACK_EVENT_REMOVED = 4;
+	/** A track's length changed: [length]. */
+	public static final int TRACK_LENGTH = 5;
+	/** The song's length changed: [length]; the track is unused. */
+	public static final int SONG_LENGTH = 6;
+	/** A track's instrument changed: [instrument]. */
+	public static final int INSTRUMENT = 7;
+	/** A track's volume changed: [volume]. */
+	public static final int VOLUME = 8;
+	/** The tempo changed: [tempo]; the track is unused. */
+	public static final int TEMPO = 9;
+	/** A track was added at the end; its number is the track. */
+	public static final int TRACK_ADDED = 10;
+	/** A save started: [save id]; the track is unused. */
+	public static final int BASE = 11;
+
+	/** Number of journaled edits after which the song should be compacted. */
+	public static final int COMPACT_RECORDS = 10000;
+
+	private static final byte[] MAGIC = {'S', 'S', 'K', 'J'};
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 28;
+
+	private final File songFile;
+	private final Path path;
+	private final ExecutorService writer;
+	// Only used on the writer thread
+	private FileChannel channel;
+	// Only used on the event dispatch thread
+	private ByteBuffer pending;
+	private int nextSequence;
+	// Records in the journal since the last save
+	private volatile int recordCount;
+
+	/**
+	 * Opens the journal of a song file, keeping the edits in it if it
+	 * belongs to the given save of the song, or starting a new journal if not.
+	 *
+	 * @param songFile - the song file the journal belongs to
+	 * @param saveId - the id of the save that wrote the song file
+	 * @throws IOException if the journal can't be written
+	 */
+	public EditJournal(File songFile, int saveId) throws IOException {
+		this.songFile = songFile;
+		path = getJournalFile(songFile).toPath();
+		pending = ByteBuffer.allocate(RECORD_SIZE * 64);
+		writer = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "Edit journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		int[][] records = readRecords(path);
+		if(records != null && findBase(records, saveId) >= 0) {
+			nextSequence = records.length == 0 ? 0 : records[records.length - 1][0] + 1;
+			recordCount = records.length;
+			channel = FileChannel.open(path, StandardOpenOption.WRITE);
+			// Drop anything after the last whole record
+			channel.truncate(HEADER_SIZE + (long) RECORD_SIZE * records.length);
+			channel.position(channel.size());
+		} else {
+			rewrite(new int[0][]);
+			record(BASE, 0, saveId, 0, 0);
+			autosave();
+		}
+	}
+
+	/**
+	 * Gets the journal file of a song file.
+	 *
+	 * @param songFile - the song file
+	 * @return the journal file next to it
+	 */
+	public static File getJournalFile(File songFile) {
+		return new File(songFile.getPath() + ".journal");
+	}
+
+	/**
+	 * Gets the song file this journal belongs to.
+	 *
+	 * @return the song file
+	 */
+	public File getSongFile() {
+		return songFile;
+	}
+
+	/**
+	 * Records an edit. It is written to the journal by the next autosave.
+	 *
+	 * @param kind - the kind of edit, one of the record constants
+	 * @param track - the track that was edited
+	 * @param a - first value, see the record constants
+	 * @param b - second value
+	 * @param c - third value
+	 */
+	public void record(int kind, int track, int a, int b, int c) {
+		if(pending.remaining() < RECORD_SIZE) {
+			ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		int start = pending.position();
+		pending.putInt(nextSequence++).putInt(kind).putInt(track).putInt(a).putInt(b).putInt(c);
+		CRC32 crc = new CRC32();
+		crc.update(pending.array(), start, RECORD_SIZE - 4);
+		pending.putInt((int) crc.getValue());
+		recordCount++;
+	}
+
+	/**
+	 * Tells whether the journal has enough edits that the song should be compacted.
+	 *
+	 * @return true if compact should be called
+	 */
+	public boolean needsCompaction() {
+		return recordCount >= COMPACT_RECORDS;
+	}
+
+	/**
+	 * Appends the edits recorded since the last autosave to the journal and
+	 * forces them to the disk, in the background.
+	 */
+	public void autosave() {
+		if(pending.position() == 0)
+			return;
+		byte[] records = new byte[pending.position()];
+		pending.flip();
+		pending.get(records);
+		pending.clear();
+		writer.execute(() -> {
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(records);
+				while(buffer.hasRemaining())
+					channel.write(buffer);
+				channel.force(false);
+			} catch (IOException e) {
+				System.out.println("Couldn't autosave the edits");
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Marks the start of a save of the song. The snapshot must have been taken
+	 * just now, so it contains every edit recorded so far. Then the song is
+	 * saved with save or compact.
+	 *
+	 * @param snapshot - the snapshot that will be saved
+	 */
+	public void beginSave(SongSnapshot snapshot) {
+		record(BASE, 0, snapshot.saveId, 0, 0);
+		autosave();
+	}
+
+	/**
+	 * Saves the whole song, then drops the records it contains from the
+	 * journal. The save runs on the journal's thread after everything
+	 * autosaved so far, so saves never overlap. beginSave must have been
+	 * called with the snapshot.
+	 *
+	 * @param snapshot - the snapshot to save
+	 * @param listener - told how the save is going, and checked for cancellation
+	 * @throws IOException if the song can't be saved
+	 */
+	public void save(SongSnapshot snapshot, ProgressListener listener) throws IOException {
+		try {
+			writer.submit(() -> {
+				saveAndCompact(snapshot, listener);
+				return null;
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while saving");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException cause)
+				throw cause;
+			if(e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Saves the whole song in the background and then drops the records it
+	 * contains from the journal. The snapshot must have been taken just now.
+	 *
+	 * @param snapshot - the snapshot to save
+	 */
+	public void compact(SongSnapshot snapshot) {
+		beginSave(snapshot);
+		writer.execute(() -> {
+			try {
+				saveAndCompact(snapshot, ProgressListener.NONE);
+			} catch (IOException e) {
+				System.out.println("Couldn't compact the edits");
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Saves the song and rewrites the journal with only the records from the
+	 * save's BASE record on. Runs on the writer thread.
+	 *
+	 * @param snapshot - the snapshot to save
+	 * @param listener - told how the save is going
+	 * @throws IOException if the song or journal can't be written
+	 */
+	private void saveAndCompact(SongSnapshot snapshot, ProgressListener listener) throws IOException {
+		SongFiles.save(songFile, snapshot, listener);
+		int[][] records = readRecords(path);
+		int base = records == null ? -1 : findBase(records, snapshot.saveId);
+		if(base < 0)
+			return;
+		recordCount = records.length - base;
+		int[][] kept = new int[records.length - base][];
+		System.arraycopy(records, base, kept, 0, kept.length);
+		FileChannel old = channel;
+		rewrite(kept);
+		old.close();
+	}
+
+	/**
+	 * Autosaves the remaining edits and waits for everything to be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		autosave();
+		writer.execute(() -> {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Replays the journaled edits of a song that was just loaded: the edits
+	 * made after the save that wrote the song file. Nothing is replayed if
+	 * there is no journal or it belongs to another save.
+	 *
+	 * @param songFile - the song file that was loaded
+	 * @param saveId - the id of the save that wrote the song file
+	 * @param synthesizer - used by replayed events
+	 * @param tracks - the loaded tracks; tracks may be added
+	 * @param song - the loaded song panel
+	 * @param width - of added track panels
+	 * @param height - of added track panels
+	 * @return the replayed tempo, or -1 if the tempo wasn't changed
+	 */
+	public static int replay(File songFile, int saveId, SynthesizerBackend synthesizer,
+			BetterDynamicArray<TrackPanel> tracks, SongPanel song, int width, int height) {
+		int[][] records;
+		try {
+			records = readRecords(getJournalFile(songFile).toPath());
+		} catch (IOException e) {
+			System.out.println("Couldn't read the edit journal");
+			e.printStackTrace();
+			return -1;
+		}
+		int start = records == null ? -1 : findBase(records, saveId);
+		if(start < 0)
+			return -1;
+
+		// Event lists are only copied out of the panels that are edited
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		BetterDynamicArray<AudioEvent>[] trackEvents = new BetterDynamicArray[tracks.size() + records.length];
+		BetterDynamicArray<AudioEvent> songEvents = null;
+		int tempo = -1;
+		for(int i = start + 1; i < records.length; i++) {
+			int[] record = records[i];
+			int kind = record[1], track = record[2], a = record[3], b = record[4], c = record[5];
+			if(kind == TRACK_ADDED) {
+				tracks.add(new TrackPanel(width, height, tracks.size(), synthesizer));
+				continue;
+			} else if(kind == TEMPO) {
+				tempo = a;
+				continue;
+			} else if(kind == SONG_LENGTH) {
+				song.setLength(a);
+				continue;
+			} else if(kind == BASE || track < 0 || track >= tracks.size()) {
+				continue;
+			}
+			TrackPanel panel = tracks.get(track);
+			switch(kind) {
+			case NOTE_ADDED:
+			case NOTE_REMOVED:
+				if(trackEvents[track] == null)
+					trackEvents[track] = copyEvents(panel.getSequencer());
+				if(kind == NOTE_ADDED)
+					trackEvents[track].add(new NoteEvent(a, "Note", track, c, b, synthesizer));
+				else
+					removeEvents(trackEvents[track], NoteEvent.class, a, b);
+				break;
+			case TRACK_EVENT_ADDED:
+			case TRACK_EVENT_REMOVED:
+				if(songEvents == null)
+					songEvents = copyEvents(song.getSequencer());
+				if(kind == TRACK_EVENT_ADDED)
+					songEvents.add(new TrackEvent(a, "TrackEvent", track, c, panel.getSequencer()));
+				else
+					removeEvents(songEvents, TrackEvent.class, a, track);
+				break;
+			case TRACK_LENGTH:
+				panel.setLength(a);
+				break;
+			case INSTRUMENT:
+				panel.setInstrument(a);
+				break;
+			case VOLUME:
+				panel.setVolume(a);
+				break;
+			}
+		}
+		for(int i = 0; i < tracks.size(); i++)
+			if(trackEvents[i] != null)
+				tracks.get(i).setEvents(trackEvents[i]);
+		if(songEvents != null)
+			song.setEvents(songEvents);
+		return tempo;
+	}
+
+	/**
+	 * Copies the events of a sequencer.
+	 */
+	private static BetterDynamicArray<AudioEvent> copyEvents(SimpleSequencer sequencer) {
+		BetterDynamicArray<AudioEvent> events = new BetterDynamicArray<>();
+		for(AudioEvent event : sequencer.toArray())
+			events.add(event);
+		return events;
+	}
+
+	/**
+	 * Removes the events the editors remove for a clicked cell: notes at a
+	 * time and pitch, or track events at a time and track.
+	 *
+	 * @param events - to remove from
+	 * @param type - NoteEvent or TrackEvent
+	 * @param time - of the cell
+	 * @param row - pitch of a note, or the track of a track event
+	 */
+	private static void removeEvents(BetterDynamicArray<AudioEvent> events, Class<? extends AudioEvent> type, int time, int row) {
+		for(int i = events.size() - 1; i >= 0; i--) {
+			AudioEvent event = events.get(i);
+			if(!type.isInstance(event) || event.getTime() != time)
+				continue;
+			if(event instanceof NoteEvent note ? note.getPitch() == row : event.getChannel() == row)
+				events.remove(i);
+		}
+	}
+
+	/**
+	 * Finds the BASE record of a save.
+	 *
+	 * @param records - the journal's records
+	 * @param saveId - the save's id
+	 * @return the index of the last BASE record with the id, or -1 if there is none
+	 */
+	private static int findBase(int[][] records, int saveId) {
+		for(int i = records.length - 1; i >= 0; i--)
+			if(records[i][1] == BASE && records[i][3] == saveId)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Reads the whole records of a journal, stopping at the first damaged one.
+	 *
+	 * @param path - of the journal
+	 * @return the records, without their checksums, or null if there is no valid journal
+	 * @throws IOException if the journal can't be read
+	 */
+	private static int[][] readRecords(Path path) throws IOException {
+		if(!Files.exists(path))
+			return null;
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+		if(in.remaining() < HEADER_SIZE)
+			return null;
+		for(byte b : MAGIC)
+			if(in.get() != b)
+				return null;
+		if(in.getInt() != VERSION)
+			return null;
+		int[][] records = new int[in.remaining() / RECORD_SIZE][];
+		int count = 0;
+		CRC32 crc = new CRC32();
+		while(count < records.length) {
+			int start = in.position();
+			crc.reset();
+			crc.update(in.array(), start, RECORD_SIZE - 4);
+			int[] record = new int[6];
+			for(int i = 0; i < record.length; i++)
+				record[i] = in.getInt();
+			if(in.getInt() != (int) crc.getValue())
+				break;
+			// Sequence numbers only go up; anything else is left over from an old journal
+			if(count > 0 && record[0] <= records[count - 1][0])
+				break;
+			records[count++] = record;
+		}
+		int[][] valid = new int[count][];
+		System.arraycopy(records, 0, valid, 0, count);
+		return valid;
+	}
+
+	/**
+	 * Replaces the journal file with a header and the given records, and
+	 * opens it for appending.
+	 *
+	 * @param records - to keep, without their checksums
+	 * @throws IOException if the journal can't be written
+	 */
+	private void rewrite(int[][] records) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE * records.length);
+		out.put(MAGIC).putInt(VERSION);
+		CRC32 crc = new CRC32();
+		for(int[] record : records) {
+			int start = out.position();
+			for(int value : record)
+				out.putInt(value);
+			crc.reset();
+			crc.update(out.array(), start, RECORD_SIZE - 4);
+			out.putInt((int) crc.getValue());
+		}
+		out.flip();
+		SongFiles.writeAtomically(path.toFile(), target -> {
+			while(out.hasRemaining())
+				target.write(out);
+		});
+		channel = FileChannel.open(path, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+	}
+}
@@ -0,0 +1,174 @@
+package assign11;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A list of insert effects applied one after another to a block of audio.
+ * A chain can be attached to a mixer strip, to the master output of a mixer,
+ * to a frozen track or to the software synthesizer's output.
+ *
+ * The chain measures how long each of its effects takes, so expensive chains
+ * can be found. The times are totals since the last call to resetTimes.
+ * They are kept in atomic counters, so the GUI can read them while the audio
+ * thread is processing.
+ *
+ * @version 2026-10-19
+ */
+public class EffectChain {
+	public static final String[] PRESETS = {"None", "Low pass", "High pass", "Delay", "Reverb", "Delay and reverb"};
+
+	private final AudioEffect[] effects;
+	private final AtomicLongArray nanos;
+	private final AtomicLong blockCount = new AtomicLong();
+
+	/**
+	 * Creates a chain of effects, applied in the given order.
+	 *
+	 * @param effects - the effects in the chain
+	 */
+	public EffectChain(AudioEffect... effects) {
+		this.effects = effects.clone();
+		this.nanos = new AtomicLongArray(effects.length);
+	}
+
+	/**
+	 * Creates a chain from one of the names in PRESETS.
+	 * Unknown names give an empty chain.
+	 *
+	 * @param name - of the preset
+	 * @param sampleRate - of the audio the chain will process
+	 * @return a new chain
+	 */
+	public static EffectChain preset(String name, float sampleRate) {
+		if(name.equals("Low pass"))
+			return new EffectChain(new BiquadFilter(BiquadFilter.Type.LOW_PASS, sampleRate, 1200f, 0.707f));
+		if(name.equals("High pass"))
+			return new EffectChain(new BiquadFilter(BiquadFilter.Type.HIGH_PASS, sampleRate, 400f, 0.707f));
+		if(name.equals("Delay"))
+			return new EffectChain(new DelayEffect(sampleRate, 0.25f, 0.4f, 0.5f));
+		if(name.equals("Reverb"))
+			return new EffectChain(new ReverbEffect(sampleRate, 0.7f, 0.5f, 0.35f));
+		if(name.equals("Delay and reverb"))
+			return new EffectChain(new DelayEffect(sampleRate, 0.25f, 0.4f, 0.5f), new ReverbEffect(sampleRate, 0.7f, 0.5f, 0.35f));
+		return new EffectChain();
+	}
+
+	/**
+	 * Creates a chain with fresh copies of the same effects.
+	 *
+	 * @return a new chain with the same settings
+	 */
+	public EffectChain copy() {
+		AudioEffect[] copies = new AudioEffect[effects.length];
+		for(int i = 0; i < effects.length; i++)
+			copies[i] = effects[i].copy();
+		return new EffectChain(copies);
+	}
+
+	/**
+	 * Tells whether the chain has no effects.
+	 *
+	 * @return true if processing leaves audio unchanged
+	 */
+	public boolean isEmpty() {
+		return effects.length == 0;
+	}
+
+	/**
+	 * Runs a block through every effect in order, in place.
+	 *
+	 * @param left - samples for the left channel
+	 * @param right - samples for the right channel
+	 * @param frames - number of frames
+	 */
+	public void process(float[] left, float[] right, int frames) {
+		for(int i = 0; i < effects.length; i++) {
+			long start = System.nanoTime();
+			effects[i].process(left, right, frames);
+			nanos.addAndGet(i, System.nanoTime() - start);
+		}
+		blockCount.incrementAndGet();
+	}
+
+	/**
+	 * Clears the audio held by every effect.
+	 */
+	public void reset() {
+		for(AudioEffect effect : effects)
+			effect.reset();
+	}
+
+	/**
+	 * Gets the number of effects in the chain.
+	 *
+	 * @return number of effects
+	 */
+	public int getEffectCount() {
+		return effects.length;
+	}
+
+	/**
+	 * Gets an effect in the chain.
+	 *
+	 * @param index - of the effect
+	 * @return the effect
+	 */
+	public AudioEffect getEffect(int index) {
+		return effects[index];
+	}
+
+	/**
+	 * Gets the total time an effect has spent processing.
+	 *
+	 * @param index - of the effect
+	 * @return time in nanoseconds
+	 */
+	public long getEffectNanos(int index) {
+		return nanos.get(index);
+	}
+
+	/**
+	 * Gets the number of blocks processed.
+	 *
+	 * @return number of blocks
+	 */
+	public long getBlockCount() {
+		return blockCount.get();
+	}
+
+	/**
+	 * Sets all processing times back to zero.
+	 */
+	public void resetTimes() {
+		for(int i = 0; i < nanos.length(); i++)
+			nanos.set(i, 0);
+		blockCount.set(0);
+	}
+
+	/**
+	 * Describes the average time each effect takes per block.
+	 *
+	 * @return one line per effect
+	 */
+	public String getCpuReport() {
+		long blocks = blockCount.get();
+		String report = "";
+		for(int i = 0; i < effects.length; i++) {
+			double micros = blocks == 0 ? 0 : nanos.get(i) / 1000.0 / blocks;
+			report += effects[i].getName() + ": " + String.format("%.1f", micros) + " us/block\n";
+		}
+		return report;
+	}
+
+	/**
+	 * Describes the average time each effect takes per block, formatted
+	 * for a tool tip.
+	 *
+	 * @param title - first line of the tool tip
+	 * @return the report as HTML
+	 */
+	public String getCpuToolTip(String title) {
+		return "<html>" + title + "<br>" + getCpuReport().trim().replace("\n", "<br>") + "</html>";
+	}
+}
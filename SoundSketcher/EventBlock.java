@@ -0,0 +1,388 @@
+package assign11;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * The events of one track or of the song, stored by column: one array for
+ * the kind of every event, one for the times, one for the channels, and so on.
+ *
+ * In a binary song file each column is stored one after the other. Times are
+ * stored as the difference from the previous event's time, and every number
+ * is stored as a varint, so small numbers take one byte. Since events are
+ * mostly in time order, most times take a single byte.
+ *
+ * @version 2026-10-19
+ */
+public class EventBlock {
+	public static final byte NOTE = 0, CHANGE = 1, TRACK = 2;
+	private static final int COLUMNS = 6;
+
+	private final int count;
+	private final byte[] kinds;
+	private final int[] times, channels, names, values, durations;
+
+	/**
+	 * Creates an empty block with room for a number of events.
+	 *
+	 * @param count - number of events
+	 */
+	private EventBlock(int count) {
+		this.count = count;
+		kinds = new byte[count];
+		times = new int[count];
+		channels = new int[count];
+		names = new int[count];
+		values = new int[count];
+		durations = new int[count];
+	}
+
+	/**
+	 * Creates a block from events. Event names are looked up in, or added to,
+	 * a table of names shared by the whole file.
+	 *
+	 * @param events - to store
+	 * @param nameTable - maps names to their index in the file's names
+	 * @param nameList - the file's names in order
+	 * @return the block
+	 */
+	public static EventBlock of(AudioEvent[] events, HashMap<String, Integer> nameTable, BetterDynamicArray<String> nameList) {
+		EventBlock block = new EventBlock(events.length);
+		for(int i = 0; i < events.length; i++) {
+			AudioEvent event = events[i];
+			if(event instanceof NoteEvent note) {
+				block.kinds[i] = NOTE;
+				block.values[i] = note.getPitch();
+				block.durations[i] = note.getDuration();
+			} else if(event instanceof ChangeEvent change) {
+				block.kinds[i] = CHANGE;
+				block.values[i] = change.getValue();
+			} else if(event instanceof TrackEvent track) {
+				block.kinds[i] = TRACK;
+				block.durations[i] = track.getDuration();
+			}
+			block.times[i] = event.getTime();
+			block.channels[i] = event.getChannel();
+			Integer index = nameTable.get(event.getName());
+			if(index == null) {
+				index = nameList.size();
+				nameTable.put(event.getName(), index);
+				nameList.add(event.getName());
+			}
+			block.names[i] = index;
+		}
+		return block;
+	}
+
+	/**
+	 * Gets the number of events.
+	 *
+	 * @return number of events
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Adds a number to the channel of every note and change event. Song
+	 * archives store a track's channels relative to the track's number, so
+	 * identical tracks encode to the same bytes.
+	 *
+	 * @param offset - added to each channel
+	 */
+	public void offsetChannels(int offset) {
+		for(int i = 0; i < count; i++)
+			if(kinds[i] != TRACK)
+				channels[i] += offset;
+	}
+
+	/**
+	 * Encodes the block. The block starts with the byte length of every
+	 * column, so a reader can find each column without decoding the ones
+	 * before it.
+	 *
+	 * @return the encoded block
+	 */
+	public byte[] encode() {
+		byte[][] columns = new byte[COLUMNS][];
+		columns[0] = kinds.clone();
+		columns[1] = encodeColumn(times, true);
+		columns[2] = encodeColumn(channels, false);
+		columns[3] = encodeColumn(names, false);
+		columns[4] = encodeColumn(values, false);
+		columns[5] = encodeColumn(durations, false);
+
+		int total = COLUMNS * 4;
+		for(byte[] column : columns)
+			total += column.length;
+		ByteBuffer out = ByteBuffer.allocate(total).order(SongBinaryFormat.BYTE_ORDER);
+		for(byte[] column : columns)
+			out.putInt(column.length);
+		for(byte[] column : columns)
+			out.put(column);
+		return out.array();
+	}
+
+	/**
+	 * Decodes a block. The buffer's position must be at the start of the
+	 * block, and is left at the end of it.
+	 *
+	 * @param in - the encoded block
+	 * @param count - number of events in the block
+	 * @return the block
+	 * @throws IllegalArgumentException if the block is damaged
+	 */
+	public static EventBlock decode(ByteBuffer in, int count) {
+		EventBlock block = new EventBlock(count);
+		int[] lengths = new int[COLUMNS];
+		for(int c = 0; c < COLUMNS; c++)
+			lengths[c] = in.getInt();
+		if(lengths[0] != count)
+			throw new IllegalArgumentException("Damaged event block");
+		in.get(block.kinds);
+		decodeColumn(in, lengths[1], block.times, true);
+		decodeColumn(in, lengths[2], block.channels, false);
+		decodeColumn(in, lengths[3], block.names, false);
+		decodeColumn(in, lengths[4], block.values, false);
+		decodeColumn(in, lengths[5], block.durations, false);
+		return block;
+	}
+
+	/**
+	 * Creates the events in the block.
+	 *
+	 * @param nameList - the file's names
+	 * @param synthesizer - for note and change events
+	 * @param tracks - the song's tracks, for track events, or null to create track events without a sequencer
+	 * @return the events, in the order they were stored
+	 * @throws IllegalArgumentException if an event refers to a missing name or track
+	 */
+	public BetterDynamicArray<AudioEvent> toEvents(String[] nameList, SynthesizerBackend synthesizer, BetterDynamicArray<TrackPanel> tracks) {
+		BetterDynamicArray<AudioEvent> events = new BetterDynamicArray<>();
+		for(int i = 0; i < count; i++)
+			events.add(createEvent(kinds[i], times[i], channels[i], names[i], values[i], durations[i], nameList, synthesizer, tracks));
+		return events;
+	}
+
+	/**
+	 * Creates one event from its stored numbers.
+	 *
+	 * @param tracks - the song's tracks, for track events, or null to create track events without a sequencer
+	 * @throws IllegalArgumentException if the event refers to a missing name or track
+	 */
+	private static AudioEvent createEvent(byte kind, int time, int channel, int name, int value, int duration,
+			String[] nameList, SynthesizerBackend synthesizer, BetterDynamicArray<TrackPanel> tracks) {
+		if(name < 0 || name >= nameList.length)
+			throw new IllegalArgumentException("Damaged event block");
+		switch(kind) {
+		case NOTE:
+			return new NoteEvent(time, nameList[name], channel, duration, value, synthesizer);
+		case CHANGE:
+			return new ChangeEvent(time, nameList[name], channel, value, synthesizer);
+		case TRACK:
+			if(tracks == null)
+				return new TrackEvent(time, nameList[name], channel, duration, null);
+			if(channel < 0 || channel >= tracks.size())
+				throw new IllegalArgumentException("Track event for a missing track");
+			return new TrackEvent(time, nameList[name], channel, duration, tracks.get(channel).getSequencer());
+		default:
+			throw new IllegalArgumentException("Unknown event kind " + kind);
+		}
+	}
+
+	/**
+	 * Starts reading the events of an encoded block one at a time, without
+	 * decoding whole columns first. The buffer's position must be at the
+	 * start of the block; it isn't changed.
+	 *
+	 * @param in - the encoded block
+	 * @param count - number of events in the block
+	 * @return a reader at the first event
+	 * @throws IllegalArgumentException if the block is damaged
+	 */
+	public static Reader reader(ByteBuffer in, int count) {
+		return new Reader(in, count);
+	}
+
+	/**
+	 * Reads the events of an encoded block one at a time, in the order they
+	 * were stored, keeping a position in each column.
+	 */
+	public static class Reader {
+		private final ByteBuffer in;
+		private final int count;
+		// Where each column starts, and where the next number of each column is
+		private final int[] starts = new int[COLUMNS + 1];
+		private final int[] positions = new int[COLUMNS];
+		private int read;
+		private int nextTime;
+
+		private Reader(ByteBuffer in, int count) {
+			this.in = in;
+			this.count = count;
+			try {
+				starts[0] = in.position() + COLUMNS * 4;
+				for(int c = 0; c < COLUMNS; c++) {
+					int length = in.getInt(in.position() + c * 4);
+					if(length < 0)
+						throw new IllegalArgumentException("Damaged event block");
+					starts[c + 1] = starts[c] + length;
+				}
+				if(starts[1] - starts[0] != count || starts[COLUMNS] > in.limit() || starts[COLUMNS] < 0)
+					throw new IllegalArgumentException("Damaged event block");
+				System.arraycopy(starts, 0, positions, 0, COLUMNS);
+				if(count > 0)
+					nextTime = readNumber(1);
+			} catch (IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Damaged event block", e);
+			}
+		}
+
+		/**
+		 * Tells whether there are events left to read.
+		 *
+		 * @return true if next can be called
+		 */
+		public boolean hasNext() {
+			return read < count;
+		}
+
+		/**
+		 * Gets the time of the next event without reading it.
+		 *
+		 * @return the time of the next event
+		 */
+		public int peekTime() {
+			return nextTime;
+		}
+
+		/**
+		 * Reads the next event.
+		 *
+		 * @param nameList - the file's names
+		 * @param synthesizer - for note and change events
+		 * @return the event; track events have no sequencer
+		 * @throws IllegalArgumentException if the event is damaged or refers to a missing name
+		 */
+		public AudioEvent next(String[] nameList, SynthesizerBackend synthesizer) {
+			try {
+				byte kind = in.get(positions[0]++);
+				int time = nextTime;
+				AudioEvent event = createEvent(kind, time, readNumber(2), readNumber(3), readNumber(4), readNumber(5),
+						nameList, synthesizer, null);
+				if(++read < count) {
+					nextTime = time + readNumber(1);
+				} else {
+					for(int c = 0; c < COLUMNS; c++)
+						if(positions[c] != starts[c + 1])
+							throw new IllegalArgumentException("Damaged event block");
+				}
+				return event;
+			} catch (IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Damaged event block", e);
+			}
+		}
+
+		/**
+		 * Checks, without reading any events, whether the events that are
+		 * left are stored in time order.
+		 *
+		 * @return true if no event is earlier than the one before it
+		 * @throws IllegalArgumentException if the times are damaged
+		 */
+		public boolean isTimeOrdered() {
+			int position = positions[1];
+			try {
+				for(int i = read + 1; i < count; i++) {
+					int bits = 0;
+					int shift = 0;
+					byte b;
+					do {
+						b = in.get(position++);
+						bits |= (b & 0x7F) << shift;
+						shift += 7;
+					} while(b < 0 && shift < 35);
+					if((bits & 1) != 0)
+						return false;
+				}
+			} catch (IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Damaged event block", e);
+			}
+			return true;
+		}
+
+		/**
+		 * Reads the next zigzag varint of a column.
+		 */
+		private int readNumber(int column) {
+			int bits = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in.get(positions[column]++);
+				bits |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0 && shift < 35);
+			if(positions[column] > starts[column + 1])
+				throw new IllegalArgumentException("Damaged event block");
+			return (bits >>> 1) ^ -(bits & 1);
+		}
+	}
+
+	/**
+	 * Encodes a column of numbers as zigzag varints.
+	 *
+	 * @param column - the numbers
+	 * @param delta - true to store each number as the difference from the one before
+	 * @return the encoded column
+	 */
+	private static byte[] encodeColumn(int[] column, boolean delta) {
+		byte[] out = new byte[column.length * 5];
+		int position = 0;
+		int previous = 0;
+		for(int value : column) {
+			int stored = delta ? value - previous : value;
+			previous = value;
+			int bits = (stored << 1) ^ (stored >> 31);
+			while((bits & ~0x7F) != 0) {
+				out[position++] = (byte) ((bits & 0x7F) | 0x80);
+				bits >>>= 7;
+			}
+			out[position++] = (byte) bits;
+		}
+		byte[] result = new byte[position];
+		System.arraycopy(out, 0, result, 0, position);
+		return result;
+	}
+
+	/**
+	 * Decodes a column of zigzag varints.
+	 *
+	 * @param in - positioned at the start of the column
+	 * @param length - byte length of the column
+	 * @param column - receives the numbers
+	 * @param delta - true if each number is stored as the difference from the one before
+	 * @throws IllegalArgumentException if the column doesn't have the right length
+	 */
+	private static void decodeColumn(ByteBuffer in, int length, int[] column, boolean delta) {
+		int end = in.position() + length;
+		int previous = 0;
+		for(int i = 0; i < column.length; i++) {
+			int bits = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in.get();
+				bits |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0 && shift < 35);
+			int value = (bits >>> 1) ^ -(bits & 1);
+			if(delta)
+				value += previous;
+			previous = value;
+			column[i] = value;
+		}
+		if(in.position() != end)
+			throw new IllegalArgumentException("Damaged event block");
+	}
+}
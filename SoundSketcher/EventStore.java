@@ -0,0 +1,566 @@
+package assign11;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The events of a sequence, kept sorted by AudioEvent.compareTo.
+ *
+ * The events are stored in chunks of at most MAX_CHUNK events, in order, and
+ * a Fenwick tree holds the size of every chunk. An event is found by index or
+ * by time with a binary search over the chunks, so adding or removing one
+ * only moves the events of its own chunk instead of every later event. A
+ * chunk is split when it fills up, and merged with the next one when it gets
+ * small, so the cost of an edit stays logarithmic in the number of events
+ * plus the size of one chunk. Events that start in a range of times are
+ * removed together in one pass.
+ *
+ * The events that have a row, the pitch of a note or the track of a track
+ * event, are also kept in one smaller store per row, and every store counts
+ * the durations of its events. The events covering a time in some rows are
+ * then found by looking back only as far as the longest event of each of
+ * those rows, which stays right as events are removed, instead of as far as
+ * the longest event of the sequence ever was.
+ *
+ * @version 2026-10-19
+ */
+public class EventStore implements Iterable<AudioEvent> {
+	private static final int MAX_CHUNK = 512;
+	// A chunk this small is merged with the next one if they fit in half a chunk
+	private static final int MIN_CHUNK = MAX_CHUNK / 4;
+
+	/**
+	 * A run of consecutive events.
+	 */
+	private static class Chunk {
+		final AudioEvent[] events = new AudioEvent[MAX_CHUNK];
+		int size;
+
+		AudioEvent last() {
+			return events[size - 1];
+		}
+	}
+
+	private final ArrayList<Chunk> chunks = new ArrayList<>();
+	// Fenwick tree of chunk sizes, 1-based
+	private int[] tree = new int[1];
+	private int size;
+	// How many events have each duration
+	private final TreeMap<Integer, Integer> durations = new TreeMap<>();
+	// The events of each row, or null in the store of a row
+	private final TreeMap<Integer, EventStore> rows;
+
+	/**
+	 * Creates an empty store.
+	 */
+	public EventStore() {
+		this(true);
+	}
+
+	/**
+	 * Creates an empty store, which keeps its events by row too or is the
+	 * store of a row.
+	 *
+	 * @param byRow - true to keep the events by row too
+	 */
+	private EventStore(boolean byRow) {
+		rows = byRow ? new TreeMap<>() : null;
+	}
+
+	/**
+	 * Creates a store holding events, sorted. The events are sorted with
+	 * Arrays.sort, which keeps equal events in the order they were given.
+	 *
+	 * @param events - to store
+	 * @return the store
+	 */
+	public static EventStore of(BetterDynamicArray<AudioEvent> events) {
+		AudioEvent[] sorted = new AudioEvent[events.size()];
+		for(int i = 0; i < sorted.length; i++)
+			sorted[i] = events.get(i);
+		Arrays.sort(sorted);
+		EventStore store = new EventStore();
+		store.fill(sorted);
+		// Each row is filled from the sorted events, so it needs no sorting
+		TreeMap<Integer, BetterDynamicArray<AudioEvent>> rowEvents = new TreeMap<>();
+		for(AudioEvent event : sorted) {
+			Integer row = rowOf(event);
+			if(row != null)
+				rowEvents.computeIfAbsent(row, key -> new BetterDynamicArray<>()).add(event);
+		}
+		for(Integer row : rowEvents.keySet()) {
+			BetterDynamicArray<AudioEvent> inRow = rowEvents.get(row);
+			AudioEvent[] array = new AudioEvent[inRow.size()];
+			for(int i = 0; i < array.length; i++)
+				array[i] = inRow.get(i);
+			EventStore rowStore = new EventStore(false);
+			rowStore.fill(array);
+			store.rows.put(row, rowStore);
+		}
+		return store;
+	}
+
+	/**
+	 * Fills an empty store with sorted events.
+	 *
+	 * @param sorted - the events, in order
+	 */
+	private void fill(AudioEvent[] sorted) {
+		// Chunks start half full, so adding events doesn't split them right away
+		for(int start = 0; start < sorted.length; start += MAX_CHUNK / 2) {
+			Chunk chunk = new Chunk();
+			chunk.size = Math.min(MAX_CHUNK / 2, sorted.length - start);
+			System.arraycopy(sorted, start, chunk.events, 0, chunk.size);
+			chunks.add(chunk);
+		}
+		for(AudioEvent event : sorted)
+			countDuration(event, 1);
+		size = sorted.length;
+		rebuildTree();
+	}
+
+	/**
+	 * Gets the number of events.
+	 *
+	 * @return number of events
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets an event by its position in the sorted order.
+	 *
+	 * @param index - of the event
+	 * @return the event
+	 * @throws IndexOutOfBoundsException if there is no such event
+	 */
+	public AudioEvent get(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException();
+		// Walk down the Fenwick tree to the chunk holding the index
+		int chunk = 0;
+		for(int step = Integer.highestOneBit(chunks.size()); step > 0; step >>= 1) {
+			if(chunk + step <= chunks.size() && tree[chunk + step] <= index) {
+				chunk += step;
+				index -= tree[chunk];
+			}
+		}
+		return chunks.get(chunk).events[index];
+	}
+
+	/**
+	 * Adds an event after the events that sort before or with it.
+	 *
+	 * @param event - to add
+	 */
+	public void add(AudioEvent event) {
+		countDuration(event, 1);
+		Integer row = rows != null ? rowOf(event) : null;
+		if(row != null)
+			rows.computeIfAbsent(row, key -> new EventStore(false)).add(event);
+		if(chunks.isEmpty()) {
+			chunks.add(new Chunk());
+			rebuildTree();
+		}
+		// The first chunk ending after the event, or the last chunk
+		int low = 0, high = chunks.size() - 1;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(chunks.get(middle).last().compareTo(event) <= 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		Chunk chunk = chunks.get(low);
+		int position = upperBound(chunk, event);
+		System.arraycopy(chunk.events, position, chunk.events, position + 1, chunk.size - position);
+		chunk.events[position] = event;
+		chunk.size++;
+		size++;
+		if(chunk.size < MAX_CHUNK) {
+			updateTree(low, 1);
+			return;
+		}
+		Chunk upper = new Chunk();
+		upper.size = MAX_CHUNK / 2;
+		chunk.size -= upper.size;
+		System.arraycopy(chunk.events, chunk.size, upper.events, 0, upper.size);
+		Arrays.fill(chunk.events, chunk.size, MAX_CHUNK, null);
+		chunks.add(low + 1, upper);
+		rebuildTree();
+	}
+
+	/**
+	 * Removes an event. Events don't override equals, so this is the event
+	 * itself, which is found by binary search among the events that sort
+	 * with it.
+	 *
+	 * @param event - to remove
+	 * @return true if the event was removed, false if it isn't stored
+	 */
+	public boolean remove(AudioEvent event) {
+		// The first chunk whose last event doesn't sort before the event
+		int low = 0, high = chunks.size();
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(chunks.get(middle).last().compareTo(event) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		for(int c = low; c < chunks.size(); c++) {
+			Chunk chunk = chunks.get(c);
+			for(int i = c == low ? lowerBound(chunk, event) : 0; i < chunk.size; i++) {
+				if(chunk.events[i] == event) {
+					System.arraycopy(chunk.events, i + 1, chunk.events, i, chunk.size - i - 1);
+					chunk.events[--chunk.size] = null;
+					size--;
+					updateTree(c, -1);
+					if(chunk.size < MIN_CHUNK)
+						compact(c, c);
+					countDuration(event, -1);
+					Integer row = rows != null ? rowOf(event) : null;
+					if(row != null) {
+						EventStore rowStore = rows.get(row);
+						rowStore.remove(event);
+						if(rowStore.size == 0)
+							rows.remove(row);
+					}
+					return true;
+				}
+				if(chunk.events[i].compareTo(event) != 0)
+					return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the events that start between two times and pass a test,
+	 * in one pass over those events.
+	 *
+	 * @param fromTime - earliest start of the events to remove
+	 * @param toTime - latest start of the events to remove
+	 * @param test - true for the events to remove
+	 * @return the removed events, in order
+	 */
+	public BetterDynamicArray<AudioEvent> removeStartingBetween(int fromTime, int toTime, Predicate<AudioEvent> test) {
+		BetterDynamicArray<AudioEvent> removed = new BetterDynamicArray<>();
+		int first = firstChunkAt(fromTime);
+		int last = first;
+		for(int c = first; c < chunks.size(); c++) {
+			Chunk chunk = chunks.get(c);
+			if(chunk.events[0].getTime() > toTime)
+				break;
+			last = c;
+			int kept = 0;
+			for(int i = 0; i < chunk.size; i++) {
+				AudioEvent event = chunk.events[i];
+				if(event.getTime() >= fromTime && event.getTime() <= toTime && test.test(event))
+					removed.add(event);
+				else
+					chunk.events[kept++] = event;
+			}
+			if(kept < chunk.size) {
+				Arrays.fill(chunk.events, kept, chunk.size, null);
+				updateTree(c, kept - chunk.size);
+				size -= chunk.size - kept;
+				chunk.size = kept;
+			}
+		}
+		if(removed.size() == 0)
+			return removed;
+		compact(first, last);
+		Set<AudioEvent> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Integer> touched = new HashSet<>();
+		for(AudioEvent event : removed) {
+			countDuration(event, -1);
+			Integer row = rows != null ? rowOf(event) : null;
+			if(row != null) {
+				gone.add(event);
+				touched.add(row);
+			}
+		}
+		for(Integer row : touched) {
+			EventStore rowStore = rows.get(row);
+			rowStore.removeStartingBetween(fromTime, toTime, gone::contains);
+			if(rowStore.size == 0)
+				rows.remove(row);
+		}
+		return removed;
+	}
+
+	/**
+	 * Finds the first event that starts at or after a time.
+	 *
+	 * @param time - in tics
+	 * @return index of the event, or the number of events if there is none
+	 */
+	public int firstAt(int time) {
+		int chunk = firstChunkAt(time);
+		if(chunk == chunks.size())
+			return size;
+		Chunk found = chunks.get(chunk);
+		int low = 0, high = found.size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(found.events[middle].getTime() < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return startOf(chunk) + low;
+	}
+
+	/**
+	 * Removes every event.
+	 */
+	public void clear() {
+		chunks.clear();
+		size = 0;
+		durations.clear();
+		if(rows != null)
+			rows.clear();
+		rebuildTree();
+	}
+
+	/**
+	 * Gets the longest duration of the events.
+	 *
+	 * @return duration in tics, or 0 if there are no events
+	 */
+	public int getLongestDuration() {
+		return durations.isEmpty() ? 0 : durations.lastKey();
+	}
+
+	/**
+	 * Calls an action with each event in a range of rows that covers part
+	 * of a range of times. The rows are visited in order, and the events of
+	 * each row in time order. Events that have no row are not visited.
+	 *
+	 * @param fromTime - first tic of the range
+	 * @param toTime - last tic of the range
+	 * @param firstRow - lowest row of the range
+	 * @param lastRow - highest row of the range
+	 * @param action - called with each event
+	 */
+	public void forEachBetween(int fromTime, int toTime, int firstRow, int lastRow, Consumer<AudioEvent> action) {
+		if(rows == null || firstRow > lastRow)
+			return;
+		for(EventStore rowStore : rows.subMap(firstRow, true, lastRow, true).values())
+			rowStore.forEachBetween(fromTime, toTime, action);
+	}
+
+	/**
+	 * Calls an action with each event that covers part of a range of times,
+	 * in time order. Only the events starting from the longest duration
+	 * before the range are looked at.
+	 *
+	 * @param fromTime - first tic of the range
+	 * @param toTime - last tic of the range
+	 * @param action - called with each event
+	 */
+	private void forEachBetween(int fromTime, int toTime, Consumer<AudioEvent> action) {
+		int earliest = fromTime - getLongestDuration();
+		for(int c = firstChunkAt(earliest); c < chunks.size(); c++) {
+			Chunk chunk = chunks.get(c);
+			for(int i = 0; i < chunk.size; i++) {
+				AudioEvent event = chunk.events[i];
+				if(event.getTime() > toTime)
+					return;
+				if(event.getTime() + Math.max(1, durationOf(event)) > fromTime)
+					action.accept(event);
+			}
+		}
+	}
+
+	/**
+	 * Gets how many tics an event lasts.
+	 *
+	 * @param event - a note or track event, or a change that lasts no time
+	 * @return the duration
+	 */
+	static int durationOf(AudioEvent event) {
+		if(event instanceof NoteEvent note)
+			return note.getDuration();
+		if(event instanceof TrackEvent track)
+			return track.getDuration();
+		return 0;
+	}
+
+	/**
+	 * Gets the row an event is shown in.
+	 *
+	 * @param event - any event
+	 * @return the pitch of a note, the track of a track event, or null for other events
+	 */
+	private static Integer rowOf(AudioEvent event) {
+		if(event instanceof NoteEvent note)
+			return note.getPitch();
+		if(event instanceof TrackEvent track)
+			return track.getChannel();
+		return null;
+	}
+
+	/**
+	 * Counts an event's duration in or out of the durations of the store.
+	 *
+	 * @param event - added or removed
+	 * @param change - 1 if it was added, -1 if it was removed
+	 */
+	private void countDuration(AudioEvent event, int change) {
+		durations.merge(durationOf(event), change, (count, delta) -> count + delta == 0 ? null : count + delta);
+	}
+
+	/**
+	 * Iterates over the events in order, a chunk at a time.
+	 *
+	 * @return an iterator over the events
+	 */
+	@Override
+	public Iterator<AudioEvent> iterator() {
+		return new Iterator<AudioEvent>() {
+			private int chunk, index;
+
+			@Override
+			public boolean hasNext() {
+				return chunk < chunks.size() && index < chunks.get(chunk).size;
+			}
+
+			@Override
+			public AudioEvent next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				Chunk current = chunks.get(chunk);
+				AudioEvent event = current.events[index++];
+				if(index == current.size) {
+					chunk++;
+					index = 0;
+				}
+				return event;
+			}
+		};
+	}
+
+	/**
+	 * Finds the first chunk whose last event starts at or after a time.
+	 *
+	 * @param time - in tics
+	 * @return index of the chunk, or the number of chunks if there is none
+	 */
+	private int firstChunkAt(int time) {
+		int low = 0, high = chunks.size();
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(chunks.get(middle).last().getTime() < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Finds where an event goes in a chunk, after the events that sort before or with it.
+	 */
+	private static int upperBound(Chunk chunk, AudioEvent event) {
+		int low = 0, high = chunk.size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(chunk.events[middle].compareTo(event) <= 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first event in a chunk that doesn't sort before an event.
+	 */
+	private static int lowerBound(Chunk chunk, AudioEvent event) {
+		int low = 0, high = chunk.size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(chunk.events[middle].compareTo(event) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the number of events in the chunks before a chunk.
+	 *
+	 * @param chunk - index of the chunk
+	 * @return index of the chunk's first event
+	 */
+	private int startOf(int chunk) {
+		int start = 0;
+		for(int i = chunk; i > 0; i -= i & -i)
+			start += tree[i];
+		return start;
+	}
+
+	/**
+	 * Changes the size of a chunk in the Fenwick tree.
+	 *
+	 * @param chunk - index of the chunk
+	 * @param change - number of events added, or minus the number removed
+	 */
+	private void updateTree(int chunk, int change) {
+		for(int i = chunk + 1; i < tree.length; i += i & -i)
+			tree[i] += change;
+	}
+
+	/**
+	 * Builds the Fenwick tree again after chunks were added or removed.
+	 */
+	private void rebuildTree() {
+		tree = new int[chunks.size() + 1];
+		for(int i = 1; i < tree.length; i++) {
+			tree[i] += chunks.get(i - 1).size;
+			int parent = i + (i & -i);
+			if(parent < tree.length)
+				tree[parent] += tree[i];
+		}
+	}
+
+	/**
+	 * Removes the empty chunks in a range of chunks, and merges the small
+	 * ones with the chunk after them, so lookups never meet an empty chunk
+	 * and the number of chunks stays in proportion to the number of events.
+	 *
+	 * @param first - index of the first chunk that lost events
+	 * @param last - index of the last chunk that lost events
+	 */
+	private void compact(int first, int last) {
+		boolean changed = false;
+		for(int c = Math.min(last, chunks.size() - 1); c >= first; c--) {
+			Chunk chunk = chunks.get(c);
+			if(chunk.size == 0) {
+				chunks.remove(c);
+				changed = true;
+			} else if(chunk.size < MIN_CHUNK && c + 1 < chunks.size() && chunk.size + chunks.get(c + 1).size <= MAX_CHUNK / 2) {
+				Chunk next = chunks.get(c + 1);
+				System.arraycopy(next.events, 0, chunk.events, chunk.size, next.size);
+				chunk.size += next.size;
+				chunks.remove(c + 1);
+				changed = true;
+			}
+		}
+		if(changed)
+			rebuildTree();
+	}
+}
@@ -0,0 +1,601 @@
+package assign11;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes 16 bit stereo audio to a FLAC file a block at a time.
+ *
+ * The audio is cut into frames of FRAME_SIZE samples. Every frame is coded on
+ * its own: each channel is predicted with the best of FLAC's fixed linear
+ * predictors and the prediction errors are Rice coded, and the frame uses
+ * whichever of left/right, left/side, right/side or mid/side is smallest.
+ * Since frames don't depend on each other, they are encoded in parallel on
+ * a pool of threads while the caller keeps rendering. Only a few frames per
+ * thread are in flight at a time and finished frames are written in order,
+ * so memory use stays the same however long the song is.
+ *
+ * @version 2026-10-19
+ */
+public class FlacWriter implements AudioFileWriter {
+	public static final int FRAME_SIZE = 4096;
+
+	private static final int BITS_PER_SAMPLE = 16;
+	private static final int MAX_FIXED_ORDER = 4;
+	private static final int MAX_PARTITION_ORDER = 8;
+	private static final int MAX_RICE_PARAMETER = 14;
+	private static final int STREAMINFO_OFFSET = 8;
+
+	private final File file;
+	private final OutputStream out;
+	private final ExecutorService pool;
+	private final int window;
+	private final ArrayDeque<Future<byte[]>> pending;
+	private final MessageDigest md5;
+	private final byte[] digestBlock;
+
+	private int[] left, right;
+	private int filled;
+	private long frameNumber;
+	private long totalSamples;
+	private int minFrameBytes, maxFrameBytes;
+
+	/**
+	 * Creates a FLAC file that is encoded with one thread per processor.
+	 *
+	 * @param file - to write
+	 * @throws IOException if the file can't be written
+	 */
+	public FlacWriter(File file) throws IOException {
+		this(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a FLAC file.
+	 *
+	 * @param file - to write
+	 * @param threads - number of threads that encode frames
+	 * @throws IOException if the file can't be written
+	 */
+	public FlacWriter(File file, int threads) throws IOException {
+		this.file = file;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("MD5 is not available", e);
+		}
+		int count = Math.max(1, threads);
+		pool = Executors.newFixedThreadPool(count, task -> {
+			Thread thread = new Thread(task, "FlacWriter encoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		window = count * 2;
+		pending = new ArrayDeque<>();
+		digestBlock = new byte[SoftwareSynthesizer.BLOCK_SIZE * 4];
+		left = new int[FRAME_SIZE];
+		right = new int[FRAME_SIZE];
+		minFrameBytes = Integer.MAX_VALUE;
+
+		out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		// The stream info is written again by close, once the sizes are known
+		out.write(new byte[] {'f', 'L', 'a', 'C'});
+		out.write(streamInfo());
+	}
+
+	@Override
+	public void write(float[] blockLeft, float[] blockRight, int frames) throws IOException {
+		int b = 0;
+		for(int i = 0; i < frames; i++) {
+			int l = SoftwareSynthesizer.toPcm(blockLeft[i]);
+			int r = SoftwareSynthesizer.toPcm(blockRight[i]);
+			digestBlock[b++] = (byte) l;
+			digestBlock[b++] = (byte) (l >> 8);
+			digestBlock[b++] = (byte) r;
+			digestBlock[b++] = (byte) (r >> 8);
+			left[filled] = l;
+			right[filled] = r;
+			if(++filled == FRAME_SIZE)
+				submitFrame();
+		}
+		md5.update(digestBlock, 0, b);
+		totalSamples += frames;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if(filled > 0)
+				submitFrame();
+			while(!pending.isEmpty())
+				writeNextFrame();
+			out.close();
+		} finally {
+			pool.shutdownNow();
+		}
+		try (RandomAccessFile patch = new RandomAccessFile(file, "rw")) {
+			patch.seek(STREAMINFO_OFFSET);
+			patch.write(streamInfo(), 4, 34);
+		}
+	}
+
+	/**
+	 * Hands the filled samples to the pool to be encoded, and starts new
+	 * sample buffers. If the window of frames in flight is full, the oldest
+	 * frame is written first.
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	private void submitFrame() throws IOException {
+		while(pending.size() >= window)
+			writeNextFrame();
+		int[] frameLeft = left, frameRight = right;
+		int samples = filled;
+		long number = frameNumber++;
+		pending.add(pool.submit(() -> encodeFrame(frameLeft, frameRight, samples, number)));
+		left = new int[FRAME_SIZE];
+		right = new int[FRAME_SIZE];
+		filled = 0;
+	}
+
+	/**
+	 * Waits for the oldest frame in flight and writes it.
+	 *
+	 * @throws IOException if the frame couldn't be encoded or written
+	 */
+	private void writeNextFrame() throws IOException {
+		byte[] frame;
+		try {
+			frame = pending.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Couldn't encode a frame", e.getCause());
+		}
+		out.write(frame);
+		minFrameBytes = Math.min(minFrameBytes, frame.length);
+		maxFrameBytes = Math.max(maxFrameBytes, frame.length);
+	}
+
+	/**
+	 * Builds the STREAMINFO metadata block, with its 4 byte header.
+	 *
+	 * @return the block
+	 */
+	private byte[] streamInfo() {
+		BitWriter info = new BitWriter(38);
+		info.write(0x80, 8);             // last metadata block, type STREAMINFO
+		info.write(34, 24);
+		info.write(FRAME_SIZE, 16);      // smallest block size
+		info.write(FRAME_SIZE, 16);      // largest block size
+		info.write(maxFrameBytes == 0 ? 0 : minFrameBytes, 24);
+		info.write(maxFrameBytes, 24);
+		info.write((int) SoftwareSynthesizer.SAMPLE_RATE, 20);
+		info.write(1, 3);                // channels - 1
+		info.write(BITS_PER_SAMPLE - 1, 5);
+		info.write((int) (totalSamples >>> 32), 4);
+		info.write((int) totalSamples, 32);
+		byte[] digest = maxFrameBytes == 0 ? new byte[16] : md5.digest();
+		for(byte value : digest)
+			info.write(value, 8);
+		return info.toByteArray();
+	}
+
+	/**
+	 * Encodes one frame.
+	 *
+	 * @param left - samples of the left channel
+	 * @param right - samples of the right channel
+	 * @param samples - number of samples per channel
+	 * @param number - index of the frame in the file
+	 * @return the encoded frame
+	 */
+	static byte[] encodeFrame(int[] left, int[] right, int samples, long number) {
+		int[] mid = new int[samples], side = new int[samples];
+		for(int i = 0; i < samples; i++) {
+			mid[i] = (left[i] + right[i]) >> 1;
+			side[i] = left[i] - right[i];
+		}
+		int[] scratch = new int[samples];
+		BitWriter leftBits = encodeSubframe(left, samples, BITS_PER_SAMPLE, scratch);
+		BitWriter rightBits = encodeSubframe(right, samples, BITS_PER_SAMPLE, scratch);
+		BitWriter midBits = encodeSubframe(mid, samples, BITS_PER_SAMPLE, scratch);
+		BitWriter sideBits = encodeSubframe(side, samples, BITS_PER_SAMPLE + 1, scratch);
+
+		// Channel assignments 1, 8, 9 and 10: left/right, left/side, side/right, mid/side
+		long[] sizes = {
+				leftBits.length() + rightBits.length(),
+				leftBits.length() + sideBits.length(),
+				sideBits.length() + rightBits.length(),
+				midBits.length() + sideBits.length()};
+		int best = 0;
+		for(int i = 1; i < sizes.length; i++)
+			if(sizes[i] < sizes[best])
+				best = i;
+		BitWriter first = best == 0 || best == 1 ? leftBits : best == 2 ? sideBits : midBits;
+		BitWriter second = best == 0 || best == 2 ? rightBits : sideBits;
+
+		BitWriter frame = new BitWriter((int) (sizes[best] / 8) + 32);
+		frame.write(0xFFF8, 16);          // sync code, fixed block size
+		int sizeCode = samples == FRAME_SIZE ? 12 : samples <= 256 ? 6 : 7;
+		frame.write(sizeCode, 4);
+		frame.write(sampleRateCode(), 4);
+		frame.write(best == 0 ? 1 : 7 + best, 4);
+		frame.write(0b100, 3);            // 16 bits per sample
+		frame.write(0, 1);
+		writeUtf8(frame, number);
+		if(sizeCode == 6)
+			frame.write(samples - 1, 8);
+		else if(sizeCode == 7)
+			frame.write(samples - 1, 16);
+		frame.write(crc8(frame.bytes(), (int) (frame.length() / 8)), 8);
+
+		frame.append(first);
+		frame.append(second);
+		frame.alignToByte();
+		frame.write(crc16(frame.bytes(), (int) (frame.length() / 8)), 16);
+		return frame.toByteArray();
+	}
+
+	/**
+	 * Encodes one channel of a frame. A channel that doesn't change is stored
+	 * as a constant. Otherwise the fixed predictor with the smallest errors
+	 * is used, unless storing the samples as they are is smaller.
+	 *
+	 * @param samples - of the channel
+	 * @param count - number of samples
+	 * @param bits - bits per sample
+	 * @param residual - scratch space for the prediction errors
+	 * @return the encoded subframe
+	 */
+	private static BitWriter encodeSubframe(int[] samples, int count, int bits, int[] residual) {
+		BitWriter out = new BitWriter(count * bits / 8 + 16);
+		boolean constant = true;
+		for(int i = 1; i < count && constant; i++)
+			constant = samples[i] == samples[0];
+		if(constant) {
+			out.write(0, 8);               // CONSTANT subframe
+			out.write(samples[0], bits);
+			return out;
+		}
+
+		int order = bestFixedOrder(samples, count);
+		fixedResidual(samples, count, order, residual);
+		out.write(0x10 | order << 1, 8); // FIXED subframe of this order
+		for(int i = 0; i < order; i++)
+			out.write(samples[i], bits);
+		writeResidual(out, residual, count, order);
+
+		if(out.length() > 8 + (long) count * bits) {
+			out = new BitWriter(count * bits / 8 + 16);
+			out.write(0x02, 8);           // VERBATIM subframe
+			for(int i = 0; i < count; i++)
+				out.write(samples[i], bits);
+		}
+		return out;
+	}
+
+	/**
+	 * Finds the fixed predictor order with the smallest total error.
+	 *
+	 * @param samples - of the channel
+	 * @param count - number of samples
+	 * @return predictor order, 0 to MAX_FIXED_ORDER
+	 */
+	private static int bestFixedOrder(int[] samples, int count) {
+		int maxOrder = Math.min(MAX_FIXED_ORDER, count - 1);
+		long[] totals = new long[MAX_FIXED_ORDER + 1];
+		for(int i = MAX_FIXED_ORDER; i < count; i++) {
+			long e0 = samples[i];
+			long e1 = e0 - samples[i - 1];
+			long e2 = e1 - (samples[i - 1] - samples[i - 2]);
+			long e3 = e2 - (samples[i - 1] - 2L * samples[i - 2] + samples[i - 3]);
+			long e4 = e3 - (samples[i - 1] - 3L * samples[i - 2] + 3L * samples[i - 3] - samples[i - 4]);
+			totals[0] += Math.abs(e0);
+			totals[1] += Math.abs(e1);
+			totals[2] += Math.abs(e2);
+			totals[3] += Math.abs(e3);
+			totals[4] += Math.abs(e4);
+		}
+		int best = 0;
+		for(int order = 1; order <= maxOrder; order++)
+			if(totals[order] < totals[best])
+				best = order;
+		return best;
+	}
+
+	/**
+	 * Computes the prediction errors of a fixed predictor. The first order
+	 * entries are not predicted and are set to 0.
+	 *
+	 * @param samples - of the channel
+	 * @param count - number of samples
+	 * @param order - of the predictor
+	 * @param residual - receives the errors
+	 */
+	private static void fixedResidual(int[] samples, int count, int order, int[] residual) {
+		for(int i = 0; i < order; i++)
+			residual[i] = 0;
+		for(int i = order; i < count; i++) {
+			int s = samples[i];
+			switch(order) {
+			case 0: residual[i] = s; break;
+			case 1: residual[i] = s - samples[i - 1]; break;
+			case 2: residual[i] = s - 2 * samples[i - 1] + samples[i - 2]; break;
+			case 3: residual[i] = s - 3 * samples[i - 1] + 3 * samples[i - 2] - samples[i - 3]; break;
+			default: residual[i] = s - 4 * samples[i - 1] + 6 * samples[i - 2] - 4 * samples[i - 3] + samples[i - 4];
+			}
+		}
+	}
+
+	/**
+	 * Rice codes prediction errors. The errors are split into 2^p partitions,
+	 * each with its own Rice parameter, and the partition order p with the
+	 * smallest estimated size is used.
+	 *
+	 * @param out - to write to
+	 * @param residual - prediction errors, with the first order entries unused
+	 * @param count - number of samples
+	 * @param order - of the predictor
+	 */
+	private static void writeResidual(BitWriter out, int[] residual, int count, int order) {
+		int maxPartitionOrder = 0;
+		while(maxPartitionOrder < MAX_PARTITION_ORDER && count % (2 << maxPartitionOrder) == 0
+				&& (count >> (maxPartitionOrder + 1)) > order)
+			maxPartitionOrder++;
+
+		// Sums of folded errors for the finest partitions, merged for coarser ones
+		long[] sums = new long[1 << maxPartitionOrder];
+		int finest = count >> maxPartitionOrder;
+		for(int i = order; i < count; i++)
+			sums[i / finest] += fold(residual[i]);
+
+		long bestBits = Long.MAX_VALUE;
+		int bestOrder = 0;
+		for(int p = maxPartitionOrder; p >= 0; p--) {
+			int partitions = 1 << p;
+			int size = count >> p;
+			long bits = 0;
+			for(int part = 0; part < partitions; part++) {
+				int samples = size - (part == 0 ? order : 0);
+				int k = riceParameter(sums[part], samples);
+				bits += 4 + (long) samples * (k + 1) + (sums[part] >> k);
+			}
+			if(bits < bestBits) {
+				bestBits = bits;
+				bestOrder = p;
+			}
+			for(int part = 0; part < partitions / 2; part++)
+				sums[part] = sums[2 * part] + sums[2 * part + 1];
+		}
+
+		// Sums are merged in place, so they are recomputed for the chosen order
+		int partitions = 1 << bestOrder;
+		int size = count >> bestOrder;
+		out.write(0, 2);                  // Rice coding with 4 bit parameters
+		out.write(bestOrder, 4);
+		for(int part = 0; part < partitions; part++) {
+			int start = part == 0 ? order : part * size;
+			int end = (part + 1) * size;
+			long sum = 0;
+			for(int i = start; i < end; i++)
+				sum += fold(residual[i]);
+			int k = riceParameter(sum, end - start);
+			out.write(k, 4);
+			for(int i = start; i < end; i++) {
+				long value = fold(residual[i]);
+				out.zeros(value >>> k);
+				out.write(1, 1);
+				if(k > 0)
+					out.write((int) value, k);
+			}
+		}
+	}
+
+	/**
+	 * Maps a signed error to an unsigned number: 0, -1, 1, -2, 2 become 0, 1, 2, 3, 4.
+	 *
+	 * @param value - the error
+	 * @return the folded error
+	 */
+	private static long fold(int value) {
+		return value >= 0 ? 2L * value : -2L * value - 1;
+	}
+
+	/**
+	 * Chooses a Rice parameter close to the base 2 logarithm of the mean folded error.
+	 *
+	 * @param sum - of the folded errors
+	 * @param samples - number of errors
+	 * @return the parameter
+	 */
+	private static int riceParameter(long sum, int samples) {
+		int k = 0;
+		while(k < MAX_RICE_PARAMETER && ((long) samples << (k + 1)) <= sum)
+			k++;
+		return k;
+	}
+
+	/**
+	 * Gets the frame header code for the sample rate.
+	 *
+	 * @return the code, or 0 to use the rate in the stream info
+	 */
+	private static int sampleRateCode() {
+		switch((int) SoftwareSynthesizer.SAMPLE_RATE) {
+		case 44100: return 9;
+		case 48000: return 10;
+		case 96000: return 11;
+		default: return 0;
+		}
+	}
+
+	/**
+	 * Writes a frame number in the UTF-8 like coding FLAC uses.
+	 *
+	 * @param out - to write to
+	 * @param value - the frame number
+	 */
+	private static void writeUtf8(BitWriter out, long value) {
+		if(value < 0x80) {
+			out.write((int) value, 8);
+			return;
+		}
+		int extra = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3 : value < 0x4000000 ? 4 : 5;
+		int lead = (0xFF00 >> (extra + 1)) & 0xFF;
+		out.write(lead | (int) (value >>> (6 * extra)), 8);
+		for(int i = extra - 1; i >= 0; i--)
+			out.write(0x80 | (int) ((value >>> (6 * i)) & 0x3F), 8);
+	}
+
+	/**
+	 * Computes the CRC-8 of a frame header, with polynomial x^8 + x^2 + x + 1.
+	 *
+	 * @param data - the bytes
+	 * @param length - number of bytes to check
+	 * @return the CRC
+	 */
+	static int crc8(byte[] data, int length) {
+		int crc = 0;
+		for(int i = 0; i < length; i++) {
+			crc ^= data[i] & 0xFF;
+			for(int bit = 0; bit < 8; bit++)
+				crc = (crc & 0x80) != 0 ? (crc << 1) ^ 0x07 : crc << 1;
+			crc &= 0xFF;
+		}
+		return crc;
+	}
+
+	/**
+	 * Computes the CRC-16 of a frame, with polynomial x^16 + x^15 + x^2 + 1.
+	 *
+	 * @param data - the bytes
+	 * @param length - number of bytes to check
+	 * @return the CRC
+	 */
+	static int crc16(byte[] data, int length) {
+		int crc = 0;
+		for(int i = 0; i < length; i++) {
+			crc ^= (data[i] & 0xFF) << 8;
+			for(int bit = 0; bit < 8; bit++)
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x8005 : crc << 1;
+			crc &= 0xFFFF;
+		}
+		return crc;
+	}
+
+	/**
+	 * Collects bits, most significant first, into a growing array of bytes.
+	 */
+	private static class BitWriter {
+		private byte[] data;
+		private int size;
+		private long length;
+		private long buffer;
+		private int buffered;
+
+		BitWriter(int capacity) {
+			data = new byte[Math.max(16, capacity)];
+		}
+
+		/**
+		 * Writes the low bits of a value.
+		 *
+		 * @param value - to write
+		 * @param bits - number of bits, at most 32
+		 */
+		void write(int value, int bits) {
+			if(bits == 0)
+				return;
+			buffer = (buffer << bits) | (value & (0xFFFFFFFFL >>> (32 - bits)));
+			buffered += bits;
+			length += bits;
+			while(buffered >= 8) {
+				buffered -= 8;
+				put((byte) (buffer >>> buffered));
+			}
+		}
+
+		/**
+		 * Writes a run of zero bits.
+		 *
+		 * @param count - number of zeros
+		 */
+		void zeros(long count) {
+			while(count > 32) {
+				write(0, 32);
+				count -= 32;
+			}
+			if(count > 0)
+				write(0, (int) count);
+		}
+
+		/**
+		 * Writes all bits of another writer.
+		 *
+		 * @param other - bits to copy
+		 */
+		void append(BitWriter other) {
+			long whole = other.length / 8;
+			for(int i = 0; i < whole; i++)
+				write(other.data[i], 8);
+			int rest = other.buffered;
+			if(rest > 0)
+				write((int) other.buffer, rest);
+		}
+
+		/**
+		 * Pads with zero bits up to the next whole byte.
+		 */
+		void alignToByte() {
+			if(buffered > 0)
+				write(0, 8 - buffered);
+		}
+
+		/**
+		 * Gets the number of bits written.
+		 *
+		 * @return number of bits
+		 */
+		long length() {
+			return length;
+		}
+
+		/**
+		 * Gets the array holding the whole bytes written so far.
+		 *
+		 * @return the bytes, which may be longer than the data
+		 */
+		byte[] bytes() {
+			return data;
+		}
+
+		/**
+		 * Copies the bytes written. Call alignToByte first.
+		 *
+		 * @return the bytes
+		 */
+		byte[] toByteArray() {
+			return Arrays.copyOf(data, size);
+		}
+
+		private void put(byte value) {
+			if(size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+	}
+}
@@ -3,21 +3,46 @@ package assign11;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 /**
  * A grid of rectangles that can be clicked and dragged to draw cells.
  * Creating or removing a cell results in some task being performed. 
  * That task must be specified by the subclass.
  * 
+ * The grid keeps no cells of its own. The subclass supplies the cells in
+ * a range from its model (see forEachCell) and calls repaintCells when a
+ * cell of its model changes, so there is one copy of the cells to keep up
+ * to date.
+ * 
+ * Inside a JScrollPane the grid fits the view until it is zoomed with the
+ * mouse wheel while Control is held (with Shift for rows), and then scrolls.
+ * Painting only draws the grid lines and cells in the area being repainted.
+ * Clicking any other button than the left one removes the cells under the
+ * mouse, and dragging with it removes every cell the dragged range touches.
+ * 
  * @author Eric Heisler and Arthur Morton
  * @version 11/22/2024
  */
-public abstract class GridCanvas extends JPanel implements MouseListener, MouseMotionListener {
+public abstract class GridCanvas extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener, Scrollable {
 	
 	// Grid information
 	private int width, height;
@@ -25,10 +50,6 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	private int columnMajorTickSpacing, rowMajorTickSpacing;
 	private int rowRestriction, colRestriction;
 	
-	// The collection of cells (active, colored rectangles)
-	// Note that Cell is a nested class at the end of this file
-	private BetterDynamicArray<Cell> cells;
-	
 	// Feel free to change coloring however you want.
 	// To get started, just set one color in the constructor.
 	private Color cellColor;
@@ -37,6 +58,30 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	private boolean drawing;
 	private int currentRow, currentColumn, currentWidth, currentHeight;
 	
+	// These keep track of a range being dragged out to remove its cells.
+	private boolean selecting;
+	private int selectRow, selectColumn, selectEndRow, selectEndColumn;
+	private static final Color SELECTION_COLOR = new Color(255, 0, 0, 64);
+	
+	// Width in pixels of the line showing the playback position
+	private static final int PLAYHEAD_WIDTH = 2;
+	// The playback position, in columns
+	private double playhead;
+	
+	// The grid lines and major ticks of gridArea drawn once, at the scale of
+	// the screen. Set to null when the number of rows or columns changes.
+	private BufferedImage gridImage;
+	private Rectangle gridArea;
+	private Dimension gridSize;
+	
+	// How many times bigger than the view the grid is, at least 1
+	private double columnZoom, rowZoom;
+	// Zooming stops when cells are this many pixels wide or tall
+	private static final int MAX_CELL_PIXELS = 64;
+	private static final double WHEEL_ZOOM_STEP = 1.25;
+	// The size of the view the grid asks for in a JScrollPane
+	private Dimension viewSize;
+	
 	/**
 	 * Construct a grid with a given configuration.
 	 * 
@@ -63,37 +108,121 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 		currentHeight = -1;
 		rowRestriction = -1;
 		colRestriction = -1;
-		cells = new BetterDynamicArray<Cell>();
+		columnZoom = 1;
+		rowZoom = 1;
+		viewSize = new Dimension(width, height);
 
 		setPreferredSize(new Dimension(width, height));
 		setBackground(Color.WHITE);
 		setOpaque(true);
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		addMouseWheelListener(this);
 	}
 	
 	/**
 	 * Set the number of columns in the grid.
-	 * Then repaint the component.
+	 * Then repaint the component if the number changed.
 	 * If the number is < 1, set to 1.
 	 * 
 	 * @param columns - new number of columns
 	 */
 	public void setColumns(int newColumns) {
-		this.columns = Math.max(1, newColumns); 
-	    repaint();
+		newColumns = Math.max(1, newColumns);
+		if(newColumns != columns) {
+			this.columns = newColumns;
+			gridImage = null;
+			repaint();
+		}
 	}
 	
 	/**
 	 * Set the number of rows in the grid.
-	 * Then repaint the component.
+	 * Then repaint the component if the number changed.
 	 * If the number is < 1, set to 1.
 	 * 
 	 * @param rows - new number of rows
 	 */
 	public void setRows(int newRows) {
-		 this.rows = Math.max(1, newRows);
-		 repaint();
+		newRows = Math.max(1, newRows);
+		if(newRows != rows) {
+			this.rows = newRows;
+			gridImage = null;
+			repaint();
+		}
+	}
+	
+	/**
+	 * Zooms the grid inside its JScrollPane, keeping the grid position under
+	 * a point of the view where it is. A zoom of 1 fits the grid to the view,
+	 * and zooming stops once cells are MAX_CELL_PIXELS across. Does nothing
+	 * if the grid isn't in a scroll pane.
+	 * 
+	 * @param newColumnZoom - how many times wider than the view to make the grid
+	 * @param newRowZoom - how many times taller than the view to make the grid
+	 * @param anchor - point of the grid to keep in place, in grid coordinates
+	 */
+	public void setZoom(double newColumnZoom, double newRowZoom, Point anchor) {
+		if (!(getParent() instanceof JViewport viewport))
+			return;
+		Dimension extent = viewport.getExtentSize();
+		columnZoom = clampZoom(newColumnZoom, columns, extent.width);
+		rowZoom = clampZoom(newRowZoom, rows, extent.height);
+		
+		// Scale the position of the anchor and keep it at the same place in the view
+		Point view = viewport.getViewPosition();
+		Dimension size = getPreferredSize();
+		double anchorX = getWidth() > 0 ? (double) anchor.x / getWidth() : 0;
+		double anchorY = getHeight() > 0 ? (double) anchor.y / getHeight() : 0;
+		int x = (int) Math.round(anchorX * size.width) - (anchor.x - view.x);
+		int y = (int) Math.round(anchorY * size.height) - (anchor.y - view.y);
+		viewport.setViewSize(size);
+		viewport.setViewPosition(new Point(
+				Math.max(0, Math.min(x, size.width - extent.width)),
+				Math.max(0, Math.min(y, size.height - extent.height))));
+		revalidate();
+		repaint();
+	}
+	
+	/**
+	 * Gets how many times wider than its view the grid is.
+	 * 
+	 * @return the column zoom, at least 1
+	 */
+	public double getColumnZoom() {
+		return columnZoom;
+	}
+	
+	/**
+	 * Gets how many times taller than its view the grid is.
+	 * 
+	 * @return the row zoom, at least 1
+	 */
+	public double getRowZoom() {
+		return rowZoom;
+	}
+	
+	private static double clampZoom(double zoom, int count, int extent) {
+		double max = Math.max(1, (double) count * MAX_CELL_PIXELS / Math.max(1, extent));
+		return Math.max(1, Math.min(max, zoom));
+	}
+	
+	/**
+	 * Moves the playhead, the red line showing the playback position.
+	 * Only the strip the playhead moved through is repainted, and nothing
+	 * is repainted if it didn't move by a whole pixel.
+	 * 
+	 * @param column - the new position, in columns from the left
+	 */
+	public void setPlayhead(double column) {
+		int oldX = playheadToPixel();
+		playhead = column;
+		int newX = playheadToPixel();
+		if(newX != oldX) {
+			// Both strips are merged into one region by the repaint manager
+			repaint(oldX, 0, PLAYHEAD_WIDTH, getHeight());
+			repaint(newX, 0, PLAYHEAD_WIDTH, getHeight());
+		}
 	}
 	
 	/**
@@ -109,28 +238,19 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	}
 	
 	/**
-	 * Adds a cell to the collection with the given position and size.
-	 * Then repaints the component.
-	 * This is where colors can be set.
+	 * Repaints the area of the component that a cell covers, after the cell
+	 * was added to or removed from the subclass's model.
 	 * 
 	 * @param row - vertical position of cell
 	 * @param column - horizontal position of cell
-	 * @param width - of cell
-	 * @param height - of cell
+	 * @param rowSpan - height of cell
+	 * @param colSpan - width of cell
 	 */
-	public void addCell(int row, int column, int height, int width) {
-		 Cell newCell = new Cell(row, column, height, width, cellColor);
-		 cells.add(newCell);
-		 repaint();
-	}
-	
-	/**
-	 * Clears the collection of selected cells.
-	 * Then repaints the component.
-	 */
-	public void clear() {
-		 cells.clear();
-		 repaint();
+	public void repaintCells(int row, int column, int rowSpan, int colSpan) {
+		int x = colToPixel(column);
+		int y = rowToPixel(row + rowSpan);
+		// A pixel around it, where the pixel conversions round differently
+		repaint(x - 1, y - 1, colToPixel(column + colSpan) - x + 2, rowToPixel(row) - y + 2);
 	}
 
 	/**
@@ -149,7 +269,124 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 		// Call parent JPanel's paintComponent method to fill in panel 
 		// with background color. "partial overriding"
 		super.paintComponent(g);
+		if (width <= 0 || height <= 0)
+			return;
+		
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, width, height);
 		
+		// The grid only changes with the size or the number of rows and columns,
+		// so it is drawn into an image once and copied on each paint.
+		BufferedImage grid = getGridImage(g, clip);
+		g.drawImage(grid, gridArea.x, gridArea.y, gridArea.width, gridArea.height, null);
+		
+		// Draw the cells in the area being repainted, and a row and column
+		// around it where the pixel conversions round differently.
+		// Don't forget to set the color first.
+	    g.setColor(cellColor);
+	    forEachCell(pixelToRow(clip.y + clip.height - 1) - 1, pixelToRow(clip.y) + 1,
+	    		pixelToCol(clip.x) - 1, pixelToCol(clip.x + clip.width - 1) + 1, (row, col, rowSpan, colSpan) -> {
+	        int x = colToPixel(col);
+	        int y = rowToPixel(row + rowSpan);
+	        int cellWidth = colToPixel(col + colSpan) - x;
+	        int cellHeight = rowToPixel(row) - y;
+	        g.fillRect(x, y, cellWidth, cellHeight);
+	    });
+
+		// If the mouse is currently making a cell, draw it as a preview.
+	    if (drawing && currentRow >= 0 && currentColumn >= 0) {
+	        g.setColor(cellColor.darker());
+	        int x = colToPixel(currentColumn);
+	        int y = rowToPixel(currentRow + currentHeight);
+	        int previewWidth = colToPixel(currentColumn + currentWidth) - x;
+	        int previewHeight = rowToPixel(currentRow) - y;
+	        g.fillRect(x, y, previewWidth, previewHeight);
+	    }
+	    
+	    // If the mouse is dragging out a range to remove, shade it.
+	    if (selecting) {
+	        g.setColor(SELECTION_COLOR);
+	        int x = colToPixel(Math.min(selectColumn, selectEndColumn));
+	        int y = rowToPixel(Math.max(selectRow, selectEndRow) + 1);
+	        int selectionWidth = colToPixel(Math.max(selectColumn, selectEndColumn) + 1) - x;
+	        int selectionHeight = rowToPixel(Math.min(selectRow, selectEndRow)) - y;
+	        g.fillRect(x, y, selectionWidth, selectionHeight);
+	    }
+	    
+	    // Draw the playhead over everything
+	    g.setColor(Color.RED);
+	    g.fillRect(playheadToPixel(), 0, PLAYHEAD_WIDTH, height);
+	}
+	
+	/**
+	 * Gets the image of the grid, drawing it again if it doesn't cover the
+	 * area being repainted or doesn't match the size of the component and the
+	 * scale of the graphics context. A zoomed grid can be far bigger than the
+	 * screen, so the image only covers the visible part and a view's worth
+	 * around it, which keeps scrolling from redrawing it every step. The
+	 * image has one pixel per device pixel, so it stays sharp on screens that
+	 * scale the component.
+	 * 
+	 * @param g - graphics context the image will be drawn onto
+	 * @param clip - the area being repainted
+	 * @return the grid image, covering gridArea
+	 */
+	private BufferedImage getGridImage(Graphics g, Rectangle clip) {
+		AffineTransform transform = ((Graphics2D) g).getTransform();
+		double scaleX = transform.getScaleX();
+		double scaleY = transform.getScaleY();
+		Dimension size = new Dimension(width, height);
+		if (gridImage != null && gridArea.contains(clip) && size.equals(gridSize)
+				&& gridImage.getWidth() == imageSize(gridArea.width, scaleX)
+				&& gridImage.getHeight() == imageSize(gridArea.height, scaleY))
+			return gridImage;
+		
+		Rectangle visible = getVisibleRect().union(clip);
+		Rectangle area = new Rectangle(visible.x - visible.width, visible.y - visible.height, visible.width * 3, visible.height * 3)
+				.intersection(new Rectangle(0, 0, width, height)).union(clip);
+		int imageWidth = imageSize(area.width, scaleX);
+		int imageHeight = imageSize(area.height, scaleY);
+		if (gridImage == null || gridImage.getWidth() != imageWidth || gridImage.getHeight() != imageHeight) {
+			GraphicsConfiguration configuration = getGraphicsConfiguration();
+			gridImage = configuration != null
+					? configuration.createCompatibleImage(imageWidth, imageHeight)
+					: new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+		}
+		gridArea = area;
+		gridSize = size;
+		Graphics2D imageGraphics = gridImage.createGraphics();
+		imageGraphics.scale(scaleX, scaleY);
+		imageGraphics.translate(-area.x, -area.y);
+		imageGraphics.setColor(getBackground());
+		imageGraphics.fill(area);
+		paintGrid(imageGraphics, area);
+		imageGraphics.dispose();
+		return gridImage;
+	}
+	
+	private static int imageSize(int size, double scale) {
+		return Math.max(1, (int) Math.ceil(size * scale));
+	}
+	
+	/**
+	 * Draws the grid lines and the major ticks that cross an area.
+	 * 
+	 * @param g - graphics context to draw onto
+	 * @param area - where to draw
+	 */
+	private void paintGrid(Graphics g, Rectangle area) {
+		// One more row and column on each side, for the thick major ticks
+		int firstRow = Math.max(0, pixelToRow(area.y + area.height - 1) - 1);
+		int lastRow = Math.min(rows, pixelToRow(area.y) + 2);
+		int firstColumn = Math.max(0, pixelToCol(area.x) - 1);
+		int lastColumn = Math.min(columns, pixelToCol(area.x + area.width - 1) + 2);
+		int left = area.x;
+		int right = area.x + area.width;
+		int top = area.y;
+		int bottom = area.y + area.height;
+		
+
 		// Draw the grid by drawing lines between each row and column (use g.drawLine).
 		// Don't forget to set the color first.
 		// Make use of the private helpers below to convert between row/column and pixel x/y.
@@ -159,53 +396,74 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 		// different thickness. Thickness can be achieved by using fillRect with 
 		// a narrow rectangle instead of drawLine.
 		//Horizontal
-		for (int i = 0; i <= rows; i++) {
+		for (int i = firstRow; i <= lastRow; i++) {
 	        int y = rowToPixel(i);
-	        g.drawLine(0, y, width, y);
+	        g.drawLine(left, y, right, y);
 		}
 		//Vertical
-		for (int i = 0; i <= columns; i++) {
+		for (int i = firstColumn; i <= lastColumn; i++) {
 	        int x = colToPixel(i);
-	        g.drawLine(x, 0, x, height);
+	        g.drawLine(x, top, x, bottom);
 		}
 		// Draw the major column ticks.
 		g.setColor(Color.BLACK);
 		
-		for (int i = rowMajorTickSpacing; i < rows; i += rowMajorTickSpacing) {
+		for (int i = firstTick(firstRow, rowMajorTickSpacing); i < Math.min(rows, lastRow + 1); i += rowMajorTickSpacing) {
 	        int y = rowToPixel(i);
-	        g.fillRect(0, y - 1, width, 3);
+	        g.fillRect(left, y - 1, right - left, 3);
 	    }
 		
-	    for (int i = columnMajorTickSpacing; i < columns; i += columnMajorTickSpacing) {
+	    for (int i = firstTick(firstColumn, columnMajorTickSpacing); i < Math.min(columns, lastColumn + 1); i += columnMajorTickSpacing) {
 	        int x = colToPixel(i);
-	        g.fillRect(x - 1, 0, 3, height);
-	    }
-		// Draw all cells in the collection. Don't forget to set the color first.
-	    g.setColor(cellColor);
-	    for (int i = 0; i < cells.size(); i++) {
-	        Cell c = cells.get(i);
-	        int x = colToPixel(c.col);
-	        int y = rowToPixel(c.row + c.rowSpan);
-	        int cellWidth = colToPixel(c.col + c.colSpan) - x;
-	        int cellHeight = rowToPixel(c.row) - y;
-	        g.fillRect(x, y, cellWidth, cellHeight);
-	    }
-
-		// If the mouse is currently making a cell, draw it as a preview.
-	    if (drawing && currentRow >= 0 && currentColumn >= 0) {
-	        g.setColor(cellColor.darker());
-	        int x = colToPixel(currentColumn);
-	        int y = rowToPixel(currentRow + currentHeight);
-	        int previewWidth = colToPixel(currentColumn + currentWidth) - x;
-	        int previewHeight = rowToPixel(currentRow) - y;
-	        g.fillRect(x, y, previewWidth, previewHeight);
+	        g.fillRect(x - 1, top, 3, bottom - top);
 	    }
 	}
 	
+	/**
+	 * Finds the first major tick at or after an index, skipping the tick at 0.
+	 * 
+	 * @param index - first row or column to draw
+	 * @param spacing - between major ticks
+	 * @return the index of the first major tick to draw
+	 */
+	private static int firstTick(int index, int spacing) {
+		return Math.max(spacing, index / spacing * spacing);
+	}
+	
 	//////////////////////////////////////////////////////////////////////
 	// Abstract methods to be implemented in SongEditor and TrackEditor.
 	//////////////////////////////////////////////////////////////////////
 	
+	/**
+	 * Receives the cells found by forEachCell.
+	 */
+	@FunctionalInterface
+	public interface CellVisitor {
+		/**
+		 * Called with a cell.
+		 * 
+		 * @param row - vertical position of cell
+		 * @param col - horizontal position of cell
+		 * @param rowSpan - height of cell
+		 * @param colSpan - width of cell
+		 */
+		void visit(int row, int col, int rowSpan, int colSpan);
+	}
+	
+	/**
+	 * Calls a visitor with each cell of the model that covers part of a
+	 * range of rows and columns. The range can reach past the grid. This is
+	 * used to paint the cells and to find the cells under the mouse, so it
+	 * should only look at the cells near the range.
+	 * 
+	 * @param firstRow - lowest row of the range
+	 * @param lastRow - highest row of the range
+	 * @param firstCol - leftmost column of the range
+	 * @param lastCol - rightmost column of the range
+	 * @param visitor - called with each cell
+	 */
+	public abstract void forEachCell(int firstRow, int lastRow, int firstCol, int lastCol, CellVisitor visitor);
+	
 	/**
 	 * This is called when a mouse button is pressed on a given cell.
 	 * This is NOT for the MouseListener interface. It will be implemented in
@@ -250,6 +508,19 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	 */
 	public abstract void onCellRemoved(int row, int col);
 	
+	/**
+	 * This is called when the cells starting at some rows and columns are
+	 * removed together, such as by dragging over a range. By default
+	 * onCellRemoved is called for each start; a subclass whose model can
+	 * remove many cells at once can override this to do so.
+	 * 
+	 * @param starts - row (y) and column (x) of each cell removed
+	 */
+	public void onCellsRemoved(Set<Point> starts) {
+		for (Point start : starts)
+			onCellRemoved(start.y, start.x);
+	}
+	
 	//////////////////////////////////////////////////////////////////////
 	// The following are methods from the mouse listening interfaces.
 	// They are used for drawing cells. Note that they each call one
@@ -259,7 +530,8 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	/**
 	 * This is called when a mouse button is pressed.
 	 * Initialize values for a preview cell and call
-	 * onCellPressed before repainting.
+	 * onCellPressed before repainting. Any other button
+	 * than the left one starts a range to remove.
 	 */
 	@Override
 	public void mousePressed(MouseEvent e) {
@@ -273,6 +545,10 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 			currentWidth = Math.max(1, colRestriction);
 			onCellPressed(currentRow, currentColumn, currentHeight, currentWidth);
 			repaint();
+		} else if (e.getButton() > 1) {
+			selecting = true;
+			selectRow = selectEndRow = pixelToRow(e.getY());
+			selectColumn = selectEndColumn = pixelToCol(e.getX());
 		}
 	}
 	
@@ -298,20 +574,23 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 				currentWidth = pixelToCol(e.getX()) - currentColumn + 1;
 			onCellDragged(currentRow, currentColumn, currentHeight, currentWidth);
 		}
+		if (selecting) {
+			selectEndRow = pixelToRow(e.getY());
+			selectEndColumn = pixelToCol(e.getX());
+		}
 		repaint();
 	}
 	
 	/**
 	 * This is called when a mouse button is released.
-	 * If there is a valid preview cell, add it to the collection and call
-	 * onCellReleased before repainting.
+	 * Call onCellReleased with the preview cell, which the subclass
+	 * adds to its model if it is valid, before repainting. If a range to
+	 * remove was dragged out over more than one cell, remove the cells it
+	 * touches.
 	 */
 	@Override
 	public void mouseReleased(MouseEvent e) {
 		if (drawing) {
-			if (currentHeight > 0 && currentWidth > 0 && pixelToCol(e.getX()) < columns) {
-				addCell(currentRow, currentColumn, currentHeight, currentWidth);
-			}
 			onCellReleased(currentRow, currentColumn, currentHeight, currentWidth);
 			currentRow = -1;
 			currentColumn = -1;
@@ -320,30 +599,49 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 			drawing = false;
 			repaint();
 		}
+		if (selecting) {
+			selecting = false;
+			// A range of one cell is left to mouseClicked
+			if (selectEndRow != selectRow || selectEndColumn != selectColumn)
+				removeCells(Math.min(selectRow, selectEndRow), Math.max(selectRow, selectEndRow),
+						Math.min(selectColumn, selectEndColumn), Math.max(selectColumn, selectEndColumn));
+			repaint();
+		}
 	}
 	
 	/**
 	 * This is called when a mouse button is clicked.
 	 * This is specifically for removal of a cell when any mouse button
-	 * other than the left button is clicked. All cells matching this
-	 * position are removed and onCellRemoved is called before repainting.
+	 * other than the left button is clicked. onCellsRemoved is called for
+	 * the cells covering this position before repainting.
 	 */
 	@Override
 	public void mouseClicked(MouseEvent e) {
 		if(e.getButton() > 1) {
-			// remove all cells from the list with this row and column
 			int row = pixelToRow(e.getY());
 			int col = pixelToCol(e.getX());
-			for(int i = 0; i < cells.size(); i++)
-				if(cells.get(i).row == row && cells.get(i).col == col) {
-					cells.remove(i);
-					i--;
-				}
-			onCellRemoved(row, col);
+			removeCells(row, row, col, col);
 			repaint();
 		}
 	}
 	
+	/**
+	 * Calls onCellsRemoved with each row and column that a cell covering
+	 * part of a range of rows and columns starts at.
+	 * 
+	 * @param firstRow - lowest row of the range
+	 * @param lastRow - highest row of the range
+	 * @param firstCol - leftmost column of the range
+	 * @param lastCol - rightmost column of the range
+	 */
+	private void removeCells(int firstRow, int lastRow, int firstCol, int lastCol) {
+		// The starts are collected first, since removing changes the model
+		Set<Point> starts = new LinkedHashSet<>();
+		forEachCell(firstRow, lastRow, firstCol, lastCol, (row, col, rowSpan, colSpan) -> starts.add(new Point(col, row)));
+		if (!starts.isEmpty())
+			onCellsRemoved(starts);
+	}
+	
 	// You can use the following methods in your project if you want.
 	// They are not required for this assignment.
 	
@@ -356,8 +654,77 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	@Override
 	public void mouseMoved(MouseEvent e) {} // currently unused
 	
+	/**
+	 * This is called when the mouse wheel is turned.
+	 * With Control held the grid is zoomed around the mouse, horizontally or,
+	 * with Shift also held, vertically. Otherwise the event is passed on to
+	 * the scroll pane so the wheel scrolls.
+	 */
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		if (!e.isControlDown() || !(getParent() instanceof JViewport)) {
+			getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+			return;
+		}
+		double factor = Math.pow(WHEEL_ZOOM_STEP, -e.getPreciseWheelRotation());
+		if (e.isShiftDown())
+			setZoom(columnZoom, rowZoom * factor, e.getPoint());
+		else
+			setZoom(columnZoom * factor, rowZoom, e.getPoint());
+	}
+	
+	//////////////////////////////////////////////////////////////////////
+	// Methods for JScrollPane. Zooming makes the grid bigger than the view.
+	//////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Gets the size of the grid: the size of its view times the zoom in a
+	 * JScrollPane, or the preferred size it was given otherwise.
+	 */
+	@Override
+	public Dimension getPreferredSize() {
+		if (getParent() instanceof JViewport viewport) {
+			Dimension extent = viewport.getExtentSize();
+			return new Dimension((int) (extent.width * columnZoom), (int) (extent.height * rowZoom));
+		}
+		return super.getPreferredSize();
+	}
+	
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return new Dimension(viewSize);
+	}
+	
+	/**
+	 * Scrolls by one row or column.
+	 */
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		if (orientation == SwingConstants.HORIZONTAL)
+			return Math.max(1, getWidth() / columns);
+		return Math.max(1, getHeight() / rows);
+	}
+	
+	/**
+	 * Scrolls by a view.
+	 */
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+	}
+	
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return columnZoom <= 1;
+	}
+	
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return rowZoom <= 1;
+	}
+	
 	//////////////////////////////////////////////////////////////////////
-	// Private helper methods and Cell class below.
+	// Private helper methods below.
 	// You can modify if desired, but you don't need to.
 	//////////////////////////////////////////////////////////////////////
 	
@@ -368,7 +735,7 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	 * @return pixel y value of the top edge
 	 */
 	private int rowToPixel(int row) {
-		return height - row * height / rows;
+		return height - (int) ((long) row * height / rows);
 	}
 	
 	/**
@@ -378,7 +745,16 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	 * @return pixel x value of the left side
 	 */
 	private int colToPixel(int col) {
-		return col * width / (columns);
+		return (int) ((long) col * width / columns);
+	}
+	
+	/**
+	 * Converts the playhead position to the pixel x value of its left side.
+	 * 
+	 * @return pixel x value of the playhead
+	 */
+	private int playheadToPixel() {
+		return (int) (playhead * getWidth() / columns);
 	}
 	
 	/**
@@ -388,7 +764,7 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	 * @return index of row containing that pixel
 	 */
 	private int pixelToRow(int py) {
-		return rows * (height - 1 - py) / height;
+		return (int) ((long) rows * (height - 1 - py) / height);
 	}
 	
 	/**
@@ -398,36 +774,9 @@ public abstract class GridCanvas extends JPanel implements MouseListener, MouseM
 	 * @return index of column containing that pixel
 	 */
 	private int pixelToCol(int px) {
-		return columns * px / width;
+		return (int) ((long) columns * px / width);
 	}
 	
-	/**
-	 * Represents a colored cell in the grid.
-	 */
-	private class Cell {
-		public int row;
-		public int col;
-		public int rowSpan;
-		public int colSpan;
-		public Color color;
-		
-		/**
-		 * Constructs a cell object
-		 * @param row - vertical position
-		 * @param col - horizontal position
-		 * @param rowSpan - height
-		 * @param colSpan - width
-		 * @param color - of cell
-		 */
-		public Cell(int row, int col, int rowSpan, int colSpan, Color color) {
-			this.row = row;
-			this.col = col;
-			this.color = color;
-			this.rowSpan = rowSpan;
-			this.colSpan = colSpan;
-		}
-	}
-
 	// Required by a serializable class (ignore for now)
 	private static final long serialVersionUID = 1L;
 }
@@ -0,0 +1,63 @@
+package assign11;
+
+/**
+ * Measures the peak and RMS level of audio as it is produced.
+ * The audio thread calls process for every block, and the GUI reads the
+ * values of the latest block at any time. Nothing is allocated and no
+ * locks are taken.
+ *
+ * @version 2026-10-19
+ */
+public class LevelMeter {
+	private volatile float peak;
+	private volatile float rms;
+	private volatile long blocks;
+
+	/**
+	 * Measures a block of audio and publishes its levels.
+	 *
+	 * @param left - samples for the left channel
+	 * @param right - samples for the right channel
+	 * @param frames - number of frames
+	 */
+	public void process(float[] left, float[] right, int frames) {
+		float max = 0f;
+		double sum = 0.0;
+		for(int i = 0; i < frames; i++) {
+			float l = left[i], r = right[i];
+			max = Math.max(max, Math.max(Math.abs(l), Math.abs(r)));
+			sum += l * l + r * r;
+		}
+		peak = max;
+		rms = frames == 0 ? 0f : (float) Math.sqrt(sum / (2 * frames));
+		blocks++;
+	}
+
+	/**
+	 * Gets the peak level of the latest block.
+	 *
+	 * @return largest absolute sample value
+	 */
+	public float getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Gets the RMS level of the latest block.
+	 *
+	 * @return root mean square of the samples
+	 */
+	public float getRms() {
+		return rms;
+	}
+
+	/**
+	 * Gets the number of blocks measured. If this hasn't changed since the
+	 * last look, no audio has been produced in between.
+	 *
+	 * @return number of blocks measured
+	 */
+	public long getBlockCount() {
+		return blocks;
+	}
+}
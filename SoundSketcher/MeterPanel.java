@@ -0,0 +1,231 @@
+package assign11;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * Shows the peak and RMS level of the master output and of every track,
+ * and a spectrum of the master output.
+ *
+ * The audio threads publish their levels and samples without locks, and this
+ * panel polls them with a Swing timer at a capped refresh rate, so metering
+ * never blocks audio. Every buffer is allocated in the constructor, and the
+ * panel is only repainted when something it shows has changed.
+ *
+ * @version 2026-10-19
+ */
+public class MeterPanel extends JPanel implements ActionListener {
+	public static final int DEFAULT_REFRESH_RATE = 30;
+
+	private static final int FFT_SIZE = 2048;
+	private static final int BAND_COUNT = 48;
+	private static final float FLOOR_DB = -60f;
+	private static final float FALL_PER_SECOND_DB = 24f;
+	private static final int METER_WIDTH = 10;
+
+	private final Timer timer;
+	private final float fall;
+	private SoftwareSynthesizer liveSynth;
+	private BetterDynamicArray<TrackPanel> trackList;
+
+	// Levels shown, in decibels. Index 0 is the master output, 1 on are the tracks
+	private final float[] shownPeaks, shownRms;
+	private final long[] lastBlocks;
+
+	private final SpectrumAnalyzer analyzer;
+	private final int[] bandStarts;
+	private final float[] shownBands;
+	private long lastTapCount;
+
+	/**
+	 * Creates a meter panel that refreshes at most a given number of times per second.
+	 *
+	 * @param width - preferred width in pixels
+	 * @param height - preferred height in pixels
+	 * @param refreshRate - largest number of refreshes per second
+	 */
+	public MeterPanel(int width, int height, int refreshRate) {
+		setPreferredSize(new Dimension(width, height));
+		setBackground(Color.BLACK);
+		trackList = new BetterDynamicArray<>();
+
+		int rate = Math.max(1, refreshRate);
+		timer = new Timer(1000 / rate, this);
+		timer.setCoalesce(true);
+		fall = FALL_PER_SECOND_DB / rate;
+
+		shownPeaks = new float[SoftwareSynthesizer.CHANNEL_COUNT + 1];
+		shownRms = new float[shownPeaks.length];
+		lastBlocks = new long[shownPeaks.length];
+		Arrays.fill(shownPeaks, FLOOR_DB);
+		Arrays.fill(shownRms, FLOOR_DB);
+
+		// Bands are spaced logarithmically from about 40 Hz up to half the sample rate
+		analyzer = new SpectrumAnalyzer(FFT_SIZE);
+		int bins = analyzer.getBinCount();
+		double lowest = 40.0 * FFT_SIZE / SoftwareSynthesizer.SAMPLE_RATE;
+		bandStarts = new int[BAND_COUNT + 1];
+		for(int b = 0; b <= BAND_COUNT; b++) {
+			int start = (int) Math.round(lowest * Math.pow(bins / lowest, (double) b / BAND_COUNT));
+			// Every band gets at least one bin of its own
+			bandStarts[b] = Math.min(bins, b == 0 ? start : Math.max(start, bandStarts[b - 1] + 1));
+		}
+		shownBands = new float[BAND_COUNT];
+		Arrays.fill(shownBands, FLOOR_DB);
+	}
+
+	/**
+	 * Sets the software synthesizer whose output is measured.
+	 *
+	 * @param liveSynth - the synthesizer playing live, or null if there is none
+	 */
+	public void setLiveSynthesizer(SoftwareSynthesizer liveSynth) {
+		this.liveSynth = liveSynth;
+	}
+
+	/**
+	 * Sets the tracks whose levels are shown.
+	 *
+	 * @param trackList - the song's tracks
+	 */
+	public void setTrackList(BetterDynamicArray<TrackPanel> trackList) {
+		this.trackList = trackList;
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		timer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Polls the meters and repaints if anything shown has changed.
+	 *
+	 * @param e - the timer event
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		boolean changed = false;
+		if(liveSynth != null)
+			changed |= update(0, liveSynth.getMasterMeter());
+		int tracks = Math.min(trackList.size(), shownPeaks.length - 1);
+		for(int t = 0; t < tracks; t++)
+			changed |= update(t + 1, trackList.get(t).getMeter(liveSynth));
+		for(int t = tracks + 1; t < shownPeaks.length; t++)
+			changed |= update(t, null);
+
+		if(liveSynth != null && liveSynth.getMasterTap().getWrittenCount() != lastTapCount
+				&& analyzer.analyze(liveSynth.getMasterTap())) {
+			lastTapCount = liveSynth.getMasterTap().getWrittenCount();
+			for(int b = 0; b < BAND_COUNT; b++) {
+				float level = FLOOR_DB;
+				for(int bin = bandStarts[b]; bin < bandStarts[b + 1]; bin++)
+					level = Math.max(level, analyzer.getMagnitude(bin));
+				changed |= show(shownBands, b, level);
+			}
+		} else {
+			for(int b = 0; b < BAND_COUNT; b++)
+				changed |= show(shownBands, b, FLOOR_DB);
+		}
+
+		if(changed)
+			repaint();
+	}
+
+	/**
+	 * Updates the shown levels of one meter. If the meter hasn't measured
+	 * a new block since the last refresh, its audio has stopped and the
+	 * shown levels fall toward silence.
+	 *
+	 * @param index - 0 for the master output, or the track number plus 1
+	 * @param meter - the meter to read, or null for none
+	 * @return true if the shown levels changed
+	 */
+	private boolean update(int index, LevelMeter meter) {
+		float peak = FLOOR_DB, rms = FLOOR_DB;
+		if(meter != null && meter.getBlockCount() != lastBlocks[index]) {
+			lastBlocks[index] = meter.getBlockCount();
+			peak = toDecibels(meter.getPeak());
+			rms = toDecibels(meter.getRms());
+		}
+		boolean changed = show(shownPeaks, index, peak);
+		return show(shownRms, index, rms) || changed;
+	}
+
+	/**
+	 * Moves a shown level to a new level. Rises are shown immediately and
+	 * falls are slowed so the meters are readable.
+	 *
+	 * @param shown - the shown levels
+	 * @param index - of the level to move
+	 * @param level - the new level in decibels
+	 * @return true if the shown level changed
+	 */
+	private boolean show(float[] shown, int index, float level) {
+		float old = shown[index];
+		shown[index] = Math.max(level, Math.max(FLOOR_DB, old - fall));
+		return shown[index] != old;
+	}
+
+	/**
+	 * Converts a sample level to decibels, no lower than the floor.
+	 *
+	 * @param level - between 0 and 1
+	 * @return level in decibels relative to full scale
+	 */
+	private static float toDecibels(float level) {
+		return Math.max(FLOOR_DB, (float) (20.0 * Math.log10(level + 1e-9)));
+	}
+
+	/**
+	 * Gets the height in pixels of a bar for a level.
+	 *
+	 * @param level - in decibels
+	 * @param height - of the full bar
+	 * @return height of the bar
+	 */
+	private static int barHeight(float level, int height) {
+		return Math.round(Math.min(1f, (level - FLOOR_DB) / -FLOOR_DB) * height);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		int height = getHeight() - 4;
+		int x = 4;
+
+		// Master first, then the tracks, each with an RMS bar and a peak line
+		for(int i = 0; i < shownPeaks.length; i++) {
+			g.setColor(i == 0 ? Color.ORANGE : Color.GREEN);
+			int rms = barHeight(shownRms[i], height);
+			g.fillRect(x, 2 + height - rms, METER_WIDTH, rms);
+			int peak = barHeight(shownPeaks[i], height);
+			g.setColor(shownPeaks[i] >= -0.1f ? Color.RED : Color.WHITE);
+			g.drawLine(x, 2 + height - peak, x + METER_WIDTH - 1, 2 + height - peak);
+			x += METER_WIDTH + (i == 0 ? 12 : 3);
+		}
+
+		x += 12;
+		int bandWidth = Math.max(2, (getWidth() - x - 4) / BAND_COUNT);
+		g.setColor(Color.CYAN);
+		for(int b = 0; b < BAND_COUNT; b++) {
+			int bar = barHeight(shownBands[b], height);
+			g.fillRect(x + b * bandWidth, 2 + height - bar, bandWidth - 1, bar);
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,581 @@
+package assign11;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Utility class for importing and exporting Standard MIDI Files.
+ *
+ * Files are parsed as they are read, a block at a time, and every note goes
+ * straight into the events of its track; no javax.sound.midi.Sequence is built.
+ * Besides the loaded events, the parser only keeps the start of each note that
+ * is still sounding.
+ *
+ * In a type 1 file each MIDI track that has notes becomes a track; in a type 0
+ * file each MIDI channel that has notes does. Times are rounded to whole beats,
+ * since that is what the editors show, and notes last at least one beat. Each
+ * track takes the first program change and volume controller it contains, or
+ * the General MIDI default volume if it has none, and the song takes the first
+ * tempo. Only the first CHANNEL_COUNT tracks with notes
+ * are imported.
+ *
+ * Exported files are type 1: a first track with the tempo, then one track per
+ * track of the song, on the MIDI channel of the same number.
+ */
+public class MidiFiles {
+	public static final int CHANNEL_COUNT = 16;
+	// Ticks per beat of exported files
+	public static final int EXPORT_RESOLUTION = 480;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int PROGRESS_INTERVAL = 1 << 16;
+	private static final int DEFAULT_TEMPO = 120;
+	// Volume of tracks without a volume controller, the General MIDI default
+	private static final int DEFAULT_VOLUME = 100;
+	private static final int NOTE_OFF = 0x80, NOTE_ON = 0x90, CONTROLLER = 0xB0, PROGRAM = 0xC0;
+	private static final int VOLUME_CONTROLLER = 7;
+	private static final int META = 0xFF, SYSEX = 0xF0, SYSEX_CONTINUED = 0xF7;
+	private static final int META_TRACK_NAME = 0x03, META_END_OF_TRACK = 0x2F, META_TEMPO = 0x51;
+
+	/**
+	 * Checks whether a file is a Standard MIDI File.
+	 *
+	 * @param file - to check
+	 * @return true if the file starts with a MIDI header chunk
+	 */
+	public static boolean isMidi(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer start = ByteBuffer.allocate(4);
+			while(start.hasRemaining() && channel.read(start) > 0);
+			return !start.hasRemaining() && start.getInt(0) == chunkType("MThd");
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Imports a Standard MIDI File.
+	 *
+	 * @param file - to read
+	 * @param synthesizer - used by the imported notes
+	 * @param listener - told how many bytes and notes are read, and checked for cancellation
+	 * @return the song, with one track event per track that has no sequencer yet
+	 * @throws IOException if the file can't be read or isn't a valid MIDI file
+	 * @throws InterruptedIOException if the import was cancelled
+	 */
+	public static SongSnapshot read(File file, SynthesizerBackend synthesizer, ProgressListener listener) throws IOException {
+		Parser parser = new Parser(synthesizer, listener);
+		try (MidiInput in = new MidiInput(file)) {
+			parser.parse(in);
+		}
+		int instruments = synthesizer.getInstrumentNames().size();
+		int songLength = 4;
+		SongSnapshot.Track[] tracks = new SongSnapshot.Track[parser.trackCount];
+		AudioEvent[] songEvents = new AudioEvent[tracks.length];
+		for(int i = 0; i < tracks.length; i++) {
+			int length = roundUp(parser.endBeats[i]);
+			int program = parser.programs[i] >= 0 && parser.programs[i] < instruments ? parser.programs[i] : 0;
+			int volume = parser.volumes[i] >= 0 ? parser.volumes[i] : DEFAULT_VOLUME;
+			tracks[i] = new SongSnapshot.Track(i, program, volume, length, parser.events[i]);
+			songEvents[i] = new TrackEvent(0, "TrackEvent", i, length, null);
+			songLength = Math.max(songLength, length);
+		}
+		return new SongSnapshot(0, parser.tempo, songLength, songEvents, tracks);
+	}
+
+	/**
+	 * Exports a snapshot of a song as a type 1 Standard MIDI File. The file is
+	 * written through a buffer as it is encoded and replaces the old file once
+	 * it is complete (see SongFiles.writeAtomically).
+	 *
+	 * @param file - to write
+	 * @param song - snapshot of the song
+	 * @param listener - told how many bytes and notes are written, and checked for cancellation
+	 * @throws IOException if the file can't be written or the song has too many tracks
+	 * @throws InterruptedIOException if the export was cancelled
+	 */
+	public static void save(File file, SongSnapshot song, ProgressListener listener) throws IOException {
+		if(song.tracks.length > CHANNEL_COUNT)
+			throw new IOException("A MIDI file can only hold " + CHANNEL_COUNT + " tracks");
+		SongFiles.writeAtomically(file, channel -> {
+			MidiOutput out = new MidiOutput(channel);
+			out.writeInt(chunkType("MThd"));
+			out.writeInt(6);
+			out.writeShort(1);
+			out.writeShort(song.tracks.length + 1);
+			out.writeShort(EXPORT_RESOLUTION);
+
+			long start = out.beginChunk();
+			int microseconds = 60_000_000 / Math.max(1, song.tempo);
+			out.writeVarLen(0);
+			out.writeByte(META);
+			out.writeByte(META_TEMPO);
+			out.writeVarLen(3);
+			out.writeByte(microseconds >> 16);
+			out.writeByte(microseconds >> 8);
+			out.writeByte(microseconds);
+			out.endTrack(start);
+
+			long notes = 0;
+			for(int i = 0; i < song.tracks.length; i++) {
+				listener.checkCancelled();
+				notes += writeTrack(out, i, song.tracks[i]);
+				listener.progress(out.position(), notes);
+			}
+			out.flush();
+		});
+	}
+
+	/**
+	 * Writes the chunk of one track: its name, instrument and volume, then
+	 * its notes, using running status.
+	 *
+	 * @param out - the output
+	 * @param number - the track's number, which is also its MIDI channel
+	 * @param track - the track
+	 * @return the number of notes written
+	 * @throws IOException if the track can't be loaded or written
+	 */
+	private static int writeTrack(MidiOutput out, int number, SongSnapshot.Track track) throws IOException {
+		BetterDynamicArray<AudioEvent> events = track.events.load();
+		// Each note on and off packed as tick, then off before on, then pitch, so sorting orders them
+		long[] messages = new long[events.size() * 2];
+		int count = 0;
+		for(AudioEvent event : events) {
+			if(event instanceof NoteEvent note) {
+				long on = (long) note.getTime() * EXPORT_RESOLUTION;
+				long off = on + (long) Math.max(1, note.getDuration()) * EXPORT_RESOLUTION;
+				int pitch = note.getPitch() & 0x7F;
+				messages[count++] = on << 8 | 0x80 | pitch;
+				messages[count++] = off << 8 | pitch;
+			}
+		}
+		Arrays.sort(messages, 0, count);
+
+		long start = out.beginChunk();
+		byte[] name = ("Track " + number).getBytes(StandardCharsets.US_ASCII);
+		out.writeVarLen(0);
+		out.writeByte(META);
+		out.writeByte(META_TRACK_NAME);
+		out.writeVarLen(name.length);
+		for(byte b : name)
+			out.writeByte(b);
+		out.writeVarLen(0);
+		out.writeByte(PROGRAM | number);
+		out.writeByte(track.instrument & 0x7F);
+		out.writeVarLen(0);
+		out.writeByte(CONTROLLER | number);
+		out.writeByte(VOLUME_CONTROLLER);
+		out.writeByte(track.volume & 0x7F);
+
+		// Note offs are note ons with velocity 0, so every note shares one status byte
+		long tick = 0;
+		for(int i = 0; i < count; i++) {
+			long message = messages[i];
+			out.writeVarLen((message >>> 8) - tick);
+			tick = message >>> 8;
+			if(i == 0)
+				out.writeByte(NOTE_ON | number);
+			out.writeByte((int) message & 0x7F);
+			out.writeByte((message & 0x80) != 0 ? 100 : 0);
+		}
+		out.endTrack(start);
+		return count / 2;
+	}
+
+	/**
+	 * Parses a MIDI file into the events of each track.
+	 */
+	private static class Parser {
+		private final SynthesizerBackend synthesizer;
+		private final ProgressListener listener;
+		private int format, resolution;
+		private int tempo = -1;
+
+		// One entry per imported track
+		private int trackCount;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final BetterDynamicArray<AudioEvent>[] events = new BetterDynamicArray[CHANNEL_COUNT];
+		private final int[] programs = new int[CHANNEL_COUNT];
+		private final int[] volumes = new int[CHANNEL_COUNT];
+		private final int[] endBeats = new int[CHANNEL_COUNT];
+
+		// The imported track of each MIDI channel (type 0) or of the current MIDI track (type 1), or -1
+		private final int[] channelTracks = new int[CHANNEL_COUNT];
+		private int midiTrackTrack;
+		// Program and volume seen before the first note of the current MIDI track or channel
+		private final int[] firstPrograms = new int[CHANNEL_COUNT];
+		private final int[] firstVolumes = new int[CHANNEL_COUNT];
+		// Tick each sounding note started at, by channel and pitch, or -1
+		private final long[] noteStarts = new long[CHANNEL_COUNT * 128];
+		private long notes;
+		private boolean skippedTracks, endOfTrack;
+
+		Parser(SynthesizerBackend synthesizer, ProgressListener listener) {
+			this.synthesizer = synthesizer;
+			this.listener = listener;
+			Arrays.fill(programs, -1);
+			Arrays.fill(volumes, -1);
+			Arrays.fill(channelTracks, -1);
+		}
+
+		void parse(MidiInput in) throws IOException {
+			if(in.readInt() != chunkType("MThd"))
+				throw new IOException("Not a MIDI file");
+			long headerLength = in.readInt() & 0xFFFFFFFFL;
+			format = in.readShort();
+			int midiTracks = in.readShort();
+			resolution = in.readShort();
+			in.skip(headerLength - 6);
+			if(format > 2)
+				throw new IOException("Unknown MIDI file format " + format);
+			if((resolution & 0x8000) != 0 || resolution == 0)
+				throw new IOException("MIDI files timed in SMPTE frames aren't supported");
+
+			for(int track = 0; track < midiTracks; track++) {
+				int type = in.readInt();
+				long length = in.readInt() & 0xFFFFFFFFL;
+				if(type != chunkType("MTrk")) {
+					in.skip(length);
+					track--;
+					continue;
+				}
+				parseTrack(in, in.position() + length);
+			}
+			if(tempo <= 0)
+				tempo = DEFAULT_TEMPO;
+			if(skippedTracks)
+				System.out.println("Only the first " + CHANNEL_COUNT + " MIDI tracks with notes were imported");
+			listener.progress(in.position(), notes);
+		}
+
+		private void parseTrack(MidiInput in, long end) throws IOException {
+			midiTrackTrack = -1;
+			Arrays.fill(firstPrograms, -1);
+			Arrays.fill(firstVolumes, -1);
+			Arrays.fill(noteStarts, -1);
+			if(format == 0)
+				Arrays.fill(channelTracks, -1);
+			long tick = 0;
+			int status = 0;
+			while(in.position() < end) {
+				tick += in.readVarLen();
+				int data = in.readByte();
+				if(data >= 0x80) {
+					status = data;
+					if(status >= SYSEX) {
+						// System messages cancel running status
+						parseSystem(in, status);
+						if(status == META && endOfTrack)
+							break;
+						status = 0;
+						continue;
+					}
+					data = in.readByte();
+				} else if(status == 0) {
+					throw new IOException("MIDI data without a status byte");
+				}
+				int channel = status & 0x0F;
+				switch(status & 0xF0) {
+				case NOTE_ON: {
+					int velocity = in.readByte();
+					if(velocity > 0)
+						noteOn(channel, data, tick);
+					else
+						noteOff(channel, data, tick);
+					break;
+				}
+				case NOTE_OFF:
+					in.readByte();
+					noteOff(channel, data, tick);
+					break;
+				case CONTROLLER: {
+					int value = in.readByte();
+					if(data == VOLUME_CONTROLLER)
+						setting(volumes, firstVolumes, channel, value);
+					break;
+				}
+				case PROGRAM:
+					setting(programs, firstPrograms, channel, data);
+					break;
+				case 0xD0:
+					break;
+				default:
+					// Aftertouch and pitch bend have a second data byte
+					in.readByte();
+				}
+			}
+			// Notes still sounding end with the track
+			for(int i = 0; i < noteStarts.length; i++)
+				if(noteStarts[i] >= 0)
+					noteOff(i / 128, i % 128, tick);
+			in.skip(end - in.position());
+		}
+
+		private void parseSystem(MidiInput in, int status) throws IOException {
+			endOfTrack = false;
+			if(status != META) {
+				if(status != SYSEX && status != SYSEX_CONTINUED)
+					throw new IOException("Damaged MIDI file");
+				in.skip(in.readVarLen());
+				return;
+			}
+			int type = in.readByte();
+			long length = in.readVarLen();
+			if(type == META_TEMPO && length == 3 && tempo < 0) {
+				int microseconds = in.readByte() << 16 | in.readByte() << 8 | in.readByte();
+				tempo = Math.max(1, Math.round(60_000_000f / Math.max(1, microseconds)));
+			} else {
+				in.skip(length);
+				endOfTrack = type == META_END_OF_TRACK;
+			}
+		}
+
+		/**
+		 * Gets the imported track that notes of a channel go to, adding one
+		 * for the first note.
+		 *
+		 * @return the track, or -1 if there are already too many
+		 */
+		private int trackOf(int channel) {
+			int track = format == 0 ? channelTracks[channel] : midiTrackTrack;
+			if(track >= 0)
+				return track;
+			if(trackCount == CHANNEL_COUNT) {
+				skippedTracks = true;
+				return -1;
+			}
+			track = trackCount++;
+			events[track] = new BetterDynamicArray<>();
+			if(format == 0)
+				channelTracks[channel] = track;
+			else
+				midiTrackTrack = track;
+			// Settings that came before the first note
+			for(int c = 0; c < CHANNEL_COUNT; c++) {
+				if(format == 0 && c != channel)
+					continue;
+				if(programs[track] < 0)
+					programs[track] = firstPrograms[c];
+				if(volumes[track] < 0)
+					volumes[track] = firstVolumes[c];
+			}
+			return track;
+		}
+
+		private void setting(int[] values, int[] firstValues, int channel, int value) {
+			int track = format == 0 ? channelTracks[channel] : midiTrackTrack;
+			if(track >= 0) {
+				if(values[track] < 0)
+					values[track] = value;
+			} else if(firstValues[channel] < 0) {
+				firstValues[channel] = value;
+			}
+		}
+
+		private void noteOn(int channel, int pitch, long tick) throws IOException {
+			// A note that starts again ends the one already sounding
+			if(noteStarts[channel * 128 + pitch] >= 0)
+				noteOff(channel, pitch, tick);
+			noteStarts[channel * 128 + pitch] = tick;
+		}
+
+		private void noteOff(int channel, int pitch, long tick) throws IOException {
+			long start = noteStarts[channel * 128 + pitch];
+			if(start < 0)
+				return;
+			noteStarts[channel * 128 + pitch] = -1;
+			int track = trackOf(channel);
+			if(track < 0)
+				return;
+			int time = toBeats(start);
+			int duration = Math.max(1, toBeats(tick) - time);
+			events[track].add(new NoteEvent(time, "Note", track, duration, pitch, synthesizer));
+			endBeats[track] = Math.max(endBeats[track], time + duration);
+			if(++notes % PROGRESS_INTERVAL == 0) {
+				listener.progress(0, notes);
+				listener.checkCancelled();
+			}
+		}
+
+		private int toBeats(long tick) throws IOException {
+			long beats = (tick + resolution / 2) / resolution;
+			if(beats > Integer.MAX_VALUE / 2)
+				throw new IOException("MIDI file is too long");
+			return (int) beats;
+		}
+	}
+
+	/**
+	 * Rounds a length in beats up to a whole bar of 4 beats.
+	 */
+	private static int roundUp(int beats) {
+		return Math.max(4, (beats + 3) / 4 * 4);
+	}
+
+	private static int chunkType(String type) {
+		return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+	}
+
+	/**
+	 * Reads a file in large blocks, with the big endian numbers of MIDI files.
+	 */
+	private static class MidiInput implements AutoCloseable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long bufferStart;
+
+		MidiInput(File file) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			buffer.limit(0);
+		}
+
+		long position() {
+			return bufferStart + buffer.position();
+		}
+
+		int readByte() throws IOException {
+			if(!buffer.hasRemaining())
+				fill();
+			return buffer.get() & 0xFF;
+		}
+
+		int readShort() throws IOException {
+			return readByte() << 8 | readByte();
+		}
+
+		int readInt() throws IOException {
+			return readShort() << 16 | readShort();
+		}
+
+		long readVarLen() throws IOException {
+			long value = 0;
+			for(int i = 0; i < 4; i++) {
+				int b = readByte();
+				value = value << 7 | (b & 0x7F);
+				if(b < 0x80)
+					return value;
+			}
+			throw new IOException("Damaged MIDI file");
+		}
+
+		void skip(long count) throws IOException {
+			if(count < 0)
+				throw new IOException("Damaged MIDI file");
+			while(count > 0) {
+				if(!buffer.hasRemaining())
+					fill();
+				int step = (int) Math.min(count, buffer.remaining());
+				buffer.position(buffer.position() + step);
+				count -= step;
+			}
+		}
+
+		private void fill() throws IOException {
+			bufferStart += buffer.limit();
+			buffer.clear();
+			int read;
+			do {
+				read = channel.read(buffer);
+			} while(read == 0);
+			buffer.flip();
+			if(read < 0)
+				throw new EOFException("MIDI file ends early");
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes a file through a large buffer, with the big endian numbers of
+	 * MIDI files. Chunk lengths are filled in once each chunk is written.
+	 */
+	private static class MidiOutput {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		MidiOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		long position() throws IOException {
+			return channel.position() + buffer.position();
+		}
+
+		void writeByte(int value) throws IOException {
+			if(!buffer.hasRemaining())
+				flush();
+			buffer.put((byte) value);
+		}
+
+		void writeShort(int value) throws IOException {
+			writeByte(value >> 8);
+			writeByte(value);
+		}
+
+		void writeInt(int value) throws IOException {
+			writeShort(value >> 16);
+			writeShort(value);
+		}
+
+		void writeVarLen(long value) throws IOException {
+			if(value > 0x0FFFFFFF)
+				throw new IOException("Time between MIDI events is too long");
+			int shift = 21;
+			while(shift > 0 && (value >> shift) == 0)
+				shift -= 7;
+			for(; shift > 0; shift -= 7)
+				writeByte((int) (value >> shift) & 0x7F | 0x80);
+			writeByte((int) value & 0x7F);
+		}
+
+		/**
+		 * Starts a track chunk with a length to be filled in.
+		 *
+		 * @return where the chunk's data starts
+		 */
+		long beginChunk() throws IOException {
+			writeInt(chunkType("MTrk"));
+			writeInt(0);
+			return position();
+		}
+
+		/**
+		 * Ends a track chunk with an end of track event and fills in its length.
+		 *
+		 * @param start - where the chunk's data starts
+		 */
+		void endTrack(long start) throws IOException {
+			writeVarLen(0);
+			writeByte(META);
+			writeByte(META_END_OF_TRACK);
+			writeVarLen(0);
+			long length = position() - start;
+			if(length > 0xFFFFFFFFL)
+				throw new IOException("MIDI track is too long");
+			flush();
+			ByteBuffer patch = ByteBuffer.allocate(4).putInt((int) length);
+			patch.flip();
+			long end = channel.position();
+			channel.write(patch, start - 4);
+			channel.position(end);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package assign11;
+
+import java.util.ArrayList;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * A backend that sends everything to an external midi output device,
+ * such as a hardware synthesizer or a virtual midi port.
+ *
+ * External devices can't be asked for their instruments or volumes, so
+ * this offers the 128 General Midi programs and remembers the volumes it
+ * has sent. If no matching device can be opened, a message is printed and
+ * this backend can still be used but won't produce any sound.
+ *
+ * @version 2026-10-19
+ */
+public class MidiOutBackend implements SynthesizerBackend {
+	private MidiDevice device;
+	private Receiver receiver;
+	private final int[] volumes;
+
+	/**
+	 * Opens the first midi output device whose name contains the given text.
+	 *
+	 * @param deviceName - part of the device name to look for
+	 */
+	public MidiOutBackend(String deviceName) {
+		volumes = new int[16];
+		for(int i = 0; i < volumes.length; i++)
+			volumes[i] = 100;
+		try {
+			for(MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+				if(!info.getName().contains(deviceName))
+					continue;
+				MidiDevice candidate = MidiSystem.getMidiDevice(info);
+				if(candidate.getMaxReceivers() == 0)
+					continue;
+				candidate.open();
+				device = candidate;
+				receiver = candidate.getReceiver();
+				return;
+			}
+			System.out.println("Couldn't find a midi output named " + deviceName + ".");
+		} catch (MidiUnavailableException e) {
+			System.out.println("Couldn't open the midi output " + deviceName + ".");
+			e.printStackTrace();
+			if(device != null)
+				device.close();
+			device = null;
+			receiver = null;
+		}
+	}
+
+	/**
+	 * Closes the midi output device.
+	 */
+	public void close() {
+		if(device != null)
+			device.close();
+		device = null;
+		receiver = null;
+	}
+
+	/**
+	 * Sends a short message to the device, if it is open.
+	 *
+	 * @param command - midi command
+	 * @param channel - of the message
+	 * @param data1 - first data byte
+	 * @param data2 - second data byte
+	 */
+	private void send(int command, int channel, int data1, int data2) {
+		if(receiver == null)
+			return;
+		try {
+			receiver.send(new ShortMessage(command, channel, data1, data2), -1);
+		} catch (InvalidMidiDataException e) {
+			// Values are validated before sending, so this shouldn't happen
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public ArrayList<String> getInstrumentNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		for(int i = 1; i <= 128; i++)
+			names.add("Program " + i);
+		return names;
+	}
+
+	@Override
+	public ArrayList<Integer> getValidChannelIndices() {
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+		for(int i = 0; i < 16; i++)
+			indices.add(i);
+		return indices;
+	}
+
+	@Override
+	public void setInstrument(int channel, int instrumentIndex) {
+		checkChannel(channel);
+		if(instrumentIndex > 127 || instrumentIndex < 0)
+			throw new IllegalArgumentException("Invalid instrument index. Maximum is 127");
+		send(ShortMessage.PROGRAM_CHANGE, channel, instrumentIndex, 0);
+	}
+
+	@Override
+	public void setVolume(int channel, int volume) {
+		checkChannel(channel);
+		volumes[channel] = Math.max(0, Math.min(127, volume));
+		// Note: 7 is the control number for volume (midi 1.0 spec)
+		send(ShortMessage.CONTROL_CHANGE, channel, 7, volumes[channel]);
+	}
+
+	@Override
+	public int getVolume(int channel) {
+		checkChannel(channel);
+		return volumes[channel];
+	}
+
+	/**
+	 * Mutes a channel by sending volume 0, and unmutes it by sending the
+	 * last volume again. Midi has no mute message of its own.
+	 */
+	@Override
+	public void setMute(int channel, boolean mute) {
+		checkChannel(channel);
+		send(ShortMessage.CONTROL_CHANGE, channel, 7, mute ? 0 : volumes[channel]);
+	}
+
+	@Override
+	public void setPitchBend(int channel, int amount) {
+		checkChannel(channel);
+		int value = Math.max(-8192, Math.min(8191, amount)) + 8192;
+		send(ShortMessage.PITCH_BEND, channel, value & 0x7F, value >> 7);
+	}
+
+	@Override
+	public void noteOn(int channel, int pitch) {
+		if(channel >= 0 && channel < 16 && pitch >= 0 && pitch < 128)
+			send(ShortMessage.NOTE_ON, channel, pitch, 100);
+	}
+
+	@Override
+	public void noteOff(int channel, int pitch) {
+		if(channel >= 0 && channel < 16 && pitch >= 0 && pitch < 128)
+			send(ShortMessage.NOTE_OFF, channel, pitch, 0);
+	}
+
+	@Override
+	public void allNotesOff() {
+		// Note: 123 is the control number for all notes off (midi 1.0 spec)
+		for(int i = 0; i < 16; i++)
+			send(ShortMessage.CONTROL_CHANGE, i, 123, 0);
+	}
+
+	/**
+	 * Checks that a channel index is valid.
+	 *
+	 * @param channel - index to check
+	 * @throws IllegalArgumentException if the channel index is invalid
+	 */
+	private static void checkChannel(int channel) {
+		if(channel < 0 || channel > 15)
+			throw new IllegalArgumentException("Invalid channel");
+	}
+}
@@ -0,0 +1,306 @@
+package assign11;
+
+import java.util.Arrays;
+
+/**
+ * Mixes any number of audio sources into one stereo output, one block at a time.
+ * Each source goes through a strip with its own effects, gain, pan and mute, and
+ * the sum goes through the master effects, a master gain and a peak limiter so
+ * the output never clips. Each block is pulled from the sources when it is
+ * processed.
+ *
+ * All buffers are allocated when strips are added, so process does not
+ * allocate any memory. Blocks may be at most maxBlockSize frames long.
+ *
+ * @version 2026-10-19
+ */
+public class MixerEngine {
+
+	/**
+	 * Something that provides audio to a strip.
+	 */
+	public interface Source {
+		/**
+		 * Fills a block with the source's audio starting at a given frame.
+		 * Every sample up to frames must be written, with zeros where the
+		 * source is silent.
+		 *
+		 * @param frame - position of the first frame in the mix
+		 * @param left - receives samples for the left channel
+		 * @param right - receives samples for the right channel
+		 * @param frames - number of frames to fill
+		 */
+		void read(long frame, float[] left, float[] right, int frames);
+	}
+
+	/**
+	 * A source that plays a rendered track once, starting at a given frame of the mix.
+	 */
+	public static class TrackSource implements Source {
+		private final RenderedTrack track;
+		private final long startFrame;
+
+		/**
+		 * Creates a source for a rendered track.
+		 *
+		 * @param track - to play
+		 * @param startFrame - frame of the mix where the track starts
+		 */
+		public TrackSource(RenderedTrack track, long startFrame) {
+			this.track = track;
+			this.startFrame = startFrame;
+		}
+
+		@Override
+		public void read(long frame, float[] left, float[] right, int frames) {
+			long offset = frame - startFrame;
+			int skip = (int) Math.max(0, Math.min(frames, -offset));
+			int count = 0;
+			if(skip < frames && offset + skip < track.getFrameCount()) {
+				// read into the front of the arrays, then move into place
+				count = track.read((int) (offset + skip), left, right, frames - skip);
+				if(skip > 0) {
+					System.arraycopy(left, 0, left, skip, count);
+					System.arraycopy(right, 0, right, skip, count);
+				}
+			}
+			for(int i = 0; i < skip; i++) {
+				left[i] = 0f;
+				right[i] = 0f;
+			}
+			for(int i = skip + count; i < frames; i++) {
+				left[i] = 0f;
+				right[i] = 0f;
+			}
+		}
+	}
+
+	private final int maxBlockSize;
+	private Source[] sources;
+	private float[] gains, pans, leftGains, rightGains;
+	private boolean[] muted;
+	private EffectChain[] effects;
+	private int stripCount;
+	private final float[] stripLeft, stripRight;
+
+	private EffectChain masterEffects;
+	private float masterGain;
+	private float limiterThreshold;
+	private float limiterGain;
+	private float limiterRelease;
+
+	/**
+	 * Creates a mixer with no strips.
+	 *
+	 * @param maxBlockSize - largest number of frames passed to process
+	 * @param sampleRate - used to set the limiter release time
+	 */
+	public MixerEngine(int maxBlockSize, float sampleRate) {
+		this.maxBlockSize = maxBlockSize;
+		sources = new Source[8];
+		gains = new float[8];
+		pans = new float[8];
+		leftGains = new float[8];
+		rightGains = new float[8];
+		muted = new boolean[8];
+		effects = new EffectChain[8];
+		stripLeft = new float[maxBlockSize];
+		stripRight = new float[maxBlockSize];
+		masterGain = 1f;
+		limiterThreshold = 0.98f;
+		limiterGain = 1f;
+		// Recover from gain reduction with a time constant of about 100 ms
+		limiterRelease = (float) (1.0 - Math.exp(-1.0 / (0.1 * sampleRate)));
+	}
+
+	/**
+	 * Adds a strip for a source, with gain 1 and center pan.
+	 *
+	 * @param source - audio for the strip
+	 * @return index of the new strip
+	 */
+	public int addStrip(Source source) {
+		if(stripCount == sources.length) {
+			int size = stripCount * 2;
+			sources = Arrays.copyOf(sources, size);
+			gains = Arrays.copyOf(gains, size);
+			pans = Arrays.copyOf(pans, size);
+			leftGains = Arrays.copyOf(leftGains, size);
+			rightGains = Arrays.copyOf(rightGains, size);
+			muted = Arrays.copyOf(muted, size);
+			effects = Arrays.copyOf(effects, size);
+		}
+		sources[stripCount] = source;
+		gains[stripCount] = 1f;
+		pans[stripCount] = 0f;
+		muted[stripCount] = false;
+		updateStrip(stripCount);
+		return stripCount++;
+	}
+
+	/**
+	 * Gets the number of strips.
+	 *
+	 * @return number of strips
+	 */
+	public int getStripCount() {
+		return stripCount;
+	}
+
+	/**
+	 * Sets the gain of a strip.
+	 *
+	 * @param strip - index of the strip
+	 * @param gain - multiplier for the strip's samples
+	 */
+	public void setGain(int strip, float gain) {
+		checkStrip(strip);
+		gains[strip] = gain;
+		updateStrip(strip);
+	}
+
+	/**
+	 * Sets the pan of a strip. Panning keeps the total power constant,
+	 * so a sound doesn't get quieter in the middle.
+	 *
+	 * @param strip - index of the strip
+	 * @param pan - from -1 (left) to 1 (right), clamped
+	 */
+	public void setPan(int strip, float pan) {
+		checkStrip(strip);
+		pans[strip] = Math.max(-1f, Math.min(1f, pan));
+		updateStrip(strip);
+	}
+
+	/**
+	 * Mutes or unmutes a strip. Muted strips are not read at all.
+	 *
+	 * @param strip - index of the strip
+	 * @param mute - true to mute, false to unmute
+	 */
+	public void setMute(int strip, boolean mute) {
+		checkStrip(strip);
+		muted[strip] = mute;
+	}
+
+	/**
+	 * Sets the effects of a strip, applied before its gain and pan.
+	 *
+	 * @param strip - index of the strip
+	 * @param chain - effects for the strip, or null for none
+	 */
+	public void setEffects(int strip, EffectChain chain) {
+		checkStrip(strip);
+		effects[strip] = chain;
+	}
+
+	/**
+	 * Sets the effects applied to the sum of all strips, before the master gain.
+	 *
+	 * @param chain - effects for the master output, or null for none
+	 */
+	public void setMasterEffects(EffectChain chain) {
+		masterEffects = chain;
+	}
+
+	/**
+	 * Sets the gain applied to the sum of all strips, before the limiter.
+	 *
+	 * @param gain - multiplier for the mix
+	 */
+	public void setMasterGain(float gain) {
+		masterGain = gain;
+	}
+
+	/**
+	 * Sets the level the limiter keeps the output under.
+	 *
+	 * @param threshold - maximum absolute sample value, between 0 and 1
+	 */
+	public void setLimiterThreshold(float threshold) {
+		limiterThreshold = Math.max(0.01f, Math.min(1f, threshold));
+	}
+
+	/**
+	 * Gets the gain the limiter is currently applying, 1 when it isn't limiting.
+	 *
+	 * @return current limiter gain
+	 */
+	public float getLimiterGain() {
+		return limiterGain;
+	}
+
+	/**
+	 * Mixes one block from all strips.
+	 * The output arrays are overwritten from index 0 up to frames.
+	 *
+	 * @param frame - position of the block in the mix
+	 * @param left - output for the left channel
+	 * @param right - output for the right channel
+	 * @param frames - number of frames, at most maxBlockSize
+	 * @throws IllegalArgumentException if frames is larger than maxBlockSize
+	 */
+	public void process(long frame, float[] left, float[] right, int frames) {
+		if(frames > maxBlockSize)
+			throw new IllegalArgumentException("Block is larger than " + maxBlockSize + " frames");
+		for(int i = 0; i < frames; i++) {
+			left[i] = 0f;
+			right[i] = 0f;
+		}
+
+		for(int s = 0; s < stripCount; s++) {
+			if(muted[s])
+				continue;
+			sources[s].read(frame, stripLeft, stripRight, frames);
+			if(effects[s] != null)
+				effects[s].process(stripLeft, stripRight, frames);
+			float leftGain = leftGains[s];
+			float rightGain = rightGains[s];
+			for(int i = 0; i < frames; i++) {
+				left[i] += stripLeft[i] * leftGain;
+				right[i] += stripRight[i] * rightGain;
+			}
+		}
+
+		if(masterEffects != null)
+			masterEffects.process(left, right, frames);
+
+		// Instant attack, exponential release
+		float gain = limiterGain;
+		for(int i = 0; i < frames; i++) {
+			float l = left[i] * masterGain;
+			float r = right[i] * masterGain;
+			float peak = Math.max(Math.abs(l), Math.abs(r));
+			if(peak * gain > limiterThreshold)
+				gain = limiterThreshold / peak;
+			else
+				gain += (1f - gain) * limiterRelease;
+			left[i] = l * gain;
+			right[i] = r * gain;
+		}
+		limiterGain = gain;
+	}
+
+	/**
+	 * Recomputes the left and right gains of a strip from its gain and pan.
+	 *
+	 * @param strip - index of the strip
+	 */
+	private void updateStrip(int strip) {
+		double angle = (pans[strip] + 1.0) * Math.PI / 4.0;
+		// Scale so that center pan leaves both channels at the strip gain
+		leftGains[strip] = (float) (gains[strip] * Math.cos(angle) * Math.sqrt(2.0));
+		rightGains[strip] = (float) (gains[strip] * Math.sin(angle) * Math.sqrt(2.0));
+	}
+
+	/**
+	 * Checks that a strip index is valid.
+	 *
+	 * @param strip - index to check
+	 * @throws IndexOutOfBoundsException if there is no such strip
+	 */
+	private void checkStrip(int strip) {
+		if(strip < 0 || strip >= stripCount)
+			throw new IndexOutOfBoundsException();
+	}
+}
@@ -9,7 +9,7 @@ package assign11;
 public class NoteEvent extends AudioEvent{
 	private int duration;
 	private int pitch;
-	private SimpleSynthesizer simpleSynth;
+	private SynthesizerBackend simpleSynth;
 	
 	/**
 	 * The constructor for the NoteEvent class. It takes 3 parameters for the AudioEvent constructor and
@@ -20,7 +20,7 @@ public class NoteEvent extends AudioEvent{
 	 * @param duration is how long the note plays for.
 	 * @param pitch is the frequency of the sound. 
 	 */
-	public NoteEvent(int time, String instrument, int channel, int duration, int pitch, SimpleSynthesizer simpleSynth) {
+	public NoteEvent(int time, String instrument, int channel, int duration, int pitch, SynthesizerBackend simpleSynth) {
 		super(time, instrument, channel);
 		this.duration = duration;
 		this.pitch = pitch;
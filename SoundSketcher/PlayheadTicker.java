@@ -0,0 +1,93 @@
+package assign11;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Moves the playheads of the editors whose sequences are playing.
+ *
+ * All editors share one Swing timer ticking at most DEFAULT_FRAME_RATE times
+ * per second (see setFrameRate). A sequencer wakes the ticker when it starts
+ * or stops, and the timer stops once none of them are playing, so editors
+ * cost nothing while the transport is stopped. Each tick only repaints the
+ * strip an editor's playhead moved through (see GridCanvas.setPlayhead).
+ *
+ * @version 2026-10-19
+ */
+public class PlayheadTicker {
+	public static final int DEFAULT_FRAME_RATE = 60;
+
+	private static final Timer timer = new Timer(1000 / DEFAULT_FRAME_RATE, e -> tick());
+	// The editors being moved and their sequencers; only used on the event dispatch thread
+	private static final Map<GridCanvas, SimpleSequencer> playing = new LinkedHashMap<>();
+
+	static {
+		timer.setCoalesce(true);
+	}
+
+	private PlayheadTicker() {}
+
+	/**
+	 * Sets how many times per second playheads move.
+	 *
+	 * @param framesPerSecond - at least 1
+	 */
+	public static void setFrameRate(int framesPerSecond) {
+		int delay = 1000 / Math.max(1, framesPerSecond);
+		SwingUtilities.invokeLater(() -> {
+			timer.setDelay(delay);
+			timer.setInitialDelay(delay);
+		});
+	}
+
+	/**
+	 * Makes an editor's playhead show the position of a sequence while it
+	 * plays, and rest at the start of the editor otherwise.
+	 *
+	 * @param canvas - the editor
+	 * @param sequencer - the sequence it shows
+	 */
+	public static void follow(GridCanvas canvas, SimpleSequencer sequencer) {
+		sequencer.addSequenceListener(new SimpleSequencer.SequenceListener() {
+			@Override
+			public void runningChanged() {
+				SwingUtilities.invokeLater(() -> wake(canvas, sequencer));
+			}
+		});
+	}
+
+	/**
+	 * Moves an editor's playhead right away and keeps moving it while its
+	 * sequence plays.
+	 */
+	private static void wake(GridCanvas canvas, SimpleSequencer sequencer) {
+		playing.put(canvas, sequencer);
+		tick();
+		if(!playing.isEmpty() && !timer.isRunning())
+			timer.start();
+	}
+
+	/**
+	 * Moves every playhead, dropping the editors whose sequences stopped
+	 * once their playheads are back at the start.
+	 */
+	private static void tick() {
+		Iterator<Map.Entry<GridCanvas, SimpleSequencer>> entries = playing.entrySet().iterator();
+		while(entries.hasNext()) {
+			Map.Entry<GridCanvas, SimpleSequencer> entry = entries.next();
+			SimpleSequencer sequencer = entry.getValue();
+			if(sequencer.isRunning()) {
+				entry.getKey().setPlayhead(sequencer.getElapsedTime());
+			} else {
+				entry.getKey().setPlayhead(0);
+				entries.remove();
+			}
+		}
+		if(playing.isEmpty())
+			timer.stop();
+	}
+}
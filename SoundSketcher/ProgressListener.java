@@ -0,0 +1,50 @@
+package assign11;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Receives the progress of a song file being loaded or saved, and can cancel it.
+ * Progress may be reported from any thread.
+ *
+ * @version 2026-10-19
+ */
+public interface ProgressListener {
+	/**
+	 * A listener that ignores progress and never cancels.
+	 */
+	ProgressListener NONE = new ProgressListener() {
+		@Override
+		public void progress(long bytes, long events) {
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+	};
+
+	/**
+	 * Called as the file is processed.
+	 *
+	 * @param bytes - number of bytes of the file read or written so far
+	 * @param events - number of events read or written so far
+	 */
+	void progress(long bytes, long events);
+
+	/**
+	 * Tells whether the load or save should stop.
+	 *
+	 * @return true to stop as soon as possible
+	 */
+	boolean isCancelled();
+
+	/**
+	 * Stops the load or save if it was cancelled.
+	 *
+	 * @throws InterruptedIOException if it was cancelled
+	 */
+	default void checkCancelled() throws InterruptedIOException {
+		if(isCancelled())
+			throw new InterruptedIOException("Cancelled");
+	}
+}
@@ -0,0 +1,237 @@
+package assign11;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A backend that makes no sound. Every message it receives is stored
+ * with a timestamp in a ring buffer of primitives, so recording costs
+ * two array writes and never allocates. When the ring buffer is full,
+ * the oldest messages are overwritten.
+ *
+ * With a capacity of zero nothing is recorded, not even a count, and this
+ * is a null sink, which is useful for measuring the sequencer without any
+ * synthesizer cost.
+ *
+ * Messages can arrive on more than one thread, so storing one takes a lock.
+ * The count of written messages is published after the message is stored,
+ * so a reader never sees a slot before it is written.
+ *
+ * Messages are packed into an int as status | data1 << 8 | data2 << 16,
+ * using the midi status bytes for note on, note off, control change,
+ * program change and pitch bend.
+ *
+ * @version 2026-10-19
+ */
+public class RecordingBackend implements SynthesizerBackend {
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	public static final int NOTE_OFF = 0x80;
+	public static final int NOTE_ON = 0x90;
+	public static final int CONTROL_CHANGE = 0xB0;
+	public static final int PROGRAM_CHANGE = 0xC0;
+	public static final int PITCH_BEND = 0xE0;
+
+	private final long[] timestamps;
+	private final int[] messages;
+	private final int mask;
+	private final AtomicLong written;
+
+	private final int[] volumes;
+	private final int[] instruments;
+
+	/**
+	 * Creates a recording backend. The capacity is rounded up to a power of two.
+	 *
+	 * @param capacity - number of messages kept, or 0 to record nothing
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	public RecordingBackend(int capacity) {
+		if(capacity < 0)
+			throw new IllegalArgumentException("Capacity can't be negative");
+		int size = capacity == 0 ? 0 : Integer.highestOneBit(capacity - 1) << 1;
+		if(capacity == 1)
+			size = 1;
+		timestamps = new long[size];
+		messages = new int[size];
+		mask = size - 1;
+		written = new AtomicLong();
+		volumes = new int[16];
+		instruments = new int[16];
+		for(int i = 0; i < volumes.length; i++)
+			volumes[i] = 100;
+	}
+
+	/**
+	 * Stores one message in the ring buffer.
+	 *
+	 * @param status - midi status byte without the channel
+	 * @param channel - of the message
+	 * @param data1 - first data byte
+	 * @param data2 - second data byte
+	 */
+	private void record(int status, int channel, int data1, int data2) {
+		if(timestamps.length == 0)
+			return;
+		synchronized(timestamps) {
+			long count = written.get();
+			int slot = (int) (count & mask);
+			timestamps[slot] = System.nanoTime();
+			messages[slot] = (status | (channel & 0x0F)) | (data1 & 0x7F) << 8 | (data2 & 0x7F) << 16;
+			written.lazySet(count + 1);
+		}
+	}
+
+	/**
+	 * Gets the total number of messages received, including ones that were
+	 * overwritten. A backend with a capacity of zero counts nothing.
+	 *
+	 * @return number of messages received
+	 */
+	public long getMessageCount() {
+		return written.get();
+	}
+
+	/**
+	 * Gets the number of messages currently available in the ring buffer.
+	 *
+	 * @return number of stored messages
+	 */
+	public int getRecordedCount() {
+		return recordedCount(written.get());
+	}
+
+	/**
+	 * Gets the number of messages in the ring buffer for a written count.
+	 *
+	 * @param count - total number of messages written
+	 * @return number of stored messages
+	 */
+	private int recordedCount(long count) {
+		return (int) Math.min(count, timestamps.length);
+	}
+
+	/**
+	 * Gets the timestamp of a stored message, from System.nanoTime.
+	 * Index 0 is the oldest stored message.
+	 *
+	 * @param index - of the message
+	 * @return timestamp in nanoseconds
+	 * @throws IndexOutOfBoundsException if there is no such message
+	 */
+	public long getTimestamp(int index) {
+		return timestamps[slotOf(index)];
+	}
+
+	/**
+	 * Gets a stored message packed as status | data1 << 8 | data2 << 16.
+	 * Index 0 is the oldest stored message.
+	 *
+	 * @param index - of the message
+	 * @return packed message
+	 * @throws IndexOutOfBoundsException if there is no such message
+	 */
+	public int getMessage(int index) {
+		return messages[slotOf(index)];
+	}
+
+	/**
+	 * Converts an index from the oldest stored message into a ring buffer slot.
+	 *
+	 * @param index - of the message
+	 * @return slot in the arrays
+	 */
+	private int slotOf(int index) {
+		long count = written.get();
+		int recorded = recordedCount(count);
+		if(index < 0 || index >= recorded)
+			throw new IndexOutOfBoundsException();
+		long first = count - recorded;
+		return (int) ((first + index) & mask);
+	}
+
+	/**
+	 * Discards all stored messages.
+	 */
+	public void clear() {
+		synchronized(timestamps) {
+			written.set(0);
+		}
+	}
+
+	@Override
+	public ArrayList<String> getInstrumentNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		names.add("DEFAULT");
+		return names;
+	}
+
+	@Override
+	public ArrayList<Integer> getValidChannelIndices() {
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+		for(int i = 0; i < 16; i++)
+			indices.add(i);
+		return indices;
+	}
+
+	@Override
+	public void setInstrument(int channel, int instrumentIndex) {
+		checkChannel(channel);
+		instruments[channel] = instrumentIndex;
+		record(PROGRAM_CHANGE, channel, instrumentIndex, 0);
+	}
+
+	@Override
+	public void setVolume(int channel, int volume) {
+		checkChannel(channel);
+		volumes[channel] = Math.max(0, Math.min(127, volume));
+		// Note: 7 is the control number for volume (midi 1.0 spec)
+		record(CONTROL_CHANGE, channel, 7, volumes[channel]);
+	}
+
+	@Override
+	public int getVolume(int channel) {
+		checkChannel(channel);
+		return volumes[channel];
+	}
+
+	@Override
+	public void setMute(int channel, boolean mute) {
+		checkChannel(channel);
+	}
+
+	@Override
+	public void setPitchBend(int channel, int amount) {
+		checkChannel(channel);
+		int value = Math.max(-8192, Math.min(8191, amount)) + 8192;
+		record(PITCH_BEND, channel, value, value >> 7);
+	}
+
+	@Override
+	public void noteOn(int channel, int pitch) {
+		record(NOTE_ON, channel, pitch, 100);
+	}
+
+	@Override
+	public void noteOff(int channel, int pitch) {
+		record(NOTE_OFF, channel, pitch, 0);
+	}
+
+	@Override
+	public void allNotesOff() {
+		// Note: 123 is the control number for all notes off (midi 1.0 spec)
+		for(int i = 0; i < 16; i++)
+			record(CONTROL_CHANGE, i, 123, 0);
+	}
+
+	/**
+	 * Checks that a channel index is valid.
+	 *
+	 * @param channel - index to check
+	 * @throws IllegalArgumentException if the channel index is invalid
+	 */
+	private static void checkChannel(int channel) {
+		if(channel < 0 || channel > 15)
+			throw new IllegalArgumentException("Invalid channel");
+	}
+}
@@ -0,0 +1,187 @@
+package assign11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A cache of rendered tracks on the local disk.
+ * Each rendered track is stored in its own file, named by a hash of
+ * everything that affects how it sounds: its events, instrument, length
+ * and speed. A track that hasn't changed since the last render can then
+ * be reused without rendering it again.
+ *
+ * When the files in the cache take more space than the size limit,
+ * the least recently used files are deleted. Tracks are written to a
+ * temporary file first, so several can be written at once, and temporary
+ * files left behind by a crash are deleted along with them.
+ *
+ * @version 2026-10-19
+ */
+public class RenderCache {
+	public static final long DEFAULT_SIZE_LIMIT = 1L << 30;
+	// Temporary files not written to for this long were left behind by a failed write
+	private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+	private final File directory;
+	private final long sizeLimit;
+
+	/**
+	 * Creates a cache in the default location, the .soundsketcher/render-cache
+	 * folder of the user's home directory, with the default size limit.
+	 */
+	public RenderCache() {
+		this(new File(System.getProperty("user.home"), ".soundsketcher" + File.separator + "render-cache"), DEFAULT_SIZE_LIMIT);
+	}
+
+	/**
+	 * Creates a cache in a given directory.
+	 *
+	 * @param directory - where cached tracks are stored
+	 * @param sizeLimit - maximum total size of the cached files in bytes
+	 */
+	public RenderCache(File directory, long sizeLimit) {
+		this.directory = directory;
+		this.sizeLimit = sizeLimit;
+	}
+
+	/**
+	 * Computes the cache key for a track. Two tracks have the same key
+	 * exactly when they render to the same audio.
+	 * Volume is not part of the key because it is applied when mixing.
+	 *
+	 * @param events - of the track
+	 * @param instrument - instrument index of the track
+	 * @param lengthTics - length of the track in tics
+	 * @param ticsPerMillisecond - speed factor of the track's sequencer
+	 * @return the key as a hexadecimal string
+	 */
+	public static String keyOf(AudioEvent[] events, int instrument, int lengthTics, double ticsPerMillisecond) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(32);
+		buffer.putInt(instrument).putInt(lengthTics).putDouble(ticsPerMillisecond);
+		digest.update(buffer.array(), 0, buffer.position());
+		for(AudioEvent event : events) {
+			if(!(event instanceof NoteEvent note))
+				continue;
+			buffer.clear();
+			buffer.putInt(note.getTime()).putInt(note.getDuration()).putInt(note.getPitch());
+			digest.update(buffer.array(), 0, buffer.position());
+		}
+
+		StringBuilder key = new StringBuilder();
+		for(byte b : digest.digest())
+			key.append(String.format("%02x", b));
+		return key.toString();
+	}
+
+	/**
+	 * Gets a cached track. Using a track marks it as recently used.
+	 * The track is a copy of the cached file, so the file can still be
+	 * evicted or replaced while the track is in use.
+	 *
+	 * @param key - from keyOf
+	 * @return the cached track, or null if it isn't in the cache
+	 */
+	public synchronized RenderedTrack get(String key) {
+		File file = fileOf(key);
+		if(!file.isFile())
+			return null;
+		try {
+			RenderedTrack track = RenderedTrack.read(file);
+			file.setLastModified(System.currentTimeMillis());
+			return track;
+		} catch (IOException e) {
+			System.out.println("Couldn't read cached track " + key);
+			e.printStackTrace();
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a track to the cache, then deletes the least recently used
+	 * tracks if the cache is over its size limit. The track is written
+	 * without holding the cache's lock, so tracks rendered in parallel are
+	 * also stored in parallel.
+	 *
+	 * @param key - from keyOf
+	 * @param track - to store
+	 * @throws IOException if the track can't be written
+	 */
+	public void put(String key, RenderedTrack track) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+			throw new IOException("Couldn't create cache directory " + directory);
+		File temp = File.createTempFile(key, ".tmp", directory);
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer data = track.getData();
+				data.clear();
+				while(data.hasRemaining())
+					channel.write(data);
+			}
+			synchronized(this) {
+				Files.move(temp.toPath(), fileOf(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				evict();
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the cache fits in its
+	 * size limit, and any temporary files left behind by failed writes.
+	 */
+	private void evict() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".pcm") || name.endsWith(".tmp"));
+		if(files == null)
+			return;
+		long now = System.currentTimeMillis();
+		long total = 0;
+		int count = 0;
+		for(File file : files) {
+			if(file.getName().endsWith(".pcm")) {
+				files[count++] = file;
+				total += file.length();
+			} else if(now - file.lastModified() > STALE_TEMP_MILLIS) {
+				file.delete();
+			}
+		}
+		files = Arrays.copyOf(files, count);
+		if(total <= sizeLimit)
+			return;
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(int i = 0; i < files.length && total > sizeLimit; i++) {
+			long length = files[i].length();
+			if(files[i].delete())
+				total -= length;
+		}
+	}
+
+	/**
+	 * Gets the file used for a key.
+	 *
+	 * @param key - from keyOf
+	 * @return the cache file
+	 */
+	private File fileOf(String key) {
+		return new File(directory, key + ".pcm");
+	}
+}
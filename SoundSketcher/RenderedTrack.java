@@ -0,0 +1,301 @@
+package assign11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A track that has been rendered to audio ahead of time.
+ * The audio is stored as 16 bit stereo samples at the software synthesizer's
+ * sample rate. Small tracks are kept in memory and large ones in a memory
+ * mapped temporary file, so frozen tracks don't fill up the heap.
+ *
+ * The temporary file is opened with DELETE_ON_CLOSE and its channel closed
+ * as soon as it is mapped, so the file goes away by itself once the mapping
+ * is released. Java can't unmap a file on demand, and on Windows a mapped
+ * file can't be deleted, so deleting it in dispose would fail there.
+ *
+ * A rendered track can stream itself to the sound card, with a gain, mute
+ * and effects that can be changed while it plays.
+ *
+ * @version 2026-10-19
+ */
+public class RenderedTrack {
+	public static final int BYTES_PER_FRAME = 4;
+	public static final int MAP_THRESHOLD = 8 << 20;
+
+	private final ByteBuffer data;
+	private final int frameCount;
+	private final boolean mapped;
+
+	// Playback state
+	private volatile float gain;
+	private volatile boolean muted;
+	private volatile EffectChain effects;
+	private volatile Thread playThread;
+	private final LevelMeter meter = new LevelMeter();
+
+	/**
+	 * Creates a rendered track around existing sample data.
+	 *
+	 * @param data - 16 bit little endian stereo samples
+	 * @param frameCount - number of stereo frames in data
+	 * @param mapped - true if data is memory mapped
+	 */
+	private RenderedTrack(ByteBuffer data, int frameCount, boolean mapped) {
+		this.data = data;
+		this.frameCount = frameCount;
+		this.mapped = mapped;
+		this.gain = 1f;
+	}
+
+	/**
+	 * Creates a silent rendered track with room for a number of frames.
+	 * If the audio is larger than MAP_THRESHOLD bytes, it is kept in a
+	 * memory mapped temporary file instead of the heap.
+	 *
+	 * @param frames - number of stereo frames
+	 * @return the new rendered track
+	 * @throws IOException if the temporary file can't be created
+	 * @throws IllegalArgumentException if the track is too long to store
+	 */
+	public static RenderedTrack allocate(long frames) throws IOException {
+		if(frames < 0 || frames * BYTES_PER_FRAME > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Track is too long to render");
+		int bytes = (int) frames * BYTES_PER_FRAME;
+		if(bytes <= MAP_THRESHOLD)
+			return new RenderedTrack(ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN), (int) frames, false);
+
+		File file = File.createTempFile("soundsketcher-track", ".pcm");
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+			return new RenderedTrack(mapped.order(ByteOrder.LITTLE_ENDIAN), (int) frames, true);
+		}
+	}
+
+	/**
+	 * Reads a file of 16 bit little endian stereo samples into a new
+	 * rendered track, stored like one from allocate. The file itself is
+	 * never mapped, so it can be replaced or deleted while the track is used.
+	 *
+	 * @param file - containing the samples
+	 * @return the track
+	 * @throws IOException if the file can't be read
+	 */
+	public static RenderedTrack read(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long bytes = raf.length();
+			if(bytes > Integer.MAX_VALUE)
+				throw new IOException("Rendered track file is too large: " + file);
+			RenderedTrack track = allocate(bytes / BYTES_PER_FRAME);
+			ByteBuffer data = track.data.duplicate();
+			FileChannel channel = raf.getChannel();
+			while(data.hasRemaining()) {
+				if(channel.read(data, data.position()) < 0)
+					throw new IOException("Rendered track file ended early: " + file);
+			}
+			return track;
+		}
+	}
+
+	/**
+	 * Gets the number of stereo frames in this track.
+	 *
+	 * @return number of frames
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Tells whether the audio is kept in a memory mapped file.
+	 *
+	 * @return true if the audio is memory mapped
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Stores samples starting at a given frame.
+	 * Samples are clipped to the range -1 to 1.
+	 *
+	 * @param frame - first frame to write
+	 * @param left - samples for the left channel
+	 * @param right - samples for the right channel
+	 * @param frames - number of frames to write
+	 */
+	public void write(int frame, float[] left, float[] right, int frames) {
+		int position = frame * BYTES_PER_FRAME;
+		for(int i = 0; i < frames; i++) {
+			data.putShort(position, (short) SoftwareSynthesizer.toPcm(left[i]));
+			data.putShort(position + 2, (short) SoftwareSynthesizer.toPcm(right[i]));
+			position += BYTES_PER_FRAME;
+		}
+	}
+
+	/**
+	 * Reads samples starting at a given frame. Reading stops at the end
+	 * of the track.
+	 *
+	 * @param frame - first frame to read
+	 * @param left - receives samples for the left channel
+	 * @param right - receives samples for the right channel
+	 * @param frames - maximum number of frames to read
+	 * @return number of frames read
+	 */
+	public int read(int frame, float[] left, float[] right, int frames) {
+		int count = Math.max(0, Math.min(frames, frameCount - frame));
+		int position = frame * BYTES_PER_FRAME;
+		for(int i = 0; i < count; i++) {
+			left[i] = data.getShort(position) / 32768f;
+			right[i] = data.getShort(position + 2) / 32768f;
+			position += BYTES_PER_FRAME;
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the raw sample data. The returned buffer shares its content
+	 * with this track.
+	 *
+	 * @return 16 bit little endian stereo samples
+	 */
+	public ByteBuffer getData() {
+		return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Sets the gain used for playback.
+	 *
+	 * @param gain - multiplier for every sample
+	 */
+	public void setGain(float gain) {
+		this.gain = gain;
+	}
+
+	/**
+	 * Mutes or unmutes playback.
+	 *
+	 * @param mute - true to mute, false to unmute
+	 */
+	public void setMute(boolean mute) {
+		this.muted = mute;
+	}
+
+	/**
+	 * Sets effects applied during playback. The stored audio is not changed.
+	 *
+	 * @param chain - effects for playback, or null for none
+	 */
+	public void setEffects(EffectChain chain) {
+		this.effects = chain;
+	}
+
+	/**
+	 * Gets the effects applied during playback.
+	 *
+	 * @return effects for playback, or null for none
+	 */
+	public EffectChain getEffects() {
+		return effects;
+	}
+
+	/**
+	 * Gets the meter that measures the track while it plays, after its
+	 * effects and gain.
+	 *
+	 * @return meter for playback
+	 */
+	public LevelMeter getMeter() {
+		return meter;
+	}
+
+	/**
+	 * Starts streaming the track to the sound card from the beginning.
+	 * If it is already playing, it starts over. If there is no sound card,
+	 * nothing is played.
+	 */
+	public synchronized void play() {
+		stop();
+		Thread thread = new Thread(this::runPlayback, "RenderedTrack playback");
+		thread.setDaemon(true);
+		playThread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Stops streaming the track.
+	 */
+	public synchronized void stop() {
+		playThread = null;
+	}
+
+	/**
+	 * Stops playback. The track can't be used afterwards. Its audio is
+	 * released, and a temporary file is deleted, once the track is no longer
+	 * referenced and is garbage collected.
+	 */
+	public void dispose() {
+		stop();
+	}
+
+	/**
+	 * Copies the audio to an output line in blocks, applying the effects and gain,
+	 * until the end of the track or until this thread is no longer the
+	 * play thread. The block buffer is allocated once before the loop.
+	 */
+	private void runPlayback() {
+		Thread self = Thread.currentThread();
+		AudioFormat format = new AudioFormat(SoftwareSynthesizer.SAMPLE_RATE, 16, 2, true, false);
+		SourceDataLine line;
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			line.open(format);
+		} catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+			System.out.println("Couldn't open an audio output line for the frozen track.");
+			return;
+		}
+		line.start();
+		int blockFrames = SoftwareSynthesizer.BLOCK_SIZE;
+		float[] left = new float[blockFrames], right = new float[blockFrames];
+		byte[] block = new byte[blockFrames * BYTES_PER_FRAME];
+		int frame = 0;
+		while(playThread == self && frame < frameCount) {
+			int count = read(frame, left, right, blockFrames);
+			EffectChain chain = effects;
+			if(chain != null)
+				chain.process(left, right, count);
+			float blockGain = muted ? 0f : gain;
+			for(int i = 0; i < count; i++) {
+				left[i] *= blockGain;
+				right[i] *= blockGain;
+			}
+			meter.process(left, right, count);
+			for(int i = 0, b = 0; i < count; i++) {
+				int l = SoftwareSynthesizer.toPcm(left[i]);
+				int r = SoftwareSynthesizer.toPcm(right[i]);
+				block[b++] = (byte) l;
+				block[b++] = (byte) (l >> 8);
+				block[b++] = (byte) r;
+				block[b++] = (byte) (r >> 8);
+			}
+			line.write(block, 0, count * BYTES_PER_FRAME);
+			frame += count;
+		}
+		if(playThread == self)
+			line.drain();
+		else
+			line.flush();
+		line.close();
+	}
+}
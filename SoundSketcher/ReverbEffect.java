@@ -0,0 +1,118 @@
+package assign11;
+
+import java.util.Arrays;
+
+/**
+ * An algorithmic reverb in the style of Freeverb: each channel runs the
+ * input through four damped feedback comb filters in parallel and then two
+ * allpass filters in series. The right channel uses slightly longer delays
+ * than the left so the reverb sounds wide.
+ *
+ * @version 2026-10-19
+ */
+public class ReverbEffect implements AudioEffect {
+	// Delay lengths in samples at 44100 Hz
+	private static final int[] COMB_TUNING = {1116, 1188, 1277, 1356};
+	private static final int[] ALLPASS_TUNING = {556, 441};
+	private static final int STEREO_SPREAD = 23;
+
+	private final float sampleRate, roomSize, damping, wet;
+	private final float feedback;
+	private final float[][] combs;
+	private final int[] combPositions;
+	private final float[] combFilters;
+	private final float[][] allpasses;
+	private final int[] allpassPositions;
+
+	/**
+	 * Creates a reverb.
+	 *
+	 * @param sampleRate - of the audio
+	 * @param roomSize - from 0 (small) to 1 (large)
+	 * @param damping - from 0 (bright) to 1 (dull)
+	 * @param wet - level of the reverb added to the original
+	 */
+	public ReverbEffect(float sampleRate, float roomSize, float damping, float wet) {
+		this.sampleRate = sampleRate;
+		this.roomSize = Math.max(0f, Math.min(1f, roomSize));
+		this.damping = Math.max(0f, Math.min(1f, damping));
+		this.wet = wet;
+		feedback = 0.7f + 0.28f * this.roomSize;
+
+		// Lines 0-3 and 0-1 are for the left channel, the rest for the right
+		float scale = sampleRate / 44100f;
+		combs = new float[COMB_TUNING.length * 2][];
+		for(int i = 0; i < COMB_TUNING.length; i++) {
+			combs[i] = new float[Math.max(1, Math.round(COMB_TUNING[i] * scale))];
+			combs[i + COMB_TUNING.length] = new float[Math.max(1, Math.round((COMB_TUNING[i] + STEREO_SPREAD) * scale))];
+		}
+		allpasses = new float[ALLPASS_TUNING.length * 2][];
+		for(int i = 0; i < ALLPASS_TUNING.length; i++) {
+			allpasses[i] = new float[Math.max(1, Math.round(ALLPASS_TUNING[i] * scale))];
+			allpasses[i + ALLPASS_TUNING.length] = new float[Math.max(1, Math.round((ALLPASS_TUNING[i] + STEREO_SPREAD) * scale))];
+		}
+		combPositions = new int[combs.length];
+		combFilters = new float[combs.length];
+		allpassPositions = new int[allpasses.length];
+	}
+
+	@Override
+	public void process(float[] left, float[] right, int frames) {
+		processChannel(left, frames, 0);
+		processChannel(right, frames, 1);
+	}
+
+	/**
+	 * Adds reverb to one channel.
+	 *
+	 * @param samples - of the channel, processed in place
+	 * @param frames - number of samples
+	 * @param channel - 0 for left, 1 for right
+	 */
+	private void processChannel(float[] samples, int frames, int channel) {
+		int firstComb = channel * COMB_TUNING.length;
+		int firstAllpass = channel * ALLPASS_TUNING.length;
+		float damp = damping * 0.4f;
+		for(int i = 0; i < frames; i++) {
+			float input = samples[i] * 0.015f;
+			float out = 0f;
+			for(int c = firstComb; c < firstComb + COMB_TUNING.length; c++) {
+				float[] line = combs[c];
+				int p = combPositions[c];
+				float delayed = line[p];
+				combFilters[c] = delayed * (1f - damp) + combFilters[c] * damp;
+				line[p] = input + combFilters[c] * feedback;
+				combPositions[c] = p + 1 == line.length ? 0 : p + 1;
+				out += delayed;
+			}
+			for(int a = firstAllpass; a < firstAllpass + ALLPASS_TUNING.length; a++) {
+				float[] line = allpasses[a];
+				int p = allpassPositions[a];
+				float delayed = line[p];
+				line[p] = out + delayed * 0.5f;
+				out = delayed - out;
+				allpassPositions[a] = p + 1 == line.length ? 0 : p + 1;
+			}
+			samples[i] += out * wet * 3f;
+		}
+	}
+
+	@Override
+	public void reset() {
+		for(float[] line : combs)
+			Arrays.fill(line, 0f);
+		for(float[] line : allpasses)
+			Arrays.fill(line, 0f);
+		Arrays.fill(combFilters, 0f);
+	}
+
+	@Override
+	public AudioEffect copy() {
+		return new ReverbEffect(sampleRate, roomSize, damping, wet);
+	}
+
+	@Override
+	public String getName() {
+		return "reverb";
+	}
+}
@@ -14,23 +14,25 @@ import javax.sound.midi.Synthesizer;
  * a much simpler interface for it.
  * 
  * The available channels and instruments depend on your machine.
- * If your machine does not provide midi support, this class can still
- * be used but will not produce any sound. In that case, It will appear 
- * to have 16 channels and one DEFAULT instrument.
+ * If your machine does not provide midi support, this class falls back
+ * to the built-in SoftwareSynthesizer, which has 16 channels and its own
+ * small set of instruments. If there is no sound card either, the fallback
+ * can still be used for offline rendering.
  * 
  * @author Eric Heisler
  * @version 2024-11-8
  */
-public class SimpleSynthesizer {
+public class SimpleSynthesizer implements SynthesizerBackend {
 	private Synthesizer synth;
 	private MidiChannel[] channels;
 	private Instrument[] instruments;
+	private SoftwareSynthesizer fallback;
 	
 	/**
 	 * Creates a new SimpleSynthesizer that uses the default soundbank.
 	 * Every channel is initialized with the first available instrument.
 	 * If there is an error setting up the midi system, this synthesizer
-	 * will still be valid and can be used, but it won't produce any audio.
+	 * uses a SoftwareSynthesizer instead.
 	 */
 	public SimpleSynthesizer() {
 		try {
@@ -48,22 +50,40 @@ public class SimpleSynthesizer {
 		} catch (MidiUnavailableException e) {
 			System.out.println("Couldn't open a midi synthesizer. You may not have support on this machine.");
 			e.printStackTrace();
-			synth = null;
-			channels = null;
-			instruments = null;
+			useFallback();
 			
 		} catch (ArrayIndexOutOfBoundsException e) {
-			System.out.println("There are no midi channels or instruments provided by the midi synthesizer. Can't make sound.");
-			synth = null;
-			channels = null;
-			instruments = null;
+			System.out.println("There are no midi channels or instruments provided by the midi synthesizer. Using the software synthesizer.");
+			useFallback();
 		}
 	}
 	
+	/**
+	 * Releases the midi system and switches to the built-in software synthesizer.
+	 */
+	private void useFallback() {
+		if(synth != null)
+			synth.close();
+		synth = null;
+		channels = null;
+		instruments = null;
+		fallback = new SoftwareSynthesizer();
+		fallback.open();
+	}
+	
+	/**
+	 * Gets the software synthesizer used when the midi system is unavailable.
+	 * 
+	 * @return the fallback synthesizer, or null if the midi system is in use
+	 */
+	public SoftwareSynthesizer getFallback() {
+		return fallback;
+	}
+	
 	/**
 	 * Gets a list of available instrument names from the midi system.
-	 * If the midi system is not available, this returns a list with
-	 * one element: "DEFAULT"
+	 * If the midi system is not available, this returns the names
+	 * of the software synthesizer's instruments.
 	 * 
 	 * @return list of instrument names
 	 */
@@ -73,8 +93,8 @@ public class SimpleSynthesizer {
 			for(Instrument instr : synth.getLoadedInstruments())
 				names.add(instr.getName());
 		} else {
-			// provide one default instrument if the midi system is not available
-			names.add("DEFAULT");
+			// provide the software instruments if the midi system is not available
+			names.addAll(fallback.getInstrumentNames());
 		}
 		return names;
 	}
@@ -112,6 +132,10 @@ public class SimpleSynthesizer {
 	 * @throws IllegalArgumentException if either index is invalid
 	 */
 	public void setInstrument(int channel, int instrumentIndex) {
+		if(fallback != null) {
+			fallback.setInstrument(channel, instrumentIndex);
+			return;
+		}
 		if(channels == null)
 			return;
 		if(!getValidChannelIndices().contains(channel)) 
@@ -126,13 +150,16 @@ public class SimpleSynthesizer {
 	/**
 	 * Sets the volume of a given channel.
 	 * The value is clamped between 0 and 127.
-	 * This has no effect if the midi system is not available.
 	 * 
 	 * @param channel - to set the volume of
 	 * @param volume value that will be clamped between 0 and 127
 	 * @throws IllegalArgumentException if channel index is invalid
 	 */
 	public void setVolume(int channel, int volume) {
+		if(fallback != null) {
+			fallback.setVolume(channel, volume);
+			return;
+		}
 		if(channels == null)
 			return;
 		if(!getValidChannelIndices().contains(channel)) 
@@ -147,13 +174,14 @@ public class SimpleSynthesizer {
 	
 	/**
 	 * Returns the current volume value for a given channel.
-	 * If the midi system is not available, this always returns 0.
 	 * 
 	 * @param channel - to get the volume of
 	 * @return volume value on that channel
 	 * @throws IllegalArgumentException if channel index is invalid
 	 */
 	public int getVolume(int channel) {
+		if(fallback != null)
+			return fallback.getVolume(channel);
 		if(channels == null)
 			return 0;
 		if(!getValidChannelIndices().contains(channel)) 
@@ -170,6 +198,10 @@ public class SimpleSynthesizer {
 	 * @throws IllegalArgumentException if channel index is invalid
 	 */
 	public void setMute(int channel, boolean mute) {
+		if(fallback != null) {
+			fallback.setMute(channel, mute);
+			return;
+		}
 		if(channels == null)
 			return;
 		if(!getValidChannelIndices().contains(channel)) 
@@ -192,6 +224,10 @@ public class SimpleSynthesizer {
 	 * @throws IllegalArgumentException if channel index is invalid
 	 */
 	public void setPitchBend(int channel, int amount) {
+		if(fallback != null) {
+			fallback.setPitchBend(channel, amount);
+			return;
+		}
 		if(channels == null)
 			return;
 		if(!getValidChannelIndices().contains(channel)) 
@@ -207,13 +243,16 @@ public class SimpleSynthesizer {
 	 * Begins playing a given pitch on the given channel.
 	 * The note will not end until noteOff is called for the same pitch and channel.
 	 * 
-	 * This has no effect if the midi system is not available or if the
-	 * channel index is not valid.
+	 * This has no effect if the channel index is not valid.
 	 * 
 	 * @param channel - to use
 	 * @param pitch - to turn on
 	 */
 	public void noteOn(int channel, int pitch) {
+		if(fallback != null) {
+			fallback.noteOn(channel, pitch);
+			return;
+		}
 		if(channels != null && getValidChannelIndices().contains(channel)) {
 			channels[channel].noteOn(pitch, 100); // velocity is always 100
 			// Including a velocity parameter is possible, but it
@@ -225,13 +264,16 @@ public class SimpleSynthesizer {
 	 * Stops playing a given pitch on a given channel.
 	 * If the pitch was not already playing, nothing happens.
 	 * 
-	 * This has no effect if the midi system is not available or if the
-	 * channel index is not valid.
+	 * This has no effect if the channel index is not valid.
 	 * 
 	 * @param channel - to use
 	 * @param pitch - to turn off
 	 */
 	public void noteOff(int channel, int pitch) {
+		if(fallback != null) {
+			fallback.noteOff(channel, pitch);
+			return;
+		}
 		if(channels != null && getValidChannelIndices().contains(channel)) {
 			channels[channel].noteOff(pitch);
 		}
@@ -241,6 +283,10 @@ public class SimpleSynthesizer {
 	 * Turns off all notes that are playing on all channels.
 	 */
 	public void allNotesOff() {
+		if(fallback != null) {
+			fallback.allNotesOff();
+			return;
+		}
 		if(channels == null)
 			return;
 		for(MidiChannel ch : channels)
@@ -0,0 +1,609 @@
+package assign11;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A small wavetable synthesizer written entirely in Java.
+ * It provides the same noteOn/noteOff/setInstrument style of interface as
+ * SimpleSynthesizer, so it can stand in for the midi system on machines
+ * that don't have one.
+ *
+ * Sound is produced by a fixed pool of voices. Each voice reads from a
+ * precomputed wavetable and is shaped by an ADSR envelope. Audio is rendered
+ * in blocks by the render method, which does not allocate any memory, so it
+ * can be called from a real-time audio thread or used for offline rendering.
+ * If no sound card is available, open() fails quietly and the synthesizer can
+ * still be used for offline rendering.
+ *
+ * @version 2026-10-19
+ */
+public class SoftwareSynthesizer implements SynthesizerBackend {
+	public static final float SAMPLE_RATE = 44100f;
+	public static final int BLOCK_SIZE = 256;
+	public static final int DEFAULT_VOICES = 256;
+	public static final int CHANNEL_COUNT = 16;
+
+	private static final int TABLE_SIZE = 2048;
+	private static final int SINE = 0, TRIANGLE = 1, SAW = 2, SQUARE = 3, ORGAN = 4;
+	private static final float[][] WAVETABLES = createWavetables();
+
+	// Envelope stages of a voice
+	private static final int IDLE = 0, ATTACK = 1, DECAY = 2, SUSTAIN = 3, RELEASE = 4;
+
+	// name, wavetable, attack (s), decay (s), sustain level, release (s)
+	private static final String[] INSTRUMENT_NAMES = {
+			"Sine Lead", "Triangle Flute", "Saw Strings", "Square Reed",
+			"Organ", "Soft Pad", "Pluck", "Bass"};
+	private static final int[] INSTRUMENT_TABLES = {SINE, TRIANGLE, SAW, SQUARE, ORGAN, TRIANGLE, SAW, SQUARE};
+	private static final float[][] INSTRUMENT_ENVELOPES = {
+			{0.005f, 0.10f, 0.80f, 0.10f},
+			{0.030f, 0.10f, 0.70f, 0.15f},
+			{0.080f, 0.20f, 0.75f, 0.30f},
+			{0.010f, 0.15f, 0.60f, 0.10f},
+			{0.005f, 0.01f, 1.00f, 0.05f},
+			{0.400f, 0.50f, 0.60f, 0.80f},
+			{0.002f, 0.25f, 0.00f, 0.05f},
+			{0.005f, 0.30f, 0.50f, 0.08f}};
+
+	// Voice state is kept in parallel arrays so rendering touches no objects
+	private final int maxVoices;
+	private final int[] voiceStage;
+	private final int[] voiceChannel;
+	private final int[] voicePitch;
+	private final int[] voiceTable;
+	private final float[] voicePhase;
+	private final float[] voiceIncrement;
+	private final float[] voiceLevel;
+	private final float[] voiceVelocity;
+	private final float[] voiceAttackRate, voiceDecayRate, voiceSustain, voiceReleaseRate;
+	private final long[] voiceOrder;
+	private long noteCounter;
+
+	// Channel state
+	private final int[] instruments;
+	private final int[] volumes;
+	private final boolean[] muted;
+	private final float[] bendFactors;
+
+	// Output to the sound card, if one is available
+	private SourceDataLine line;
+	private Thread outputThread;
+	private volatile boolean outputRunning;
+	private volatile EffectChain masterEffects;
+
+	// Metering of the sound card output
+	private final LevelMeter[] channelMeters;
+	private final float[][] channelBlocks;
+	private final LevelMeter masterMeter;
+	private final AudioRingBuffer masterTap;
+	private boolean metering;
+
+	/**
+	 * Creates a synthesizer with the default number of voices.
+	 */
+	public SoftwareSynthesizer() {
+		this(DEFAULT_VOICES);
+	}
+
+	/**
+	 * Creates a synthesizer with a given number of voices.
+	 * Every channel starts with the first instrument at volume 100.
+	 *
+	 * @param maxVoices - number of notes that can sound at the same time
+	 * @throws IllegalArgumentException if maxVoices is not positive
+	 */
+	public SoftwareSynthesizer(int maxVoices) {
+		if(maxVoices < 1)
+			throw new IllegalArgumentException("There must be at least one voice");
+		this.maxVoices = maxVoices;
+		voiceStage = new int[maxVoices];
+		voiceChannel = new int[maxVoices];
+		voicePitch = new int[maxVoices];
+		voiceTable = new int[maxVoices];
+		voicePhase = new float[maxVoices];
+		voiceIncrement = new float[maxVoices];
+		voiceLevel = new float[maxVoices];
+		voiceVelocity = new float[maxVoices];
+		voiceAttackRate = new float[maxVoices];
+		voiceDecayRate = new float[maxVoices];
+		voiceSustain = new float[maxVoices];
+		voiceReleaseRate = new float[maxVoices];
+		voiceOrder = new long[maxVoices];
+
+		instruments = new int[CHANNEL_COUNT];
+		volumes = new int[CHANNEL_COUNT];
+		muted = new boolean[CHANNEL_COUNT];
+		bendFactors = new float[CHANNEL_COUNT];
+		for(int i = 0; i < CHANNEL_COUNT; i++) {
+			volumes[i] = 100;
+			bendFactors[i] = 1f;
+		}
+
+		channelMeters = new LevelMeter[CHANNEL_COUNT];
+		channelBlocks = new float[CHANNEL_COUNT][BLOCK_SIZE];
+		for(int i = 0; i < CHANNEL_COUNT; i++)
+			channelMeters[i] = new LevelMeter();
+		masterMeter = new LevelMeter();
+		masterTap = new AudioRingBuffer(8 * BLOCK_SIZE);
+	}
+
+	/**
+	 * Opens the default sound card output and starts a thread that renders
+	 * blocks to it. If no output is available, a message is printed and the
+	 * synthesizer can still be used with render.
+	 *
+	 * @return true if audio output was started
+	 */
+	public boolean open() {
+		if(outputRunning)
+			return true;
+		AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			line.open(format, BLOCK_SIZE * 4 * 4);
+			line.start();
+		} catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+			System.out.println("Couldn't open an audio output line. The software synthesizer will only render offline.");
+			line = null;
+			return false;
+		}
+		outputRunning = true;
+		outputThread = new Thread(this::runOutput, "SoftwareSynthesizer output");
+		outputThread.setDaemon(true);
+		outputThread.start();
+		return true;
+	}
+
+	/**
+	 * Stops the audio output thread and releases the sound card.
+	 */
+	public void close() {
+		outputRunning = false;
+		if(outputThread != null) {
+			try {
+				outputThread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			outputThread = null;
+		}
+		if(line != null) {
+			line.close();
+			line = null;
+		}
+	}
+
+	/**
+	 * Sets effects applied to the sound card output. Offline rendering
+	 * with render is not affected.
+	 *
+	 * @param chain - effects for the output, or null for none
+	 */
+	public void setMasterEffects(EffectChain chain) {
+		masterEffects = chain;
+	}
+
+	/**
+	 * Gets the effects applied to the sound card output.
+	 *
+	 * @return effects for the output, or null for none
+	 */
+	public EffectChain getMasterEffects() {
+		return masterEffects;
+	}
+
+	/**
+	 * Gets the meter for one channel of the sound card output.
+	 * It measures the channel before the master effects.
+	 *
+	 * @param channel - index of the channel
+	 * @return meter for the channel
+	 * @throws IllegalArgumentException if the channel index is invalid
+	 */
+	public LevelMeter getChannelMeter(int channel) {
+		checkChannel(channel);
+		return channelMeters[channel];
+	}
+
+	/**
+	 * Gets the meter for the sound card output, after the master effects.
+	 *
+	 * @return meter for the output
+	 */
+	public LevelMeter getMasterMeter() {
+		return masterMeter;
+	}
+
+	/**
+	 * Gets a ring buffer holding the latest blocks sent to the sound card,
+	 * for analyzing the output.
+	 *
+	 * @return the output ring buffer
+	 */
+	public AudioRingBuffer getMasterTap() {
+		return masterTap;
+	}
+
+	/**
+	 * Renders blocks and writes them to the output line until close is called.
+	 * All buffers are allocated once before the loop.
+	 */
+	private void runOutput() {
+		float[] left = new float[BLOCK_SIZE];
+		float[] right = new float[BLOCK_SIZE];
+		byte[] bytes = new byte[BLOCK_SIZE * 4];
+		synchronized(this) {
+			metering = true;
+		}
+		while(outputRunning) {
+			render(left, right, BLOCK_SIZE);
+			EffectChain chain = masterEffects;
+			if(chain != null)
+				chain.process(left, right, BLOCK_SIZE);
+			masterMeter.process(left, right, BLOCK_SIZE);
+			masterTap.write(left, right, BLOCK_SIZE);
+			for(int i = 0, b = 0; i < BLOCK_SIZE; i++) {
+				int l = toPcm(left[i]);
+				int r = toPcm(right[i]);
+				bytes[b++] = (byte) l;
+				bytes[b++] = (byte) (l >> 8);
+				bytes[b++] = (byte) r;
+				bytes[b++] = (byte) (r >> 8);
+			}
+			line.write(bytes, 0, bytes.length);
+		}
+		synchronized(this) {
+			metering = false;
+		}
+	}
+
+	/**
+	 * Converts a float sample to a clipped 16 bit value.
+	 *
+	 * @param sample - between -1 and 1
+	 * @return 16 bit sample value
+	 */
+	static int toPcm(float sample) {
+		if(sample > 1f)
+			sample = 1f;
+		if(sample < -1f)
+			sample = -1f;
+		return (int) (sample * 32767f);
+	}
+
+	/**
+	 * Gets the list of instrument names. The index of a name is the
+	 * index used by setInstrument.
+	 *
+	 * @return list of instrument names
+	 */
+	public ArrayList<String> getInstrumentNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		for(String name : INSTRUMENT_NAMES)
+			names.add(name);
+		return names;
+	}
+
+	/**
+	 * Gets the list of valid channel indices, which is always 0 to 15.
+	 *
+	 * @return list of valid indices
+	 */
+	public ArrayList<Integer> getValidChannelIndices() {
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+		for(int i = 0; i < CHANNEL_COUNT; i++)
+			indices.add(i);
+		return indices;
+	}
+
+	/**
+	 * Sets the instrument on a given channel. Notes that are already
+	 * playing keep their old instrument.
+	 *
+	 * @param channel - index of channel
+	 * @param instrumentIndex - index of instrument in the list
+	 * @throws IllegalArgumentException if either index is invalid
+	 */
+	public synchronized void setInstrument(int channel, int instrumentIndex) {
+		checkChannel(channel);
+		if(instrumentIndex >= INSTRUMENT_NAMES.length || instrumentIndex < 0)
+			throw new IllegalArgumentException("Invalid instrument index. Maximum is " + (INSTRUMENT_NAMES.length - 1));
+		instruments[channel] = instrumentIndex;
+	}
+
+	/**
+	 * Gets the instrument index of a given channel.
+	 *
+	 * @param channel - index of channel
+	 * @return instrument index
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	public synchronized int getInstrument(int channel) {
+		checkChannel(channel);
+		return instruments[channel];
+	}
+
+	/**
+	 * Sets the volume of a given channel.
+	 * The value is clamped between 0 and 127.
+	 *
+	 * @param channel - to set the volume of
+	 * @param volume value that will be clamped between 0 and 127
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	public synchronized void setVolume(int channel, int volume) {
+		checkChannel(channel);
+		volumes[channel] = Math.max(0, Math.min(127, volume));
+	}
+
+	/**
+	 * Returns the current volume value for a given channel.
+	 *
+	 * @param channel - to get the volume of
+	 * @return volume value on that channel
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	public synchronized int getVolume(int channel) {
+		checkChannel(channel);
+		return volumes[channel];
+	}
+
+	/**
+	 * Mutes or unmutes a given channel.
+	 *
+	 * @param channel - to mute
+	 * @param mute - true to mute, false to unmute
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	public synchronized void setMute(int channel, boolean mute) {
+		checkChannel(channel);
+		muted[channel] = mute;
+	}
+
+	/**
+	 * Sets a pitch bend on a given channel, with a range of two semitones
+	 * up or down. The amount is clamped between -8192 and 8191.
+	 *
+	 * @param channel - to bend the pitch of
+	 * @param amount - to bend the pitch between -8192 and 8191 (0 is center)
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	public synchronized void setPitchBend(int channel, int amount) {
+		checkChannel(channel);
+		amount = Math.max(-8192, Math.min(8191, amount));
+		bendFactors[channel] = (float) Math.pow(2.0, amount / 8192.0 * 2.0 / 12.0);
+	}
+
+	/**
+	 * Begins playing a given pitch on the given channel with velocity 100.
+	 *
+	 * @param channel - to use
+	 * @param pitch - to turn on
+	 */
+	public void noteOn(int channel, int pitch) {
+		noteOn(channel, pitch, 100);
+	}
+
+	/**
+	 * Begins playing a given pitch on the given channel.
+	 * If every voice is busy, the oldest voice is reused.
+	 * This has no effect if the channel or pitch is not valid.
+	 *
+	 * @param channel - to use
+	 * @param pitch - to turn on, 0 to 127
+	 * @param velocity - loudness of the note, 0 to 127
+	 */
+	public synchronized void noteOn(int channel, int pitch, int velocity) {
+		if(channel < 0 || channel >= CHANNEL_COUNT || pitch < 0 || pitch > 127)
+			return;
+		int voice = findFreeVoice();
+		int instrument = instruments[channel];
+		float[] envelope = INSTRUMENT_ENVELOPES[instrument];
+		double frequency = 440.0 * Math.pow(2.0, (pitch - 69) / 12.0);
+
+		voiceStage[voice] = ATTACK;
+		voiceChannel[voice] = channel;
+		voicePitch[voice] = pitch;
+		voiceTable[voice] = INSTRUMENT_TABLES[instrument];
+		voicePhase[voice] = 0f;
+		voiceIncrement[voice] = (float) (frequency * TABLE_SIZE / SAMPLE_RATE);
+		voiceLevel[voice] = 0f;
+		voiceVelocity[voice] = Math.max(0, Math.min(127, velocity)) / 127f;
+		voiceAttackRate[voice] = 1f / Math.max(1f, envelope[0] * SAMPLE_RATE);
+		voiceDecayRate[voice] = (1f - envelope[2]) / Math.max(1f, envelope[1] * SAMPLE_RATE);
+		voiceSustain[voice] = envelope[2];
+		voiceReleaseRate[voice] = 1f / Math.max(1f, envelope[3] * SAMPLE_RATE);
+		voiceOrder[voice] = noteCounter++;
+	}
+
+	/**
+	 * Finds an idle voice, or the oldest voice if all are in use.
+	 *
+	 * @return index of the voice to use
+	 */
+	private int findFreeVoice() {
+		int oldest = 0;
+		for(int v = 0; v < maxVoices; v++) {
+			if(voiceStage[v] == IDLE)
+				return v;
+			if(voiceOrder[v] < voiceOrder[oldest])
+				oldest = v;
+		}
+		return oldest;
+	}
+
+	/**
+	 * Releases a given pitch on a given channel. The note fades out
+	 * according to the release time of its instrument.
+	 *
+	 * @param channel - to use
+	 * @param pitch - to turn off
+	 */
+	public synchronized void noteOff(int channel, int pitch) {
+		for(int v = 0; v < maxVoices; v++)
+			if(voiceStage[v] != IDLE && voiceStage[v] != RELEASE
+					&& voiceChannel[v] == channel && voicePitch[v] == pitch)
+				voiceStage[v] = RELEASE;
+	}
+
+	/**
+	 * Releases all notes that are playing on all channels.
+	 */
+	public synchronized void allNotesOff() {
+		for(int v = 0; v < maxVoices; v++)
+			if(voiceStage[v] != IDLE)
+				voiceStage[v] = RELEASE;
+	}
+
+	/**
+	 * Gets the number of voices that are currently producing sound,
+	 * including voices that are fading out.
+	 *
+	 * @return number of active voices
+	 */
+	public synchronized int getActiveVoiceCount() {
+		int count = 0;
+		for(int v = 0; v < maxVoices; v++)
+			if(voiceStage[v] != IDLE)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Gets the size of the voice pool.
+	 *
+	 * @return maximum number of simultaneous voices
+	 */
+	public int getMaxVoices() {
+		return maxVoices;
+	}
+
+	/**
+	 * Renders the next block of audio from all active voices.
+	 * The output arrays are overwritten from index 0 up to frames.
+	 * No memory is allocated, so this is safe to call from an audio thread.
+	 * While the sound card output is running, each channel is rendered
+	 * separately so it can be metered.
+	 *
+	 * @param left - output for the left channel
+	 * @param right - output for the right channel
+	 * @param frames - number of samples to render
+	 */
+	public synchronized void render(float[] left, float[] right, int frames) {
+		for(int i = 0; i < frames; i++)
+			left[i] = 0f;
+		boolean perChannel = metering && frames <= BLOCK_SIZE;
+		if(perChannel)
+			for(float[] block : channelBlocks)
+				Arrays.fill(block, 0, frames, 0f);
+
+		for(int v = 0; v < maxVoices; v++) {
+			int stage = voiceStage[v];
+			if(stage == IDLE)
+				continue;
+			int channel = voiceChannel[v];
+			float gain = muted[channel] ? 0f : 0.15f * voiceVelocity[v] * volumes[channel] / 127f;
+			float[] table = WAVETABLES[voiceTable[v]];
+			float[] out = perChannel ? channelBlocks[channel] : left;
+			float phase = voicePhase[v];
+			float increment = voiceIncrement[v] * bendFactors[channel];
+			float level = voiceLevel[v];
+			float attackRate = voiceAttackRate[v];
+			float decayRate = voiceDecayRate[v];
+			float sustain = voiceSustain[v];
+			float releaseRate = voiceReleaseRate[v];
+
+			for(int i = 0; i < frames; i++) {
+				if(stage == ATTACK) {
+					level += attackRate;
+					if(level >= 1f) {
+						level = 1f;
+						stage = DECAY;
+					}
+				} else if(stage == DECAY) {
+					level -= decayRate;
+					if(level <= sustain) {
+						level = sustain;
+						stage = sustain > 0f ? SUSTAIN : IDLE;
+					}
+				} else if(stage == RELEASE) {
+					level -= releaseRate;
+					if(level <= 0f) {
+						level = 0f;
+						stage = IDLE;
+					}
+				}
+				if(stage == IDLE)
+					break;
+
+				int index = (int) phase;
+				float fraction = phase - index;
+				float a = table[index];
+				out[i] += (a + fraction * (table[index + 1] - a)) * level * gain;
+				phase += increment;
+				if(phase >= TABLE_SIZE)
+					phase -= TABLE_SIZE;
+			}
+
+			voiceStage[v] = stage;
+			voicePhase[v] = phase;
+			voiceLevel[v] = level;
+		}
+
+		if(perChannel) {
+			for(int c = 0; c < CHANNEL_COUNT; c++) {
+				float[] block = channelBlocks[c];
+				channelMeters[c].process(block, block, frames);
+				for(int i = 0; i < frames; i++)
+					left[i] += block[i];
+			}
+		}
+		System.arraycopy(left, 0, right, 0, frames);
+	}
+
+	/**
+	 * Checks that a channel index is valid.
+	 *
+	 * @param channel - index to check
+	 * @throws IllegalArgumentException if the channel index is invalid
+	 */
+	private static void checkChannel(int channel) {
+		if(channel < 0 || channel >= CHANNEL_COUNT)
+			throw new IllegalArgumentException("Invalid channel");
+	}
+
+	/**
+	 * Builds one single-cycle table for every waveform. Harmonics are added
+	 * one at a time so the tables don't alias badly at high pitches.
+	 * Each table has one extra sample at the end so interpolation never
+	 * needs to wrap around.
+	 *
+	 * @return the wavetables
+	 */
+	private static float[][] createWavetables() {
+		float[][] tables = new float[5][TABLE_SIZE + 1];
+		for(int i = 0; i <= TABLE_SIZE; i++) {
+			double x = 2.0 * Math.PI * i / TABLE_SIZE;
+			tables[SINE][i] = (float) Math.sin(x);
+			double triangle = 0, saw = 0, square = 0;
+			for(int h = 1; h <= 32; h++) {
+				saw += Math.sin(h * x) / h;
+				if(h % 2 == 1) {
+					square += Math.sin(h * x) / h;
+					triangle += ((h / 2) % 2 == 0 ? 1 : -1) * Math.sin(h * x) / (h * h);
+				}
+			}
+			tables[TRIANGLE][i] = (float) (triangle * 8.0 / (Math.PI * Math.PI));
+			tables[SAW][i] = (float) (saw * 2.0 / Math.PI * 0.85);
+			tables[SQUARE][i] = (float) (square * 4.0 / Math.PI * 0.8);
+			tables[ORGAN][i] = (float) ((Math.sin(x) + 0.5 * Math.sin(2 * x) + 0.25 * Math.sin(4 * x)) / 1.75);
+		}
+		return tables;
+	}
+}
@@ -0,0 +1,510 @@
+package assign11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utility class for song archives, a compressed variant of the binary song
+ * file format for keeping many songs.
+ *
+ * The events of each track, and of the song, are stored as a separate chunk
+ * compressed with Deflate. A chunk holds its own table of names followed by
+ * an event block (see EventBlock), with the channels of a track's events
+ * stored relative to the track's number. Identical tracks therefore make
+ * identical chunks, and since chunks are keyed by the SHA-256 hash of their
+ * uncompressed bytes, each is stored only once however many tracks use it.
+ *
+ * An archive starts with a fixed size header: the magic bytes "SSKA", the
+ * format version, the tempo, the number of tracks, the song's length, the
+ * number of chunks, the chunk with the song's events, and the id of the save
+ * that wrote the file. A table with one entry per track follows: its number,
+ * instrument, volume, length, number of events, and chunk. Then a table with
+ * one entry per chunk: its hash, where it is, and its compressed and
+ * uncompressed length. The chunks come after that. All numbers are little
+ * endian.
+ *
+ * Opening an archive only reads the tables, so any one track can be read by
+ * inflating just its chunk.
+ *
+ * @version 2026-10-19
+ */
+public class SongArchiveFormat {
+	public static final String EXTENSION = "songz";
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = {'S', 'S', 'K', 'A'};
+	private static final int HEADER_SIZE = 32;
+	private static final int TRACK_ENTRY_SIZE = 24;
+	private static final int HASH_SIZE = 32;
+	private static final int CHUNK_ENTRY_SIZE = HASH_SIZE + 16;
+	// Songs with more track events than this leave them in the archive until needed
+	private static final long LAZY_LOAD_EVENTS = 1 << 21;
+	// Tracks never contain track events, so none can refer to a track
+	private static final BetterDynamicArray<TrackPanel> NO_TRACKS = new BetterDynamicArray<>();
+
+	/**
+	 * The information in a song archive, read from its header and tables.
+	 * Chunks are read from the file when asked for.
+	 */
+	public static class Contents {
+		public int tempo;
+		public int songLength;
+		public int saveId;
+		public TrackEntry[] tracks;
+		public ChunkEntry[] chunks;
+		int songChunk;
+		private final File file;
+
+		private Contents(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * Reads the events of one track, inflating only its chunk.
+		 *
+		 * @param track - index in the track table
+		 * @param synthesizer - used by the events
+		 * @return the track's events
+		 * @throws IOException if the chunk can't be read or is damaged
+		 */
+		public BetterDynamicArray<AudioEvent> readTrack(int track, SynthesizerBackend synthesizer) throws IOException {
+			TrackEntry entry = tracks[track];
+			return decodeChunk(readChunk(entry.chunk), entry.trackNumber, synthesizer, NO_TRACKS);
+		}
+
+		/**
+		 * Reads and inflates one chunk, checking it against its hash.
+		 *
+		 * @param chunk - index in the chunk table
+		 * @return the uncompressed chunk
+		 * @throws IOException if the chunk can't be read or is damaged
+		 */
+		byte[] readChunk(int chunk) throws IOException {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				return inflateChunk(chunk, readCompressed(channel, chunk));
+			}
+		}
+
+		/**
+		 * Reads one chunk without inflating it.
+		 *
+		 * @param channel - open on the archive
+		 * @param chunk - index in the chunk table
+		 * @return the compressed chunk
+		 * @throws IOException if the chunk can't be read
+		 */
+		byte[] readCompressed(FileChannel channel, int chunk) throws IOException {
+			if(chunk < 0 || chunk >= chunks.length)
+				throw new IOException("Damaged song archive");
+			ChunkEntry entry = chunks[chunk];
+			return readFully(channel, entry.offset, entry.compressedLength).array();
+		}
+
+		/**
+		 * Inflates one chunk, checking it against its hash.
+		 *
+		 * @param chunk - index in the chunk table
+		 * @param compressed - the chunk as read by readCompressed
+		 * @return the uncompressed chunk
+		 * @throws IOException if the chunk is damaged
+		 */
+		byte[] inflateChunk(int chunk, byte[] compressed) throws IOException {
+			ChunkEntry entry = chunks[chunk];
+			byte[] raw = new byte[entry.rawLength];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(compressed);
+				int length = 0, inflated;
+				do {
+					inflated = inflater.inflate(raw, length, raw.length - length);
+					length += inflated;
+				} while(inflated > 0 && length < raw.length);
+				if(length != raw.length || !Arrays.equals(hash(raw), entry.hash))
+					throw new IOException("Damaged song archive");
+			} catch (DataFormatException e) {
+				throw new IOException("Damaged song archive", e);
+			} finally {
+				inflater.end();
+			}
+			return raw;
+		}
+	}
+
+	/**
+	 * One entry of the track table.
+	 */
+	public static class TrackEntry {
+		public int trackNumber;
+		public int instrument;
+		public int volume;
+		public int length;
+		public int eventCount;
+		public int chunk;
+	}
+
+	/**
+	 * One entry of the chunk table.
+	 */
+	public static class ChunkEntry {
+		public byte[] hash;
+		public int compressedLength;
+		public int rawLength;
+		long offset;
+	}
+
+	/**
+	 * Checks whether a file is a song archive.
+	 *
+	 * @param file - to check
+	 * @return true if the file starts with the archive magic bytes
+	 */
+	public static boolean isArchive(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+			while(start.hasRemaining() && channel.read(start) > 0);
+			return Arrays.equals(start.array(), MAGIC);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Tells whether a song should be saved as an archive, from its file name.
+	 *
+	 * @param file - to save to
+	 * @return true if the file has the archive extension
+	 */
+	public static boolean hasExtension(File file) {
+		return file.getName().toLowerCase().endsWith("." + EXTENSION);
+	}
+
+	/**
+	 * Reads the id of the save that wrote a song archive.
+	 *
+	 * @param file - to read
+	 * @return the save id, or 0 if the file isn't a song archive
+	 */
+	public static int readSaveId(File file) {
+		if(!isArchive(file))
+			return 0;
+		try {
+			return open(file).saveId;
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes a song to a song archive. Every chunk is compressed before
+	 * anything is written, and the file is replaced in one step once it is
+	 * complete (see SongFiles.writeAtomically).
+	 *
+	 * @param file - to write
+	 * @param song - snapshot of the song to write
+	 * @param listener - told how many events are compressed and bytes written
+	 * @throws IOException if the file can't be written
+	 * @throws InterruptedIOException if the save was cancelled
+	 */
+	public static void write(File file, SongSnapshot song, ProgressListener listener) throws IOException {
+		HashMap<ByteBuffer, Integer> chunkTable = new HashMap<>();
+		BetterDynamicArray<ChunkEntry> chunkList = new BetterDynamicArray<>();
+		BetterDynamicArray<byte[]> chunkData = new BetterDynamicArray<>();
+		int[] trackChunks = new int[song.tracks.length];
+		int[] eventCounts = new int[trackChunks.length];
+		long events = 0;
+		for(int i = 0; i < trackChunks.length; i++) {
+			listener.checkCancelled();
+			BetterDynamicArray<AudioEvent> trackEvents = song.tracks[i].events.load();
+			AudioEvent[] array = new AudioEvent[trackEvents.size()];
+			for(int j = 0; j < array.length; j++)
+				array[j] = trackEvents.get(j);
+			eventCounts[i] = array.length;
+			trackChunks[i] = addChunk(encodeChunk(array, i), chunkTable, chunkList, chunkData);
+			events += array.length;
+			listener.progress(0, events);
+		}
+		int songChunk = addChunk(encodeChunk(song.songEvents, 0), chunkTable, chunkList, chunkData);
+		long eventCount = events + song.songEvents.length;
+		listener.checkCancelled();
+
+		int chunkCount = chunkList.size();
+		long offset = HEADER_SIZE + (long) TRACK_ENTRY_SIZE * trackChunks.length + (long) CHUNK_ENTRY_SIZE * chunkCount;
+		ByteBuffer header = ByteBuffer.allocate(Math.toIntExact(offset)).order(SongBinaryFormat.BYTE_ORDER);
+		header.put(MAGIC);
+		header.putShort((short) VERSION);
+		header.putShort((short) 0);
+		header.putInt(song.tempo);
+		header.putInt(trackChunks.length);
+		header.putInt(song.songLength);
+		header.putInt(chunkCount);
+		header.putInt(songChunk);
+		header.putInt(song.saveId);
+		for(int i = 0; i < trackChunks.length; i++) {
+			SongSnapshot.Track track = song.tracks[i];
+			header.putInt(i);
+			header.putInt(track.instrument);
+			header.putInt(track.volume);
+			header.putInt(track.length);
+			header.putInt(eventCounts[i]);
+			header.putInt(trackChunks[i]);
+		}
+		for(ChunkEntry chunk : chunkList) {
+			header.put(chunk.hash);
+			header.putLong(offset);
+			header.putInt(chunk.compressedLength);
+			header.putInt(chunk.rawLength);
+			offset += chunk.compressedLength;
+		}
+		header.flip();
+
+		SongFiles.writeAtomically(file, channel -> {
+			long written = channel.write(header);
+			for(byte[] chunk : chunkData) {
+				written += channel.write(ByteBuffer.wrap(chunk));
+				listener.progress(written, eventCount);
+			}
+		});
+	}
+
+	/**
+	 * Opens a song archive and reads its header and tables. Chunks are read
+	 * when asked for.
+	 *
+	 * @param file - to read
+	 * @return the contents of the archive
+	 * @throws IOException if the file can't be read or isn't a valid song archive
+	 */
+	public static Contents open(File file) throws IOException {
+		Contents contents = new Contents(file);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if(!Arrays.equals(magic, MAGIC))
+				throw new IOException("Not a song archive");
+			int version = header.getShort();
+			if(version > VERSION)
+				throw new IOException("Song archive version " + version + " is newer than this program");
+			header.getShort();
+			contents.tempo = header.getInt();
+			int trackCount = header.getInt();
+			contents.songLength = header.getInt();
+			int chunkCount = header.getInt();
+			contents.songChunk = header.getInt();
+			contents.saveId = header.getInt();
+			if(trackCount < 0 || chunkCount < 0)
+				throw new IOException("Damaged song archive");
+
+			ByteBuffer tables = readFully(channel, HEADER_SIZE, Math.toIntExact((long) TRACK_ENTRY_SIZE * trackCount + (long) CHUNK_ENTRY_SIZE * chunkCount));
+			contents.tracks = new TrackEntry[trackCount];
+			for(int i = 0; i < trackCount; i++) {
+				TrackEntry entry = new TrackEntry();
+				entry.trackNumber = tables.getInt();
+				entry.instrument = tables.getInt();
+				entry.volume = tables.getInt();
+				entry.length = tables.getInt();
+				entry.eventCount = tables.getInt();
+				entry.chunk = tables.getInt();
+				if(entry.chunk < 0 || entry.chunk >= chunkCount)
+					throw new IOException("Damaged song archive");
+				contents.tracks[i] = entry;
+			}
+			contents.chunks = new ChunkEntry[chunkCount];
+			for(int i = 0; i < chunkCount; i++) {
+				ChunkEntry entry = new ChunkEntry();
+				entry.hash = new byte[HASH_SIZE];
+				tables.get(entry.hash);
+				entry.offset = tables.getLong();
+				entry.compressedLength = tables.getInt();
+				entry.rawLength = tables.getInt();
+				if(entry.compressedLength < 0 || entry.rawLength < 0)
+					throw new IOException("Damaged song archive");
+				contents.chunks[i] = entry;
+			}
+		} catch (BufferUnderflowException | ArithmeticException e) {
+			throw new IOException("Damaged song archive", e);
+		}
+		return contents;
+	}
+
+	/**
+	 * Reads a song archive. Each chunk is inflated once, however many
+	 * tracks use it. Songs with more than LAZY_LOAD_EVENTS track events
+	 * instead leave each track compressed until the track is opened or
+	 * played. The compressed chunks are read now rather than later from the
+	 * file, since saving the song may replace the file in the meantime.
+	 *
+	 * @param file - to read
+	 * @param synthesizer - used by the loaded events
+	 * @param listener - told how many bytes and events are read
+	 * @return the song, with track events that have no sequencer yet
+	 * @throws IOException if the file can't be read or isn't a valid song archive
+	 * @throws InterruptedIOException if the load was cancelled
+	 */
+	public static SongSnapshot read(File file, SynthesizerBackend synthesizer, ProgressListener listener) throws IOException {
+		Contents contents = open(file);
+		long trackEvents = 0;
+		for(TrackEntry entry : contents.tracks)
+			trackEvents += entry.eventCount;
+		boolean deferred = trackEvents > LAZY_LOAD_EVENTS;
+		SongSnapshot.Track[] tracks = new SongSnapshot.Track[contents.tracks.length];
+		byte[][] compressed = new byte[contents.chunks.length][];
+		byte[][] inflated = new byte[contents.chunks.length][];
+		long bytes = 0, events = 0;
+		byte[] songChunk;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for(int i = 0; i < tracks.length; i++) {
+				listener.checkCancelled();
+				TrackEntry entry = contents.tracks[i];
+				if(compressed[entry.chunk] == null) {
+					compressed[entry.chunk] = contents.readCompressed(channel, entry.chunk);
+					bytes += compressed[entry.chunk].length;
+				}
+				if(deferred) {
+					byte[] chunk = compressed[entry.chunk];
+					tracks[i] = new SongSnapshot.Track(entry.trackNumber, entry.instrument, entry.volume, entry.length, entry.eventCount, true,
+							() -> decodeChunk(contents.inflateChunk(entry.chunk, chunk), entry.trackNumber, synthesizer, NO_TRACKS));
+					listener.progress(bytes, events);
+					continue;
+				}
+				if(inflated[entry.chunk] == null) {
+					inflated[entry.chunk] = contents.inflateChunk(entry.chunk, compressed[entry.chunk]);
+				}
+				tracks[i] = new SongSnapshot.Track(entry.trackNumber, entry.instrument, entry.volume, entry.length,
+						decodeChunk(inflated[entry.chunk], entry.trackNumber, synthesizer, NO_TRACKS));
+				events += entry.eventCount;
+				listener.progress(bytes, events);
+			}
+			songChunk = contents.inflateChunk(contents.songChunk, contents.readCompressed(channel, contents.songChunk));
+		}
+		AudioEvent[] songEvents = SongFiles.toArray(decodeChunk(songChunk, 0, synthesizer, null));
+		listener.progress(file.length(), trackEvents + songEvents.length);
+		return new SongSnapshot(contents.saveId, contents.tempo, contents.songLength, songEvents, tracks);
+	}
+
+	/**
+	 * Encodes events as an uncompressed chunk: the number of events, the
+	 * number of names, the names, then the event block.
+	 *
+	 * @param events - to encode
+	 * @param trackNumber - subtracted from the channel of every note and change event
+	 * @return the chunk
+	 * @throws IOException if an event name is too long
+	 */
+	private static byte[] encodeChunk(AudioEvent[] events, int trackNumber) throws IOException {
+		HashMap<String, Integer> nameTable = new HashMap<>();
+		BetterDynamicArray<String> nameList = new BetterDynamicArray<>();
+		EventBlock block = EventBlock.of(events, nameTable, nameList);
+		block.offsetChannels(-trackNumber);
+		byte[] names = SongBinaryFormat.encodeNames(nameList);
+		byte[] blockBytes = block.encode();
+		ByteBuffer out = ByteBuffer.allocate(8 + names.length + blockBytes.length).order(SongBinaryFormat.BYTE_ORDER);
+		out.putInt(block.size());
+		out.putInt(nameList.size());
+		out.put(names);
+		out.put(blockBytes);
+		return out.array();
+	}
+
+	/**
+	 * Creates the events of an uncompressed chunk.
+	 *
+	 * @param chunk - the chunk
+	 * @param trackNumber - added to the channel of every note and change event
+	 * @param synthesizer - used by the events
+	 * @param tracks - the song's tracks, for track events, or null to create track events without a sequencer
+	 * @return the events
+	 * @throws IOException if the chunk is damaged
+	 */
+	private static BetterDynamicArray<AudioEvent> decodeChunk(byte[] chunk, int trackNumber, SynthesizerBackend synthesizer,
+			BetterDynamicArray<TrackPanel> tracks) throws IOException {
+		try {
+			ByteBuffer in = ByteBuffer.wrap(chunk).order(SongBinaryFormat.BYTE_ORDER);
+			int count = in.getInt();
+			int nameCount = in.getInt();
+			if(count < 0 || nameCount < 0)
+				throw new IOException("Damaged song archive");
+			String[] names = SongBinaryFormat.decodeNames(in, nameCount);
+			EventBlock block = EventBlock.decode(in, count);
+			block.offsetChannels(trackNumber);
+			return block.toEvents(names, synthesizer, tracks);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Damaged song archive", e);
+		}
+	}
+
+	/**
+	 * Adds a chunk to the archive unless an identical one is already in it.
+	 *
+	 * @param raw - the uncompressed chunk
+	 * @param chunkTable - maps the hash of each chunk to its index
+	 * @param chunkList - the archive's chunks in order
+	 * @param chunkData - the compressed bytes of each chunk
+	 * @return the index of the chunk
+	 */
+	private static int addChunk(byte[] raw, HashMap<ByteBuffer, Integer> chunkTable, BetterDynamicArray<ChunkEntry> chunkList,
+			BetterDynamicArray<byte[]> chunkData) {
+		byte[] hash = hash(raw);
+		Integer index = chunkTable.get(ByteBuffer.wrap(hash));
+		if(index != null)
+			return index;
+		byte[] compressed = deflate(raw);
+		ChunkEntry entry = new ChunkEntry();
+		entry.hash = hash;
+		entry.compressedLength = compressed.length;
+		entry.rawLength = raw.length;
+		index = chunkList.size();
+		chunkTable.put(ByteBuffer.wrap(hash), index);
+		chunkList.add(entry);
+		chunkData.add(compressed);
+		return index;
+	}
+
+	private static byte[] deflate(byte[] raw) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			byte[] out = new byte[raw.length / 2 + 64];
+			int length = 0;
+			while(!deflater.finished()) {
+				if(length == out.length)
+					out = Arrays.copyOf(out, out.length * 2);
+				length += deflater.deflate(out, length, out.length - length);
+			}
+			return Arrays.copyOf(out, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] hash(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(SongBinaryFormat.BYTE_ORDER);
+		while(buffer.hasRemaining())
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Damaged song archive");
+		buffer.flip();
+		return buffer;
+	}
+}
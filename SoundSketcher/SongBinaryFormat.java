@@ -0,0 +1,678 @@
+package assign11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Utility class for the binary song file format.
+ *
+ * A binary song file starts with a fixed size header: the magic bytes "SSKB",
+ * the format version, the tempo, the number of tracks, the song's length,
+ * where the song's events and the table of names are, and the id of the save
+ * that wrote the file (0 in files from before save ids). A table of contents
+ * follows with one entry per track: its number, instrument, volume, length,
+ * number of events, and where its events are. The names and the event blocks
+ * (see EventBlock) come after that. All numbers are little endian. Each
+ * track's events are stored in time order.
+ *
+ * A file is read into memory in one piece and decoded from there, so nothing
+ * is parsed as text. It isn't memory mapped: a mapping can't be closed, and
+ * on Windows a file can't be replaced while it is mapped, which would stop a
+ * song from being saved over the file it was loaded from. Since the table of
+ * contents says where every track is, tracks are decoded in parallel, or, for
+ * large songs, all together in time order while the song plays.
+ */
+public class SongBinaryFormat {
+	public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = {'S', 'S', 'K', 'B'};
+	private static final int HEADER_SIZE = 48;
+	private static final int TOC_ENTRY_SIZE = 32;
+	// Songs with more track events than this leave them on disk until needed
+	private static final long LAZY_LOAD_EVENTS = 1 << 21;
+
+	/**
+	 * The information in a binary song file, read from its header and table of
+	 * contents, with the file's bytes so any track's events can be decoded.
+	 */
+	public static class Contents {
+		public int tempo;
+		public int songLength;
+		public int songEventCount;
+		public int saveId;
+		public String[] names;
+		public TrackEntry[] tracks;
+		ByteBuffer data;
+		long songOffset;
+
+		/**
+		 * Decodes the events of one track.
+		 *
+		 * @param track - index in the table of contents
+		 * @return the track's events
+		 * @throws IOException if the events are damaged
+		 */
+		public EventBlock readTrack(int track) throws IOException {
+			TrackEntry entry = tracks[track];
+			return readBlock(entry.offset, entry.eventCount);
+		}
+
+		/**
+		 * Starts reading the events of one track one at a time.
+		 *
+		 * @param track - index in the table of contents
+		 * @return a reader at the track's first event
+		 * @throws IOException if the events are damaged
+		 */
+		public EventBlock.Reader openTrack(int track) throws IOException {
+			TrackEntry entry = tracks[track];
+			try {
+				return EventBlock.reader(blockAt(entry.offset), entry.eventCount);
+			} catch (IllegalArgumentException | ArithmeticException e) {
+				throw new IOException("Damaged song file", e);
+			}
+		}
+
+		/**
+		 * Decodes the events of the song.
+		 *
+		 * @return the song's events
+		 * @throws IOException if the events are damaged
+		 */
+		public EventBlock readSong() throws IOException {
+			return readBlock(songOffset, songEventCount);
+		}
+
+		private EventBlock readBlock(long offset, int count) throws IOException {
+			try {
+				return EventBlock.decode(blockAt(offset), count);
+			} catch (IllegalArgumentException | ArithmeticException | BufferUnderflowException e) {
+				throw new IOException("Damaged song file", e);
+			}
+		}
+
+		private ByteBuffer blockAt(long offset) {
+			ByteBuffer block = data.duplicate().order(BYTE_ORDER);
+			block.position(Math.toIntExact(offset));
+			return block;
+		}
+	}
+
+	/**
+	 * One entry of the table of contents.
+	 */
+	public static class TrackEntry {
+		public int trackNumber;
+		public int instrument;
+		public int volume;
+		public int length;
+		public int eventCount;
+		int blockLength;
+		long offset;
+	}
+
+	/**
+	 * Checks whether a file is a binary song file.
+	 *
+	 * @param file - to check
+	 * @return true if the file starts with the binary magic bytes
+	 */
+	public static boolean isBinary(File file) {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			byte[] start = new byte[MAGIC.length];
+			if(in.read(start) != start.length)
+				return false;
+			for(int i = 0; i < MAGIC.length; i++)
+				if(start[i] != MAGIC[i])
+					return false;
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the id of the save that wrote a binary song file. An edit
+	 * journal uses it to tell which version of the file it belongs to.
+	 * Only the header is read.
+	 *
+	 * @param file - to read
+	 * @return the save id, or 0 if the file isn't a binary song file or has none
+	 */
+	public static int readSaveId(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+			while(header.hasRemaining())
+				if(channel.read(header, header.position()) < 0)
+					return 0;
+			for(int i = 0; i < MAGIC.length; i++)
+				if(header.get(i) != MAGIC[i])
+					return 0;
+			// The save id is the last field of the header
+			return header.getInt(HEADER_SIZE - 4);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes a song to a binary song file, with each track's events sorted
+	 * into time order. Every block is encoded before
+	 * anything is written, and the file is replaced in one step once it is
+	 * complete (see SongFiles.writeAtomically), so a cancelled or failed save
+	 * leaves the old file as it was.
+	 *
+	 * @param file - to write
+	 * @param song - snapshot of the song to write
+	 * @param listener - told how many events are encoded and bytes written
+	 * @throws IOException if the file can't be written
+	 * @throws InterruptedIOException if the save was cancelled
+	 */
+	public static void write(File file, SongSnapshot song, ProgressListener listener) throws IOException {
+		HashMap<String, Integer> nameTable = new HashMap<>();
+		BetterDynamicArray<String> nameList = new BetterDynamicArray<>();
+		byte[][] trackBlocks = new byte[song.tracks.length][];
+		int[] eventCounts = new int[trackBlocks.length];
+		long events = 0;
+		for(int i = 0; i < trackBlocks.length; i++) {
+			listener.checkCancelled();
+			BetterDynamicArray<AudioEvent> trackEvents = song.tracks[i].events.load();
+			AudioEvent[] array = new AudioEvent[trackEvents.size()];
+			for(int j = 0; j < array.length; j++)
+				array[j] = trackEvents.get(j);
+			Arrays.sort(array);
+			EventBlock block = EventBlock.of(array, nameTable, nameList);
+			eventCounts[i] = block.size();
+			trackBlocks[i] = block.encode();
+			events += block.size();
+			listener.progress(0, events);
+		}
+		EventBlock songBlock = EventBlock.of(song.songEvents, nameTable, nameList);
+		byte[] songBytes = songBlock.encode();
+		byte[] nameBytes = encodeNames(nameList);
+		long eventCount = events + songBlock.size();
+		listener.checkCancelled();
+
+		long offset = HEADER_SIZE + (long) TOC_ENTRY_SIZE * trackBlocks.length;
+		long namesOffset = offset;
+		offset += nameBytes.length;
+		long songOffset = offset;
+		offset += songBytes.length;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + TOC_ENTRY_SIZE * trackBlocks.length).order(BYTE_ORDER);
+		header.put(MAGIC);
+		header.putShort((short) VERSION);
+		header.putShort((short) 0);
+		header.putInt(song.tempo);
+		header.putInt(trackBlocks.length);
+		header.putInt(song.songLength);
+		header.putInt(songBlock.size());
+		header.putLong(songOffset);
+		header.putLong(namesOffset);
+		header.putInt(nameList.size());
+		header.putInt(song.saveId);
+		for(int i = 0; i < trackBlocks.length; i++) {
+			SongSnapshot.Track track = song.tracks[i];
+			header.putInt(i);
+			header.putInt(track.instrument);
+			header.putInt(track.volume);
+			header.putInt(track.length);
+			header.putInt(eventCounts[i]);
+			header.putInt(trackBlocks[i].length);
+			header.putLong(offset);
+			offset += trackBlocks[i].length;
+		}
+		header.flip();
+
+		SongFiles.writeAtomically(file, channel -> {
+			long written = channel.write(header);
+			written += channel.write(ByteBuffer.wrap(nameBytes));
+			written += channel.write(ByteBuffer.wrap(songBytes));
+			for(byte[] block : trackBlocks) {
+				written += channel.write(ByteBuffer.wrap(block));
+				listener.progress(written, eventCount);
+			}
+		});
+	}
+
+	/**
+	 * Opens a binary song file and reads its header, table of contents and
+	 * names. Events are decoded when asked for.
+	 *
+	 * @param file - to read
+	 * @return the contents of the file
+	 * @throws IOException if the file can't be read or isn't a valid binary song file
+	 */
+	public static Contents open(File file) throws IOException {
+		Contents contents = new Contents();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Song file is too large");
+			contents.data = ByteBuffer.allocate((int) channel.size());
+			while(contents.data.hasRemaining())
+				if(channel.read(contents.data, contents.data.position()) < 0)
+					throw new IOException("Damaged song file");
+			contents.data.flip();
+		}
+		ByteBuffer header = contents.data.duplicate().order(BYTE_ORDER);
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			for(int i = 0; i < MAGIC.length; i++)
+				if(magic[i] != MAGIC[i])
+					throw new IOException("Not a binary song file");
+			int version = header.getShort();
+			if(version > VERSION)
+				throw new IOException("Song file version " + version + " is newer than this program");
+			header.getShort();
+			contents.tempo = header.getInt();
+			int trackCount = header.getInt();
+			contents.songLength = header.getInt();
+			contents.songEventCount = header.getInt();
+			contents.songOffset = header.getLong();
+			long namesOffset = header.getLong();
+			int nameCount = header.getInt();
+			contents.saveId = header.getInt();
+			long size = contents.data.capacity();
+			if(trackCount < 0 || nameCount < 0 || namesOffset < 0 || namesOffset > size
+					|| !isBlockInFile(contents.songOffset, size - contents.songOffset, contents.songEventCount, size))
+				throw new IOException("Damaged song file");
+
+			contents.tracks = new TrackEntry[trackCount];
+			for(int i = 0; i < trackCount; i++) {
+				TrackEntry entry = new TrackEntry();
+				entry.trackNumber = header.getInt();
+				entry.instrument = header.getInt();
+				entry.volume = header.getInt();
+				entry.length = header.getInt();
+				entry.eventCount = header.getInt();
+				entry.blockLength = header.getInt();
+				entry.offset = header.getLong();
+				if(!isBlockInFile(entry.offset, entry.blockLength, entry.eventCount, size))
+					throw new IOException("Damaged song file");
+				contents.tracks[i] = entry;
+			}
+
+			header.position(Math.toIntExact(namesOffset));
+			contents.names = decodeNames(header, nameCount);
+		} catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+			throw new IOException("Damaged song file", e);
+		}
+		return contents;
+	}
+
+	/**
+	 * Checks that a block of events from the header or table of contents
+	 * lies inside the file. Every event takes at least one byte, so a block
+	 * can't have more events than bytes.
+	 *
+	 * @param offset - where the block starts
+	 * @param length - number of bytes the block may take
+	 * @param eventCount - number of events in the block
+	 * @param size - of the file
+	 * @return true if the numbers are possible
+	 */
+	private static boolean isBlockInFile(long offset, long length, int eventCount, long size) {
+		return offset >= 0 && offset <= size && length >= 0 && length <= size - offset
+				&& eventCount >= 0 && eventCount <= length;
+	}
+
+	/**
+	 * Reads a binary song file. The tracks are decoded in parallel on a
+	 * fork-join pool. Songs with more than LAZY_LOAD_EVENTS track events
+	 * instead leave each track's events encoded in memory until the track is
+	 * opened or played. Playing such a track decodes all the song's tracks
+	 * that haven't been loaded in the background, in time order, and the
+	 * track plays while they are decoded (see SongStream). The song's own
+	 * events are always read right away.
+	 *
+	 * @param file - to read
+	 * @param synthesizer - used by the loaded events
+	 * @param listener - told how many bytes and events are decoded
+	 * @return the song, with track events that have no sequencer yet
+	 * @throws IOException if the file can't be read or isn't a valid binary song file
+	 * @throws InterruptedIOException if the load was cancelled
+	 */
+	public static SongSnapshot read(File file, SynthesizerBackend synthesizer, ProgressListener listener) throws IOException {
+		Contents contents = open(file);
+		long trackEvents = 0;
+		for(TrackEntry entry : contents.tracks)
+			trackEvents += entry.eventCount;
+		boolean deferred = trackEvents > LAZY_LOAD_EVENTS;
+		BetterDynamicArray<AudioEvent>[] decoded = deferred ? null : decodeTracks(contents, synthesizer, listener);
+		EventBlock songBlock = contents.readSong();
+		listener.progress(contents.data.capacity(), trackEvents + songBlock.size());
+
+		SongStream stream = deferred ? new SongStream(contents, synthesizer) : null;
+		SongSnapshot.Track[] tracks = new SongSnapshot.Track[contents.tracks.length];
+		for(int i = 0; i < tracks.length; i++) {
+			TrackEntry entry = contents.tracks[i];
+			int track = i;
+			tracks[i] = new SongSnapshot.Track(entry.trackNumber, entry.instrument, entry.volume, entry.length, entry.eventCount, deferred,
+					deferred ? stream.feeds[i] : () -> decoded[track]);
+		}
+		try {
+			AudioEvent[] songEvents = SongFiles.toArray(songBlock.toEvents(contents.names, synthesizer, null));
+			return new SongSnapshot(contents.saveId, contents.tempo, contents.songLength, songEvents, tracks);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Damaged song file", e);
+		}
+	}
+
+	/**
+	 * Decodes one track's events.
+	 *
+	 * @param contents - of the file
+	 * @param track - index in the table of contents
+	 * @param synthesizer - used by the events
+	 * @return the track's events, in the order they were stored
+	 * @throws IOException if the track is damaged
+	 */
+	private static BetterDynamicArray<AudioEvent> decodeTrack(Contents contents, int track, SynthesizerBackend synthesizer) throws IOException {
+		try {
+			return contents.readTrack(track).toEvents(contents.names, synthesizer, DecodeTracks.NO_TRACKS);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Damaged song file", e);
+		}
+	}
+
+	/**
+	 * Decodes the tracks of a song on a background thread, all of them
+	 * together in time order, so they can be played while they load (see
+	 * SimpleSequencer.EventFeed). Each step decodes the events at the next
+	 * time any track has events, from every track, then records that
+	 * everything before the following time is loaded. Decoding starts the
+	 * first time one of the tracks is played, and goes on to the end.
+	 */
+	private static class SongStream implements Runnable {
+		private final Contents contents;
+		private final SynthesizerBackend synthesizer;
+		private final Feed[] feeds;
+		private Thread thread;
+		// When each step was taken, and the time before which it had loaded all events
+		private long[] stepMillis = new long[64];
+		private int[] loadedTimes = new int[64];
+		private int steps;
+
+		SongStream(Contents contents, SynthesizerBackend synthesizer) {
+			this.contents = contents;
+			this.synthesizer = synthesizer;
+			feeds = new Feed[contents.tracks.length];
+			for(int i = 0; i < feeds.length; i++)
+				feeds[i] = new Feed(i);
+		}
+
+		synchronized void begin() {
+			if(thread != null)
+				return;
+			thread = new Thread(this, "Song stream");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		synchronized int getStepCount() {
+			return steps;
+		}
+
+		synchronized long getStepMillis(int step) {
+			return stepMillis[step];
+		}
+
+		synchronized int getLoadedTime(int step) {
+			return loadedTimes[step];
+		}
+
+		private synchronized void step(int loadedTime) {
+			if(steps == stepMillis.length) {
+				stepMillis = Arrays.copyOf(stepMillis, steps * 2);
+				loadedTimes = Arrays.copyOf(loadedTimes, steps * 2);
+			}
+			stepMillis[steps] = System.currentTimeMillis();
+			loadedTimes[steps] = loadedTime;
+			steps++;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for(Feed feed : feeds)
+					feed.open();
+				while(true) {
+					int next = Integer.MAX_VALUE;
+					for(Feed feed : feeds)
+						next = Math.min(next, feed.nextTime());
+					if(next == Integer.MAX_VALUE)
+						break;
+					for(Feed feed : feeds)
+						feed.decodeBefore(next + 1);
+					step(next + 1);
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				// Playing goes on with the events decoded so far
+				System.out.println("Couldn't load the events of the song");
+				e.printStackTrace();
+			}
+			step(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * The events of one track, as the stream decodes them.
+		 */
+		private class Feed implements SimpleSequencer.EventFeed {
+			private final int track;
+			private final AudioEvent[] events;
+			private volatile int available;
+			// Where the stream reads the track from: the file, or the sorted events of an older file
+			private EventBlock.Reader reader;
+			private AudioEvent[] sorted;
+			private int sortedIndex;
+
+			Feed(int track) {
+				this.track = track;
+				events = new AudioEvent[contents.tracks[track].eventCount];
+			}
+
+			/**
+			 * Gets ready to decode the track. Files written before tracks were
+			 * saved in time order have their tracks decoded and sorted first.
+			 */
+			void open() throws IOException {
+				reader = contents.openTrack(track);
+				if(!reader.isTimeOrdered()) {
+					sorted = SongFiles.toArray(decodeTrack(contents, track, synthesizer));
+					Arrays.sort(sorted);
+					reader = null;
+				}
+			}
+
+			int nextTime() {
+				if(reader != null)
+					return reader.hasNext() ? reader.peekTime() : Integer.MAX_VALUE;
+				return sortedIndex < sorted.length ? sorted[sortedIndex].getTime() : Integer.MAX_VALUE;
+			}
+
+			void decodeBefore(int time) {
+				int count = available;
+				while(nextTime() < time)
+					events[count++] = reader != null ? reader.next(contents.names, synthesizer) : sorted[sortedIndex++];
+				available = count;
+			}
+
+			@Override
+			public void begin() {
+				SongStream.this.begin();
+			}
+
+			@Override
+			public int getAvailableCount() {
+				return available;
+			}
+
+			@Override
+			public AudioEvent get(int index) {
+				return events[index];
+			}
+
+			@Override
+			public int getStepCount() {
+				return SongStream.this.getStepCount();
+			}
+
+			@Override
+			public long getStepMillis(int step) {
+				return SongStream.this.getStepMillis(step);
+			}
+
+			@Override
+			public int getLoadedTime(int step) {
+				return SongStream.this.getLoadedTime(step);
+			}
+
+			/**
+			 * Gets the track's events, from the stream if it has decoded all of
+			 * them, or else straight from the file.
+			 */
+			@Override
+			public BetterDynamicArray<AudioEvent> load() throws IOException {
+				int count = available;
+				if(count < events.length)
+					return decodeTrack(contents, track, synthesizer);
+				BetterDynamicArray<AudioEvent> loaded = new BetterDynamicArray<>();
+				for(int i = 0; i < count; i++)
+					loaded.add(events[i]);
+				return loaded;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the events of every track in parallel.
+	 *
+	 * @param contents - of the file
+	 * @param synthesizer - used by the events
+	 * @param listener - told how many bytes and events are decoded
+	 * @return the events of each track, in table of contents order
+	 * @throws IOException if a track is damaged
+	 * @throws InterruptedIOException if the load was cancelled
+	 */
+	private static BetterDynamicArray<AudioEvent>[] decodeTracks(Contents contents, SynthesizerBackend synthesizer, ProgressListener listener) throws IOException {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		BetterDynamicArray<AudioEvent>[] decoded = new BetterDynamicArray[contents.tracks.length];
+		if(decoded.length == 0)
+			return decoded;
+		try {
+			ForkJoinPool.commonPool().invoke(new DecodeTracks(contents, synthesizer, listener, new AtomicLong[] {new AtomicLong(), new AtomicLong()},
+					decoded, 0, decoded.length));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Damaged song file", e);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes a range of tracks, splitting it in half until each task has
+	 * one track, so idle workers can steal the rest.
+	 */
+	private static class DecodeTracks extends RecursiveAction {
+		// Tracks never contain track events, so none can refer to a track
+		private static final BetterDynamicArray<TrackPanel> NO_TRACKS = new BetterDynamicArray<>();
+
+		private final Contents contents;
+		private final SynthesizerBackend synthesizer;
+		private final ProgressListener listener;
+		// Bytes and events decoded so far by all tasks
+		private final AtomicLong[] done;
+		private final BetterDynamicArray<AudioEvent>[] decoded;
+		private final int from, to;
+
+		DecodeTracks(Contents contents, SynthesizerBackend synthesizer, ProgressListener listener, AtomicLong[] done,
+				BetterDynamicArray<AudioEvent>[] decoded, int from, int to) {
+			this.contents = contents;
+			this.synthesizer = synthesizer;
+			this.listener = listener;
+			this.done = done;
+			this.decoded = decoded;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DecodeTracks(contents, synthesizer, listener, done, decoded, from, middle),
+						new DecodeTracks(contents, synthesizer, listener, done, decoded, middle, to));
+				return;
+			}
+			try {
+				listener.checkCancelled();
+				decoded[from] = contents.readTrack(from).toEvents(contents.names, synthesizer, NO_TRACKS);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			TrackEntry entry = contents.tracks[from];
+			listener.progress(done[0].addAndGet(entry.blockLength), done[1].addAndGet(entry.eventCount));
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Encodes the table of names, each as a 2 byte length and UTF-8 bytes.
+	 *
+	 * @param nameList - the names
+	 * @return the encoded table
+	 * @throws IOException if a name is too long
+	 */
+	static byte[] encodeNames(BetterDynamicArray<String> nameList) throws IOException {
+		byte[][] encoded = new byte[nameList.size()][];
+		int total = 0;
+		for(int i = 0; i < encoded.length; i++) {
+			encoded[i] = nameList.get(i).getBytes(StandardCharsets.UTF_8);
+			if(encoded[i].length > 0xFFFF)
+				throw new IOException("Event name is too long");
+			total += 2 + encoded[i].length;
+		}
+		ByteBuffer out = ByteBuffer.allocate(total).order(BYTE_ORDER);
+		for(byte[] name : encoded) {
+			out.putShort((short) name.length);
+			out.put(name);
+		}
+		return out.array();
+	}
+
+	/**
+	 * Decodes a table of names written by encodeNames.
+	 *
+	 * @param in - positioned at the start of the table, and left at its end
+	 * @param count - number of names
+	 * @return the names
+	 * @throws BufferUnderflowException if the table is cut short
+	 */
+	static String[] decodeNames(ByteBuffer in, int count) {
+		String[] names = new String[count];
+		for(int i = 0; i < count; i++) {
+			byte[] bytes = new byte[in.getShort() & 0xFFFF];
+			in.get(bytes);
+			names[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return names;
+	}
+}
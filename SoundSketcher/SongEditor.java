@@ -7,13 +7,15 @@
  */
 package assign11;
 
-import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Point;
+import java.util.Set;
 
 public class SongEditor extends GridCanvas {
     private SimpleSequencer sequencer;
     private BetterDynamicArray<TrackPanel> trackPanels;
     private int width, height, currentTrack;
+    private EditJournal journal;
 
     /**
      * Constructs a SongEditor} with the specified width and height.
@@ -29,6 +31,24 @@ public class SongEditor extends GridCanvas {
         this.currentTrack = -1;
 
         this.sequencer = new SimpleSequencer(16);
+        PlayheadTicker.follow(this, sequencer);
+        // The grid shows the sequencer's track events, so it repaints where they change
+        sequencer.addSequenceListener(new SimpleSequencer.SequenceListener() {
+            @Override
+            public void eventAdded(AudioEvent event) {
+                repaintEvent(event);
+            }
+
+            @Override
+            public void eventRemoved(AudioEvent event) {
+                repaintEvent(event);
+            }
+
+            @Override
+            public void sequenceChanged() {
+                repaint();
+            }
+        });
         this.trackPanels = new BetterDynamicArray<>();
 
         addMouseListener(this);
@@ -67,30 +87,63 @@ public class SongEditor extends GridCanvas {
         return sequencer;
     }
 
+    /**
+     * Sets the journal that track events added and removed in the editor
+     * are recorded in.
+     *
+     * @param journal the journal, or null to stop recording
+     */
+    public void setJournal(EditJournal journal) {
+        this.journal = journal;
+    }
+
     /**
      * Clears all audio events from the sequencer and resets the grid.
      */
-    @Override
     public void clear() {
-        super.clear();
         sequencer.stop();
         sequencer.clear();
     }
 
     /**
      * Sets the sequence of audio events in the editor.
-     * Updates the grid and sequencer to reflect the new events.
+     * Updates the sequencer with the new events, which the grid shows.
+     * A playing sequencer keeps playing.
      *
      * @param newEvents the list of AudioEvent objects to set
      */
     public void setEvents(BetterDynamicArray<AudioEvent> newEvents) {
-        clear();
-        for (AudioEvent event : newEvents) {
+        sequencer.updateSequence(newEvents);
+    }
+
+    /**
+     * Shows the track events of the sequencer as cells, with the track
+     * number as the row.
+     *
+     * @param firstRow the lowest track of the range
+     * @param lastRow  the highest track of the range
+     * @param firstCol the first beat of the range
+     * @param lastCol  the last beat of the range
+     * @param visitor  called with the cell of each track event in the range
+     */
+    @Override
+    public void forEachCell(int firstRow, int lastRow, int firstCol, int lastCol, CellVisitor visitor) {
+        sequencer.forEachBetween(firstCol, lastCol, firstRow, lastRow, event -> {
             if (event instanceof TrackEvent trackEvent) {
-                addCell(trackEvent.getChannel(), trackEvent.getTime(), 1, trackEvent.getDuration());
+                visitor.visit(trackEvent.getChannel(), trackEvent.getTime(), 1, trackEvent.getDuration());
             }
+        });
+    }
+
+    /**
+     * Repaints the cell of a track event that was added or removed.
+     *
+     * @param event the changed event
+     */
+    private void repaintEvent(AudioEvent event) {
+        if (event instanceof TrackEvent trackEvent) {
+            repaintCells(trackEvent.getChannel(), trackEvent.getTime(), 1, trackEvent.getDuration());
         }
-        sequencer.updateSequence(newEvents);
     }
 
     /**
@@ -105,6 +158,7 @@ public class SongEditor extends GridCanvas {
 
     /**
      * Paints the song editor, including the grid and a time indicator.
+     * The time indicator is moved by a PlayheadTicker while the sequence plays.
      *
      * @param g the Graphics object used for painting
      */
@@ -114,13 +168,6 @@ public class SongEditor extends GridCanvas {
         this.height = getHeight();
         setRows(trackPanels.size());
         super.paintComponent(g);
-
-        // Draw time indicator
-        int timeX = (int) (sequencer.getElapsedTime() * width / sequencer.getLength());
-        g.setColor(Color.RED);
-        g.fillRect(timeX, 0, 2, height);
-
-        repaint();
     }
 
     /**
@@ -165,6 +212,8 @@ public class SongEditor extends GridCanvas {
     public void onCellReleased(int row, int col, int rowSpan, int colSpan) {
         TrackEvent event = new TrackEvent(col, "TrackEvent", currentTrack, colSpan, trackPanels.get(currentTrack).getSequencer());
         sequencer.add(event);
+        if (journal != null)
+            journal.record(EditJournal.TRACK_EVENT_ADDED, currentTrack, col, 0, colSpan);
     }
 
     /**
@@ -175,10 +224,28 @@ public class SongEditor extends GridCanvas {
      */
     @Override
     public void onCellRemoved(int row, int col) {
-        for (AudioEvent event : sequencer) {
-            if (event instanceof TrackEvent trackEvent && trackEvent.getChannel() == row && trackEvent.getTime() == col) {
-                sequencer.remove(event);
-            }
+        sequencer.removeAt(col, event -> event instanceof TrackEvent trackEvent && trackEvent.getChannel() == row);
+        if (journal != null)
+            journal.record(EditJournal.TRACK_EVENT_REMOVED, row, col, 0, 0);
+    }
+
+    /**
+     * Handles the removal of many cells at once. The TrackEvents starting at
+     * the cells are removed from the sequencer in one pass.
+     *
+     * @param starts the row (y) and column (x) of each removed cell
+     */
+    @Override
+    public void onCellsRemoved(Set<Point> starts) {
+        int firstCol = Integer.MAX_VALUE, lastCol = Integer.MIN_VALUE;
+        for (Point start : starts) {
+            firstCol = Math.min(firstCol, start.x);
+            lastCol = Math.max(lastCol, start.x);
         }
+        sequencer.removeStartingBetween(firstCol, lastCol, event -> event instanceof TrackEvent trackEvent
+                && starts.contains(new Point(trackEvent.getTime(), trackEvent.getChannel())));
+        if (journal != null)
+            for (Point start : starts)
+                journal.record(EditJournal.TRACK_EVENT_REMOVED, start.y, start.x, 0, 0);
     }
 }
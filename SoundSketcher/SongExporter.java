@@ -0,0 +1,310 @@
+package assign11;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Utility class for exporting a song to an audio file.
+ * Every track is rendered with TrackRenderer and the results are placed on
+ * the song's timeline according to its track events. If the song has no track
+ * events, all tracks are exported together from the start, as when the main
+ * play button is used.
+ *
+ * Rendered tracks are kept in a RenderCache, so after a small change only the
+ * changed tracks are rendered again. Tracks that do need rendering are
+ * rendered in parallel. The rendered tracks are summed by a MixerEngine and
+ * streamed to a WAV or FLAC file.
+ *
+ * The song is copied into a Snapshot on the Swing thread, and can then be
+ * exported on a background thread while editing goes on.
+ */
+public class SongExporter {
+	// How often a waiting export checks whether it was cancelled
+	private static final int CANCEL_CHECK_MILLIS = 100;
+
+	/**
+	 * The state of one track, copied so rendering can happen off the Swing thread.
+	 */
+	private static class TrackJob {
+		AudioEvent[] events;
+		int instrument;
+		int volume;
+		boolean muted;
+		int length;
+		double speed;
+		EffectChain effects;
+		RenderedTrack rendered;
+		// Set when the export is over, so a render still running throws its track away
+		boolean abandoned;
+
+		long frames() {
+			return TrackRenderer.ticsToFrames(length, speed);
+		}
+	}
+
+	/**
+	 * A copy of everything about a song that affects how it sounds, taken on
+	 * the Swing thread so the song can be exported in the background. A
+	 * snapshot can be exported once.
+	 */
+	public static class Snapshot {
+		private final TrackJob[] jobs;
+		// Each placement is a track index and the frame it starts on
+		private final ArrayList<int[]> placements;
+		private final long totalFrames;
+		private final EffectChain masterEffects;
+
+		private Snapshot(TrackJob[] jobs, ArrayList<int[]> placements, long totalFrames, EffectChain masterEffects) {
+			this.jobs = jobs;
+			this.placements = placements;
+			this.totalFrames = totalFrames;
+			this.masterEffects = masterEffects;
+		}
+
+		/**
+		 * Gets how much work exporting the song takes, in the units its
+		 * progress is reported in: the frames of every track to render,
+		 * then the frames of the song to mix.
+		 *
+		 * @return number of frames
+		 */
+		public long getWork() {
+			long work = totalFrames;
+			for(int i = 0; i < jobs.length; i++)
+				if(isNeeded(i))
+					work += jobs[i].frames();
+			return work;
+		}
+
+		/**
+		 * Tells whether a track is heard in the export.
+		 *
+		 * @param track - index of the track
+		 * @return true if the track is placed in the song and not muted
+		 */
+		private boolean isNeeded(int track) {
+			if(jobs[track].muted)
+				return false;
+			for(int[] placement : placements)
+				if(placement[0] == track)
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * Exports a song to a 16 bit stereo audio file. Files whose name ends
+	 * in .flac are written as FLAC, and all others as WAV.
+	 * This must be called on the Swing thread, since it reads the panels.
+	 *
+	 * @param file - to write
+	 * @param trackPanels - all track panels of the song
+	 * @param songPanel - the song panel with the arrangement
+	 * @param cache - for rendered tracks
+	 * @throws IOException if rendering or writing fails
+	 */
+	public static void export(File file, BetterDynamicArray<TrackPanel> trackPanels, SongPanel songPanel, RenderCache cache) throws IOException {
+		export(file, snapshot(trackPanels, songPanel), cache, ProgressListener.NONE);
+	}
+
+	/**
+	 * Copies what export needs from the panels. This must be called on the
+	 * Swing thread, since it reads the panels.
+	 *
+	 * @param trackPanels - all track panels of the song
+	 * @param songPanel - the song panel with the arrangement
+	 * @return the snapshot
+	 */
+	public static Snapshot snapshot(BetterDynamicArray<TrackPanel> trackPanels, SongPanel songPanel) {
+		TrackJob[] jobs = new TrackJob[trackPanels.size()];
+		for(int i = 0; i < jobs.length; i++) {
+			TrackPanel panel = trackPanels.get(i);
+			TrackJob job = new TrackJob();
+			job.events = panel.getSequencer().toArray();
+			job.instrument = panel.getInstrument();
+			job.volume = panel.getVolume();
+			job.muted = panel.isMuted();
+			job.length = panel.getLength();
+			job.speed = panel.getSequencer().getSpeedFactor();
+			job.effects = panel.getEffects().copy();
+			jobs[i] = job;
+		}
+
+		// Each placement is a track index and the frame it starts on
+		ArrayList<int[]> placements = new ArrayList<int[]>();
+		SimpleSequencer song = songPanel.getSequencer();
+		long totalFrames = TrackRenderer.ticsToFrames(song.getLength(), song.getSpeedFactor());
+		for(AudioEvent event : song) {
+			if(event instanceof TrackEvent && event.getChannel() >= 0 && event.getChannel() < jobs.length)
+				placements.add(new int[] {event.getChannel(), (int) TrackRenderer.ticsToFrames(event.getTime(), song.getSpeedFactor())});
+		}
+		if(placements.isEmpty()) {
+			totalFrames = 0;
+			for(int i = 0; i < jobs.length; i++) {
+				placements.add(new int[] {i, 0});
+				totalFrames = Math.max(totalFrames, jobs[i].frames());
+			}
+		}
+		return new Snapshot(jobs, placements, totalFrames, songPanel.getMasterEffects().copy());
+	}
+
+	/**
+	 * Exports a snapshot of a song to a 16 bit stereo audio file. Files whose
+	 * name ends in .flac are written as FLAC, and all others as WAV. This can
+	 * be called on any thread. If the export fails or is cancelled while the
+	 * file is written, the partly written file is deleted.
+	 *
+	 * @param file - to write
+	 * @param song - from snapshot
+	 * @param cache - for rendered tracks
+	 * @param listener - told how many frames are rendered and mixed (as bytes), and checked for cancellation
+	 * @throws IOException if rendering or writing fails
+	 * @throws java.io.InterruptedIOException if the export was cancelled
+	 */
+	public static void export(File file, Snapshot song, RenderCache cache, ProgressListener listener) throws IOException {
+		try {
+			renderTracks(song, cache, listener);
+			mix(file, song, listener);
+		} finally {
+			for(TrackJob job : song.jobs) {
+				synchronized(job) {
+					if(job.rendered != null)
+						job.rendered.dispose();
+					job.rendered = null;
+					job.abandoned = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Renders every placed, unmuted track, using cached renders where possible.
+	 * Tracks that aren't cached are rendered in parallel and then added to the cache.
+	 *
+	 * @param song - track state and placements
+	 * @param cache - for rendered tracks
+	 * @param listener - told how many frames are rendered, and checked for cancellation
+	 * @throws IOException if rendering fails
+	 */
+	private static void renderTracks(Snapshot song, RenderCache cache, ProgressListener listener) throws IOException {
+		TrackJob[] jobs = song.jobs;
+		AtomicLong rendered = new AtomicLong();
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			ArrayList<Future<?>> renders = new ArrayList<Future<?>>();
+			for(int i = 0; i < jobs.length; i++) {
+				if(!song.isNeeded(i))
+					continue;
+				listener.checkCancelled();
+				TrackJob job = jobs[i];
+				String key = RenderCache.keyOf(job.events, job.instrument, job.length, job.speed);
+				job.rendered = cache.get(key);
+				if(job.rendered != null) {
+					listener.progress(rendered.addAndGet(job.frames()), 0);
+					continue;
+				}
+				renders.add(pool.submit(() -> {
+					if(listener.isCancelled())
+						return null;
+					RenderedTrack track = TrackRenderer.render(job.events, job.length, job.speed, job.instrument);
+					cache.put(key, track);
+					// A cancelled or failed export may be over without waiting for this track
+					synchronized(job) {
+						if(job.abandoned)
+							track.dispose();
+						else
+							job.rendered = track;
+					}
+					listener.progress(rendered.addAndGet(job.frames()), 0);
+					return null;
+				}));
+			}
+			for(Future<?> render : renders) {
+				while(true) {
+					listener.checkCancelled();
+					try {
+						render.get(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException e) {
+						// Check for cancellation again
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export was interrupted", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException io)
+				throw io;
+			throw new IOException("Couldn't render a track", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Mixes the placed tracks with a MixerEngine, using each track's effects
+	 * and volume on its strip, and writes the result.
+	 *
+	 * @param file - to write
+	 * @param song - track state with rendered audio, and placements
+	 * @param listener - told how many frames are rendered and mixed, and checked for cancellation
+	 * @throws IOException if the file can't be written
+	 */
+	private static void mix(File file, Snapshot song, ProgressListener listener) throws IOException {
+		int blockSize = SoftwareSynthesizer.BLOCK_SIZE;
+		MixerEngine mixer = new MixerEngine(blockSize, SoftwareSynthesizer.SAMPLE_RATE);
+		if(!song.masterEffects.isEmpty())
+			mixer.setMasterEffects(song.masterEffects);
+		for(int[] placement : song.placements) {
+			TrackJob job = song.jobs[placement[0]];
+			if(job.rendered == null)
+				continue;
+			int strip = mixer.addStrip(new MixerEngine.TrackSource(job.rendered, placement[1]));
+			mixer.setGain(strip, job.volume / 127f);
+			// A track placed more than once needs its own effect state each time
+			if(!job.effects.isEmpty())
+				mixer.setEffects(strip, job.effects.copy());
+		}
+
+		float[] left = new float[blockSize], right = new float[blockSize];
+		long rendered = song.getWork() - song.totalFrames;
+		try (AudioFileWriter writer = openWriter(file, song.totalFrames)) {
+			for(long start = 0; start < song.totalFrames; start += blockSize) {
+				int frames = (int) Math.min(blockSize, song.totalFrames - start);
+				mixer.process(start, left, right, frames);
+				writer.write(left, right, frames);
+				if((start / blockSize) % 64 == 0) {
+					listener.checkCancelled();
+					listener.progress(rendered + start, 0);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			throw e;
+		}
+		listener.progress(song.getWork(), 0);
+	}
+
+	/**
+	 * Opens a writer for an audio file, choosing the format from the file name.
+	 *
+	 * @param file - to write
+	 * @param totalFrames - number of frames that will be written
+	 * @return a FlacWriter for .flac files, otherwise a WavWriter
+	 * @throws IOException if the file can't be written
+	 */
+	public static AudioFileWriter openWriter(File file, long totalFrames) throws IOException {
+		if(file.getName().toLowerCase().endsWith(".flac"))
+			return new FlacWriter(file);
+		return new WavWriter(file, totalFrames);
+	}
+}
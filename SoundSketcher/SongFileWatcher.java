@@ -0,0 +1,108 @@
+package assign11;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a song file and calls a listener when it changes on disk.
+ *
+ * The file's folder is watched with a WatchService on a daemon thread. A
+ * program writing the file often changes it several times in a row, so the
+ * listener is only called once the file has been left alone for QUIET_MILLIS.
+ * The listener runs on the watching thread, one change at a time, so it can
+ * read the file there.
+ *
+ * @version 2026-10-19
+ */
+public class SongFileWatcher implements Closeable {
+	public static final int QUIET_MILLIS = 150;
+
+	private final File file;
+	private final WatchService service;
+	private final Thread thread;
+
+	/**
+	 * Starts watching a file.
+	 *
+	 * @param file - the song file to watch
+	 * @param listener - run on the watching thread after each change
+	 * @throws IOException if the file's folder can't be watched
+	 */
+	public SongFileWatcher(File file, Runnable listener) throws IOException {
+		this.file = file;
+		Path folder = file.getAbsoluteFile().toPath().getParent();
+		service = folder.getFileSystem().newWatchService();
+		try {
+			folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			service.close();
+			throw e;
+		}
+		thread = new Thread(() -> watch(listener), "Song file watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Gets the file being watched.
+	 *
+	 * @return the song file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	private void watch(Runnable listener) {
+		try {
+			while(true) {
+				if(!changed(service.take()))
+					continue;
+				// Wait until nothing has happened in the folder for a while
+				WatchKey key;
+				while((key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null)
+					changed(key);
+				try {
+					listener.run();
+				} catch (RuntimeException e) {
+					System.out.println("Couldn't reload " + file.getName());
+					e.printStackTrace();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Closed
+		}
+	}
+
+	/**
+	 * Takes the events of a watch key and resets it.
+	 *
+	 * @param key - signalled by the watch service
+	 * @return true if the watched file was among the changed files
+	 */
+	private boolean changed(WatchKey key) {
+		boolean changed = false;
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW || file.getName().equals(String.valueOf(event.context())))
+				changed = true;
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * Stops watching the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		service.close();
+		thread.interrupt();
+	}
+}
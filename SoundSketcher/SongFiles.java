@@ -2,20 +2,50 @@ package assign11;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.HashMap;
 import java.util.InputMismatchException;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Utility class for reading and writing song files. Provides functionality to save and load 
  * song data, including tracks, audio events, and tempo.
+ * Songs are saved in the binary format of SongBinaryFormat, or as compressed
+ * archives (see SongArchiveFormat) when the file name has the archive extension.
+ * Files in the older line-per-value text format can still be read.
+ * 
+ * Songs can be loaded and saved on a background thread: a song is saved from a
+ * snapshot, and a loaded song is parsed first and only attached to the panels,
+ * on the event dispatch thread, once all of it has been read. Files are saved
+ * to a temporary file that replaces the old file only once it is complete.
  */
 public class SongFiles {
+	// Number of text events read between progress reports
+	private static final int PROGRESS_INTERVAL = 1 << 12;
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+	// Links followed before a save gives up, as Linux does
+	private static final int MAX_SYMBOLIC_LINKS = 40;
 
 	/**
-     * Writes the given song data, including tempo, tracks, and the song panel, to the specified file.
+     * Writes the given song data, including tempo, tracks, and the song panel, to the specified file
+     * in the binary song format.
      * 
      * Parameters:
      * file - The file to write the song data to.
@@ -24,31 +54,8 @@ public class SongFiles {
      * songPanel - The song panel containing additional song information.
      */
 	public static void writeFile(File file, int tempo, BetterDynamicArray<TrackPanel> trackPanels, SongPanel songPanel) {
-		//creates an instance of filewriter
-		
-		try (FileWriter writer  = new FileWriter(file)){
-			//starts with printing tempo and number of track panels
-			writer.write("" + tempo + "\n");
-			writer.write("" + trackPanels.size() + "\n");
-			//loops through and adds each track panel before the song panel
-			for(int i = 0; i <trackPanels.size(); i++) {
-				TrackPanel trackPanel = trackPanels.get(i);
-				writer.write("track\n");
-				writer.write(i + "\n");
-				writer.write(trackPanel.getInstrument() + "\n");
-				writer.write("" + trackPanel.getVolume() + "\n");
-				writer.write("" + trackPanel.getLength() + "\n");
-				writer.write("" + trackPanel.getSequencer().getEventCount() + "\n");
-				//writes the audio event part of each track event
-				audioEventTextBlock(trackPanel.getSequencer(), writer );
-			}
-			//writes the song panel part of the file
-			writer.write("song\n");
-			writer.write(songPanel.getLength() + "\n");
-			writer.write(songPanel.getSequencer().getEventCount() + "\n");
-			audioEventTextBlock(songPanel.getSequencer(), writer );
-			writer.close();
-			//catches the IOException
+		try {
+			save(file, new SongSnapshot(tempo, trackPanels, songPanel), ProgressListener.NONE);
 		} catch (IOException e) {
 			System.out.println("An error has occurred");
 			e.printStackTrace();
@@ -56,60 +63,294 @@ public class SongFiles {
 	}
 	
 	/**
-     * Converts all audio events from a given sequencer into a formatted string block for saving to a file.
+     * Writes a snapshot of a song to the specified file in the binary song format, or as
+     * a song archive if the file has the archive extension. Can be called on any thread, since the snapshot doesn't change while it is written.
+     * 
+     * Parameters:
+     * file - The file to write the song data to.
+     * song - The snapshot of the song.
+     * listener - Told how many bytes and events are written, and checked for cancellation.
+     * 
+     * Throws:
+     * IOException if the file can't be written, or InterruptedIOException if the save was cancelled.
+     */
+	public static void save(File file, SongSnapshot song, ProgressListener listener) throws IOException {
+		if (SongArchiveFormat.hasExtension(file))
+			SongArchiveFormat.write(file, song, listener);
+		else
+			SongBinaryFormat.write(file, song, listener);
+	}
+	
+	/**
+     * Reads the id of the save that wrote a song file, from a binary song file or a
+     * song archive. An edit journal uses it to tell which version of the file it belongs to.
      * 
      * Parameters:
-     * sequencer - The sequencer containing audio events to be converted.
+     * file - The file to read.
      * 
      * Returns:
-     * A string representing the audio events in the sequencer.
+     * The save id, or 0 if the file has none.
+     */
+	public static int readSaveId(File file) {
+		if (SongArchiveFormat.isArchive(file))
+			return SongArchiveFormat.readSaveId(file);
+		return SongBinaryFormat.readSaveId(file);
+	}
+	
+	/**
+     * Writes the given song data to the specified file in the older text format.
+     * 
+     * Parameters:
+     * file - The file to write the song data to.
+     * tempo - The tempo of the song.
+     * trackPanels - A dynamic array containing all track panels of the song.
+     * songPanel - The song panel containing additional song information.
+     */
+	public static void writeTextFile(File file, int tempo, BetterDynamicArray<TrackPanel> trackPanels, SongPanel songPanel) {
+		SongSnapshot song = new SongSnapshot(tempo, trackPanels, songPanel);
+		try {
+			writeAtomically(file, channel -> {
+				TextOutput writer = new TextOutput(channel);
+				//starts with printing tempo and number of track panels
+				writer.writeLine(song.tempo);
+				writer.writeLine(song.tracks.length);
+				//loops through and adds each track panel before the song panel
+				for (int i = 0; i < song.tracks.length; i++) {
+					SongSnapshot.Track track = song.tracks[i];
+					BetterDynamicArray<AudioEvent> events = track.events.load();
+					writer.writeLine("track");
+					writer.writeLine(i);
+					writer.writeLine(track.instrument);
+					writer.writeLine(track.volume);
+					writer.writeLine(track.length);
+					writer.writeLine(events.size());
+					//writes the audio event part of each track event
+					for (AudioEvent event : events)
+						writeTextEvent(event, writer);
+				}
+				//writes the song panel part of the file
+				writer.writeLine("song");
+				writer.writeLine(song.songLength);
+				writer.writeLine(song.songEvents.length);
+				for (AudioEvent event : song.songEvents)
+					writeTextEvent(event, writer);
+				writer.flush();
+			});
+			//catches the IOException
+		} catch (IOException e) {
+			System.out.println("An error has occurred");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+     * Writes one audio event in the text format.
+     * 
+     * Parameters:
+     * event - The event to write.
+     * writer - The output to write it to.
      */
-	private static void audioEventTextBlock(SimpleSequencer sequencer, FileWriter writer) {
+	private static void writeTextEvent(AudioEvent event, TextOutput writer) throws IOException {
+		// Event value if Change, pitch if Note, 0 if Track
+		if (event instanceof ChangeEvent change) {
+			writer.writeLine("change");
+			writer.writeLine(change.getValue());
+			writer.writeLine(event.getName());
+			writer.writeLine(event.getTime());
+			writer.writeLine(event.getChannel());
+			writer.writeLine(0);
+		} else if (event instanceof NoteEvent note) {
+			writer.writeLine("note");
+			writer.writeLine(event.getName());
+			writer.writeLine(event.getTime());
+			writer.writeLine(event.getChannel());
+			writer.writeLine(note.getPitch());
+			writer.writeLine(note.getDuration());
+		} else if (event instanceof TrackEvent track) {
+			writer.writeLine("track");
+			writer.writeLine(event.getName());
+			writer.writeLine(event.getTime());
+			writer.writeLine(event.getChannel());
+			writer.writeLine(0);
+			writer.writeLine(track.getDuration());
+		}
+	}
+	
+	/**
+	 * Writes lines of the text format into a large buffer that is written to
+	 * the channel whenever it fills. Numbers are formatted straight into the
+	 * buffer, and each different word is encoded only once.
+	 */
+	private static class TextOutput {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+		private final HashMap<String, byte[]> encodedWords = new HashMap<>();
+		
+		TextOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+		
+		void writeLine(int value) throws IOException {
+			// Longest int is 11 characters
+			if (buffer.remaining() < 12)
+				flush();
+			long number = value;
+			if (number < 0) {
+				buffer.put((byte) '-');
+				number = -number;
+			}
+			int start = buffer.position();
+			do {
+				buffer.put((byte) ('0' + number % 10));
+				number /= 10;
+			} while (number != 0);
+			// Digits were written backwards
+			byte[] bytes = buffer.array();
+			for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+				byte digit = bytes[i];
+				bytes[i] = bytes[j];
+				bytes[j] = digit;
+			}
+			buffer.put((byte) '\n');
+		}
 		
+		void writeLine(String word) throws IOException {
+			byte[] bytes = encodedWords.computeIfAbsent(word, w -> w.getBytes(StandardCharsets.UTF_8));
+			if (buffer.remaining() < bytes.length + 1)
+				flush();
+			if (buffer.remaining() < bytes.length + 1) {
+				channel.write(ByteBuffer.wrap(bytes));
+			} else {
+				buffer.put(bytes);
+			}
+			buffer.put((byte) '\n');
+		}
+		
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+	
+	/**
+	 * Writes the contents of a file to a channel.
+	 */
+	interface FileContents {
+		/**
+		 * Writes the contents.
+		 * 
+		 * @param channel - of the file to write
+		 * @throws IOException if the contents can't be written
+		 */
+		void writeTo(FileChannel channel) throws IOException;
+	}
+	
+	/**
+     * Writes a file so that a crash or error never leaves it half written. The contents
+     * are written to a temporary file in the same directory and forced to the disk, then
+     * the temporary file is moved over the file in one step. If anything fails, the file
+     * is left as it was and the temporary file is deleted. On Windows, the move fails
+     * while another program has the file open without allowing it to be deleted.
+     * 
+     * If the file is a symbolic link, the file it points to is replaced and the link is
+     * kept. The new file gets the permissions of the file it replaces, or the usual
+     * permissions of a new file if there was none.
+     * 
+     * Parameters:
+     * file - The file to write.
+     * contents - Writes the contents of the file.
+     * 
+     * Throws:
+     * IOException if the file can't be written.
+     */
+	static void writeAtomically(File file, FileContents contents) throws IOException {
+		Path target = resolveLinks(file.toPath().toAbsolutePath());
+		Path directory = target.getParent();
+		Path temp = createTempFile(target);
+		boolean moved = false;
 		try {
-			for (AudioEvent event : sequencer) {
-	            // Event value if Change, pitch if Note, 0 if Track
-	            if (event instanceof ChangeEvent) {
-	            	writer.write("change" + "\n");
-	                writer.write("" + ( (ChangeEvent) event).getValue() + "\n");
-	                // Event name
-		            writer.write("" + event.getName() + "\n");
-		            // Event time
-		            writer.write("" + event.getTime() + "\n");
-		            // Event channel
-		            writer.write("" + event.getChannel() + "\n");
-	                writer.write("" + 0 + "\n");
-	            } else if (event instanceof NoteEvent) {
-	            	writer.write("note" + "\n");
-	                // Event name
-		            writer.write("" + event.getName() + "\n");
-		            // Event time
-		            writer.write("" + event.getTime() + "\n");
-		            // Event channel
-		            writer.write("" + event.getChannel() + "\n");
-		            writer.write("" + ( (NoteEvent) event).getPitch() + "\n");
-	                writer.write("" + ( (NoteEvent) event).getDuration() + "\n");
-	            } else if (event instanceof TrackEvent) {
-	            	writer.write("track" + "\n");
-	            	 // Event name
-		            writer.write("" + event.getName() + "\n");
-		            // Event time
-		            writer.write("" + event.getTime() + "\n");
-		            // Event channel
-		            writer.write("" + event.getChannel() + "\n");
-	                writer.write("" + 0 + "\n");
-	                writer.write("" + ( (TrackEvent) event).getDuration() + "\n");
-	            }
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				contents.writeTo(channel);
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
 			}
-        } catch (IOException e) {
-        	System.out.println(" there was an IOexception");
-        	e.printStackTrace();
-        }
+			moved = true;
+			// Make the rename itself durable; not every platform can open a directory
+			try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+				directoryChannel.force(true);
+			} catch (IOException e) {
+			}
+		} finally {
+			if (!moved)
+				Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+     * Follows symbolic links to the file they point to, which may not exist yet.
+     * 
+     * Parameters:
+     * path - The absolute path to follow.
+     * 
+     * Returns:
+     * The path of the file that isn't a link.
+     * 
+     * Throws:
+     * IOException if a link can't be read or the links go around in a loop.
+     */
+	private static Path resolveLinks(Path path) throws IOException {
+		for (int links = 0; Files.isSymbolicLink(path); links++) {
+			if (links == MAX_SYMBOLIC_LINKS)
+				throw new IOException("Too many symbolic links: " + path);
+			path = path.resolveSibling(Files.readSymbolicLink(path));
+		}
+		return path;
+	}
+	
+	/**
+     * Creates an empty temporary file next to a file, with the permissions the file has.
+     * Files.createTempFile isn't used since it makes the file readable only by its owner.
+     * 
+     * Parameters:
+     * target - The file the temporary file will replace.
+     * 
+     * Returns:
+     * The temporary file.
+     * 
+     * Throws:
+     * IOException if the file can't be created.
+     */
+	private static Path createTempFile(Path target) throws IOException {
+		Path temp;
+		while (true) {
+			temp = target.resolveSibling("." + target.getFileName() + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				Files.createFile(temp);
+				break;
+			} catch (FileAlreadyExistsException e) {
+				// Try another name
+			}
+		}
+		try {
+			if (Files.exists(target) && Files.getFileAttributeView(target, PosixFileAttributeView.class) != null)
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		return temp;
 	}
 	
 	/**
      * Reads song data from the specified file and populates the given tracks and song panel. 
-     * Returns the tempo of the song.
+     * Returns the tempo of the song. Binary files are recognized by their first bytes;
+     * anything else is read as the text format.
      * 
      * Parameters:
      * file - The file to read the song data from.
@@ -120,102 +361,304 @@ public class SongFiles {
      * height - The height of the track panels.
      * 
      * Returns:
-     * The tempo of the song as an integer.
+     * The tempo of the song as an integer, or -1 if the file couldn't be read.
      */
-	public static int readFile(File file, SimpleSynthesizer synthesizer, BetterDynamicArray<TrackPanel> tracks, SongPanel song, int width, int height) {
-		int tempo = -1;
-		//create the scanner for the file.
+	public static int readFile(File file, SynthesizerBackend synthesizer, BetterDynamicArray<TrackPanel> tracks, SongPanel song, int width, int height) {
 		try {
-			Scanner fileScanner = new Scanner(file);
-			//clear the previous file that the application could have been reading.
-			tracks.clear();
-			song.clear();
-			
+			return load(file, synthesizer, tracks, song, width, height, ProgressListener.NONE);
+		} catch(IllegalArgumentException e) {
+			System.out.println("Illegal argument");
+			e.printStackTrace();
+		} catch(InputMismatchException e) {
+			System.out.println("Input Mismatch");
+			e.printStackTrace();
+		} catch(FileNotFoundException | NoSuchFileException e) {
+			System.out.println("File not found");
+			e.printStackTrace();
+		} catch (IOException e) {
+			System.out.println("IOException");
+			e.printStackTrace();
+		} catch (NoSuchElementException e) {
+			System.out.println("No Such Elelment");
+			e.printStackTrace();
+		}
+		return -1;
+	}
+	
+	/**
+     * Reads song data from the specified file and populates the given tracks and song panel,
+     * like readFile. Can be called on any thread: the file is read on the calling thread and
+     * the panels are changed on the event dispatch thread. If the load is cancelled, the
+     * panels are left as they were. Standard MIDI Files are imported (see MidiFiles).
+     * 
+     * Parameters:
+     * file - The file to read the song data from.
+     * synthesizer - The synthesizer used to create audio events.
+     * tracks - A dynamic array to store the loaded track panels.
+     * song - The song panel to store additional song information.
+     * width - The width of the track panels.
+     * height - The height of the track panels.
+     * listener - Told how many bytes and events are read, and checked for cancellation.
+     * 
+     * Returns:
+     * The tempo of the song as an integer.
+     * 
+     * Throws:
+     * IOException if the file can't be read, or InterruptedIOException if the load was cancelled.
+     * InputMismatchException or NoSuchElementException if a text file is damaged.
+     */
+	public static int load(File file, SynthesizerBackend synthesizer, BetterDynamicArray<TrackPanel> tracks, SongPanel song,
+			int width, int height, ProgressListener listener) throws IOException {
+		SongSnapshot contents = read(file, synthesizer, listener);
+		attach(listener, () -> attach(contents, synthesizer, tracks, song, width, height));
+		return contents.tempo;
+	}
+	
+	/**
+     * Reads a song file without changing any panels, in whichever format it is in.
+     * Can be called on any thread.
+     * 
+     * Parameters:
+     * file - The file to read the song data from.
+     * synthesizer - The synthesizer used to create audio events.
+     * listener - Told how many bytes and events are read, and checked for cancellation.
+     * 
+     * Returns:
+     * The song, with track events that have no sequencer until it is attached.
+     * 
+     * Throws:
+     * IOException if the file can't be read, or InterruptedIOException if the load was cancelled.
+     * InputMismatchException or NoSuchElementException if a text file is damaged.
+     */
+	public static SongSnapshot read(File file, SynthesizerBackend synthesizer, ProgressListener listener) throws IOException {
+		if (SongBinaryFormat.isBinary(file))
+			return SongBinaryFormat.read(file, synthesizer, listener);
+		if (SongArchiveFormat.isArchive(file))
+			return SongArchiveFormat.read(file, synthesizer, listener);
+		if (MidiFiles.isMidi(file))
+			return MidiFiles.read(file, synthesizer, listener);
+		
+		//create the tokenizer for the file.
+		try (SongTokenizer fileScanner = new SongTokenizer(file)) {
 			//initialize and set tempo and trackSize to their value in the file read.
-			tempo = fileScanner.nextInt();
-			
+			int tempo = fileScanner.nextInt();
 			int trackSize = fileScanner.nextInt();
+			if (trackSize < 0)
+				throw new InputMismatchException("Negative track count");
+			
+			SongSnapshot.Track[] tracks = new SongSnapshot.Track[trackSize];
+			long eventsRead = 0;
 			
 			//loop through and read all of the file
 			for (int i = 0; i < trackSize; i++) { 
-				String trackName = fileScanner.next();
+				fileScanner.next();
 				int trackNum = fileScanner.nextInt();
 				int instrument = fileScanner.nextInt();
 				int volume = fileScanner.nextInt();
 				int trackBeatLength = fileScanner.nextInt();
 				int audioEventNum = fileScanner.nextInt();
 				
-				//create trackPanel
-				TrackPanel trackPanel = new TrackPanel (width, height, trackNum, synthesizer);
-				trackPanel.setVolume(volume);
-				trackPanel.setLength(trackBeatLength);
-				
-				//nested loop through the AudioEvents
+				//nested loop through the AudioEvents, collected so the track is sorted once
+				BetterDynamicArray<AudioEvent> events = new BetterDynamicArray<>();
 				for (int j = 0; j < audioEventNum; j++) {
-		
-					String eventType = fileScanner.next();
-					String name = fileScanner.next();
-					int time = fileScanner.nextInt();
-					int channel = fileScanner.nextInt();
-					int valueOrPitch = fileScanner.nextInt();
-					int duration = fileScanner.nextInt();
-					
-					// value for ChangeEvents, pitch for NoteEvents
-					if (eventType == "change") 
-						trackPanel.getSequencer().add(new ChangeEvent(time, name, channel, valueOrPitch, synthesizer));
-					 else if (eventType == "note") 		
-						trackPanel.getSequencer().add(new NoteEvent(time, name, channel, duration, valueOrPitch, synthesizer));
+					AudioEvent event = readEvent(fileScanner, synthesizer);
+					if (!(event instanceof TrackEvent))
+						events.add(event);
+					if (++eventsRead % PROGRESS_INTERVAL == 0) {
+						listener.progress(fileScanner.getPosition(), eventsRead);
+						listener.checkCancelled();
+					}
 				}
-				
-				tracks.add(trackPanel);
+				tracks[i] = new SongSnapshot.Track(trackNum, instrument, volume, trackBeatLength, events);
 			}
 			
-			String song1 = fileScanner.next();
+			fileScanner.next();
 			int length = fileScanner.nextInt();
-			song.setLength(length);
 			int audioEventNum = fileScanner.nextInt();
 			
 			//nested loop through the AudioEvents
+			AudioEvent[] songEvents = new AudioEvent[audioEventNum];
 			for (int i = 0; i < audioEventNum; i++) {
+				songEvents[i] = readEvent(fileScanner, synthesizer);
+			}
+			listener.progress(fileScanner.getPosition(), eventsRead + audioEventNum);
+			return new SongSnapshot(0, tempo, length, songEvents, tracks);
+		}
+	}
 	
-				String eventType = fileScanner.next();
-				String name = fileScanner.next();
-				int time = fileScanner.nextInt();
-				int channel = fileScanner.nextInt();
-				int valueOrPitch = fileScanner.nextInt();
-				int duration = fileScanner.nextInt();
-				
-				// value for ChangeEvents, pitch for NoteEvents
-				if (eventType.equals("change"))
-					song.getSequencer().add(new ChangeEvent(time, name, channel, valueOrPitch, new SimpleSynthesizer()));
-				if (eventType.equals("note"))	
-					song.getSequencer().add(new NoteEvent(time, name, channel, duration, valueOrPitch, new SimpleSynthesizer()));
-				 else
-					 song.getSequencer().add(new TrackEvent(time, name, channel, duration, tracks.get(channel).getSequencer()));
+	/**
+     * Replaces the given tracks and song panel with a song that was read from a file.
+     * Must be called on the event dispatch thread.
+     * 
+     * Parameters:
+     * contents - The song, as returned by read.
+     * synthesizer - The synthesizer used by the new track panels.
+     * tracks - Cleared and filled with new track panels.
+     * song - The song panel to store the arrangement.
+     * width - The width of the track panels.
+     * height - The height of the track panels.
+     * 
+     * Throws:
+     * InputMismatchException if a track event refers to a missing track.
+     */
+	static void attach(SongSnapshot contents, SynthesizerBackend synthesizer, BetterDynamicArray<TrackPanel> tracks, SongPanel song,
+			int width, int height) {
+		//clear the previous file that the application could have been reading.
+		tracks.clear();
+		song.clear();
+		for (SongSnapshot.Track track : contents.tracks)
+			tracks.add(createTrackPanel(track, synthesizer, width, height));
+		song.setLength(contents.songLength);
+		song.setEvents(bindTrackEvents(contents.songEvents, tracks));
+	}
+	
+	/**
+     * Creates a track panel for a track that was read from a file. Tracks whose events
+     * are deferred keep them on disk until the track is opened or played.
+     * 
+     * Parameters:
+     * track - The track.
+     * synthesizer - The synthesizer used by the panel.
+     * width - The width of the panel.
+     * height - The height of the panel.
+     * 
+     * Returns:
+     * The new track panel.
+     */
+	static TrackPanel createTrackPanel(SongSnapshot.Track track, SynthesizerBackend synthesizer, int width, int height) {
+		TrackPanel trackPanel = new TrackPanel(width, height, track.trackNumber, synthesizer);
+		trackPanel.setInstrument(track.instrument);
+		trackPanel.setVolume(track.volume);
+		trackPanel.setLength(track.length);
+		if (track.deferred) {
+			trackPanel.setPendingEvents(track.events, track.eventCount);
+		} else {
+			try {
+				trackPanel.setEvents(track.events.load());
+			} catch (IOException e) {
+				// Events that aren't deferred have already been read
+				throw new UncheckedIOException(e);
 			}
-			
-			//returns the tempo
-			fileScanner.close();
-			
-			
-		} catch(IllegalStateException e) {
-			System.out.println("Illegal state");
-			e.printStackTrace();
-		} catch(InputMismatchException e) {
-			System.out.println("Input Mismatch");
-			e.printStackTrace();
-		} catch(FileNotFoundException e) {
-			System.out.println("File not found");
-			e.printStackTrace();
-		} catch (@SuppressWarnings("hiding") IOException e) {
-			System.out.println("IOException");
-			e.printStackTrace();
-		} catch (NoSuchElementException e) {
-			System.out.println("No Such Elelment");
-			e.printStackTrace();
 		}
-		return tempo;
-	}		
+		return trackPanel;
+	}
 	
+	/**
+     * Gives the track events of an arrangement their tracks, which only exist once
+     * the song is attached.
+     * 
+     * Parameters:
+     * songEvents - The arrangement, as read from a file.
+     * tracks - The song's track panels.
+     * 
+     * Returns:
+     * The arrangement, with every track event playing its track's sequencer.
+     * 
+     * Throws:
+     * InputMismatchException if a track event refers to a missing track.
+     */
+	static BetterDynamicArray<AudioEvent> bindTrackEvents(AudioEvent[] songEvents, BetterDynamicArray<TrackPanel> tracks) {
+		BetterDynamicArray<AudioEvent> events = new BetterDynamicArray<>();
+		for (AudioEvent songEvent : songEvents) {
+			if (songEvent instanceof TrackEvent event) {
+				if (event.getChannel() < 0 || event.getChannel() >= tracks.size())
+					throw new InputMismatchException("Track event for a missing track");
+				songEvent = new TrackEvent(event.getTime(), event.getName(), event.getChannel(),
+						event.getDuration(), tracks.get(event.getChannel()).getSequencer());
+			}
+			events.add(songEvent);
+		}
+		return events;
+	}
 	
-}
\ No newline at end of file
+	/**
+     * Copies a list of events into an array.
+     * 
+     * Parameters:
+     * events - The events.
+     * 
+     * Returns:
+     * The events, in the same order.
+     */
+	static AudioEvent[] toArray(BetterDynamicArray<AudioEvent> events) {
+		AudioEvent[] array = new AudioEvent[events.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = events.get(i);
+		return array;
+	}
+	
+	/**
+     * Runs the part of a load that changes the panels on the event dispatch thread,
+     * unless the load is cancelled first. Since cancelling also happens on the event
+     * dispatch thread, a load is either attached completely or not at all.
+     * 
+     * Parameters:
+     * listener - Checked for cancellation.
+     * update - Changes the panels.
+     * 
+     * Throws:
+     * InterruptedIOException if the load was cancelled, and anything update throws.
+     */
+	static void attach(ProgressListener listener, Runnable update) throws IOException {
+		boolean[] attached = {false};
+		Runnable attachUnlessCancelled = () -> {
+			if (!listener.isCancelled()) {
+				update.run();
+				attached[0] = true;
+			}
+		};
+		try {
+			if (SwingUtilities.isEventDispatchThread())
+				attachUnlessCancelled.run();
+			else
+				SwingUtilities.invokeAndWait(attachUnlessCancelled);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			if (e.getCause() instanceof Error error)
+				throw error;
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading the song");
+		}
+		if (!attached[0])
+			throw new InterruptedIOException("Cancelled");
+	}
+	
+	/**
+     * Reads one audio event in the text format. Change events are stored as
+     * their value, name, time and channel, and the others as their name, time,
+     * channel, pitch (or 0) and duration, each followed by one unused number
+     * where needed to make six values. Track events are read without a
+     * sequencer, since their track may not exist yet.
+     * 
+     * Parameters:
+     * fileScanner - The tokenizer positioned at the event.
+     * synthesizer - The synthesizer used by note and change events.
+     * 
+     * Returns:
+     * The event that was read.
+     */
+	private static AudioEvent readEvent(SongTokenizer fileScanner, SynthesizerBackend synthesizer) throws IOException {
+		String eventType = fileScanner.next();
+		if (eventType.equals("change")) {
+			int value = fileScanner.nextInt();
+			String name = fileScanner.next();
+			int time = fileScanner.nextInt();
+			int channel = fileScanner.nextInt();
+			fileScanner.nextInt();
+			return new ChangeEvent(time, name, channel, value, synthesizer);
+		}
+		String name = fileScanner.next();
+		int time = fileScanner.nextInt();
+		int channel = fileScanner.nextInt();
+		int pitch = fileScanner.nextInt();
+		int duration = fileScanner.nextInt();
+		if (eventType.equals("note"))
+			return new NoteEvent(time, name, channel, duration, pitch, synthesizer);
+		if (eventType.equals("track"))
+			return new TrackEvent(time, name, channel, duration, null);
+		throw new InputMismatchException("Unknown event " + eventType);
+	}
+}
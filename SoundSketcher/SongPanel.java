@@ -4,6 +4,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ChangeEvent;
 
@@ -21,8 +22,12 @@ public class SongPanel extends SketchingPanel implements ActionListener, ChangeL
 	private JPanel controlPanel;
 	private JToggleButton playStopButton, loopToggleButton;
 	private JSpinner lengthSpinner;
-	private JLabel lengthLabel;
+	private JLabel lengthLabel, masterEffectLabel;
+	private JComboBox<String> masterEffectBox;
+	private EffectChain masterEffects;
+	private SoftwareSynthesizer liveSynth;
 	private BetterDynamicArray<TrackPanel> trackList;
+	private EditJournal journal;
 	
 	/**
      * Constructs a new SongPanel with the specified width and height.
@@ -37,7 +42,7 @@ public class SongPanel extends SketchingPanel implements ActionListener, ChangeL
 		setLayout(new BorderLayout());
 		
 		songEditor = new SongEditor(width , height);
-		add(songEditor, BorderLayout.CENTER);
+		add(new JScrollPane(songEditor), BorderLayout.CENTER);
 		
 		controlPanel = new JPanel();
 		controlPanel.setLayout(new FlowLayout());
@@ -59,6 +64,67 @@ public class SongPanel extends SketchingPanel implements ActionListener, ChangeL
 		controlPanel.add(lengthLabel);
 		controlPanel.add(lengthSpinner);
 		
+		masterEffects = new EffectChain();
+		masterEffectLabel = new JLabel("Master effect: ");
+		controlPanel.add(masterEffectLabel);
+		
+		masterEffectBox = new JComboBox<>(EffectChain.PRESETS) {
+			@Override
+			public String getToolTipText(MouseEvent e) {
+				return getMasterEffectsToolTip();
+			}
+
+			private static final long serialVersionUID = 1L;
+		};
+		ToolTipManager.sharedInstance().registerComponent(masterEffectBox);
+		masterEffectBox.addActionListener(this);
+		controlPanel.add(masterEffectBox);
+	}
+	
+	/**
+	 * Gets the effects applied to the whole song.
+	 *
+	 * @return the master effect chain
+	 */
+	public EffectChain getMasterEffects() {
+		return masterEffects;
+	}
+	
+	/**
+	 * Describes how long the master effects take while the song plays live,
+	 * for the tool tip of the master effect box.
+	 *
+	 * @return the tool tip, or null if there are no master effects
+	 */
+	private String getMasterEffectsToolTip() {
+		if (masterEffects.isEmpty())
+			return null;
+		EffectChain playing = liveSynth == null ? null : liveSynth.getMasterEffects();
+		if (playing == null)
+			return "Master effects are only heard in exported audio";
+		return playing.getCpuToolTip("CPU time while playing:");
+	}
+
+	/**
+	 * Sets the software synthesizer that plays live, so the master effects
+	 * can be applied to its output. Other synthesizers have no master effects.
+	 *
+	 * @param synth - the live software synthesizer, or null if there is none
+	 */
+	public void setLiveSynthesizer(SoftwareSynthesizer synth) {
+		liveSynth = synth;
+		if (liveSynth != null)
+			liveSynth.setMasterEffects(masterEffects.copy());
+	}
+
+	/**
+	 * Sets the journal that edits of the song are recorded in.
+	 *
+	 * @param journal - the journal, or null to stop recording
+	 */
+	public void setJournal(EditJournal journal) {
+		this.journal = journal;
+		songEditor.setJournal(journal);
 	}
 
 	/**
@@ -83,6 +149,8 @@ public class SongPanel extends SketchingPanel implements ActionListener, ChangeL
 		if (e.getSource() == lengthSpinner) {
 			int length = (Integer) lengthSpinner.getValue();
 			setLength(length);
+			if (journal != null)
+				journal.record(EditJournal.SONG_LENGTH, 0, length, 0, 0);
 		}
 	}
 
@@ -106,6 +174,12 @@ public class SongPanel extends SketchingPanel implements ActionListener, ChangeL
 			}
 		}
 		
+		if (source == masterEffectBox) {
+			masterEffects = EffectChain.preset((String) masterEffectBox.getSelectedItem(), SoftwareSynthesizer.SAMPLE_RATE);
+			if (liveSynth != null)
+				liveSynth.setMasterEffects(masterEffects.copy());
+		}
+		
 		if (source == loopToggleButton) {
 			boolean isLooping = loopToggleButton.isSelected();
 			setLoop(isLooping);
@@ -0,0 +1,244 @@
+package assign11;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Reloads a song file that changed on disk into the panels already showing
+ * it, changing only what is different, so the rest of the song keeps playing
+ * undisturbed.
+ *
+ * The file is read and compared off the event dispatch thread. Each track is
+ * compared by a hash of its events that doesn't depend on their order, and
+ * the hashes of the tracks in the panels are kept until the tracks are edited,
+ * so an unchanged track costs nothing to compare after the first reload. Only
+ * the tracks whose events changed are given new events; a playing sequencer
+ * carries on from where it is (see SimpleSequencer.updateSequence).
+ *
+ * A reloader should only be used by one thread at a time.
+ *
+ * @version 2026-10-19
+ */
+public class SongReloader {
+	private final SynthesizerBackend synthesizer;
+	// Hash of each track's events, with the modification count of the sequencer it was computed at
+	private final Map<SimpleSequencer, long[]> trackHashes = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * The changes needed to make the panels match a song file.
+	 */
+	public class Plan {
+		private final SongSnapshot contents;
+		private final BetterDynamicArray<TrackPanel> tracks;
+		private final SongPanel song;
+		private final int width, height;
+		// The file's events for each track that changed, or null
+		private final BetterDynamicArray<AudioEvent>[] changedEvents;
+		private final long[] fileHashes;
+		private final boolean songChanged;
+		private int changeCount;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private Plan(SongSnapshot contents, BetterDynamicArray<TrackPanel> tracks, SongPanel song, int width, int height,
+				boolean songChanged) {
+			this.contents = contents;
+			this.tracks = tracks;
+			this.song = song;
+			this.width = width;
+			this.height = height;
+			this.songChanged = songChanged;
+			changedEvents = new BetterDynamicArray[contents.tracks.length];
+			fileHashes = new long[contents.tracks.length];
+		}
+
+		/**
+		 * Gets the tempo of the song file.
+		 *
+		 * @return the tempo
+		 */
+		public int getTempo() {
+			return contents.tempo;
+		}
+
+		/**
+		 * Gets the id of the save that wrote the song file.
+		 *
+		 * @return the save id, or 0 if the file has none
+		 */
+		public int getSaveId() {
+			return contents.saveId;
+		}
+
+		/**
+		 * Tells whether the file has a different number of tracks than the panels.
+		 *
+		 * @return true if tracks will be added or removed
+		 */
+		public boolean changesTrackCount() {
+			return tracks.size() != contents.tracks.length;
+		}
+
+		/**
+		 * Tells whether the panels already match the file, apart from the tempo.
+		 *
+		 * @return true if there is nothing to apply
+		 */
+		public boolean isEmpty() {
+			return changeCount == 0 && !changesTrackCount();
+		}
+
+		/**
+		 * Changes the panels to match the file: the events of changed tracks,
+		 * the settings and lengths that differ, tracks added or removed at the
+		 * end, and the arrangement. Must be called on the event dispatch thread.
+		 *
+		 * @throws java.util.InputMismatchException if a track event of the file refers to a missing track
+		 */
+		public void apply() {
+			boolean rebind = songChanged || changesTrackCount();
+			while(tracks.size() > contents.tracks.length) {
+				tracks.get(tracks.size() - 1).clear();
+				tracks.remove(tracks.size() - 1);
+			}
+			for(int i = 0; i < contents.tracks.length; i++) {
+				SongSnapshot.Track track = contents.tracks[i];
+				if(i == tracks.size()) {
+					tracks.add(SongFiles.createTrackPanel(track, synthesizer, width, height));
+				} else {
+					TrackPanel trackPanel = tracks.get(i);
+					if(changedEvents[i] != null)
+						trackPanel.setEvents(changedEvents[i]);
+					if(trackPanel.getInstrument() != track.instrument)
+						trackPanel.setInstrument(track.instrument);
+					if(trackPanel.getVolume() != track.volume)
+						trackPanel.setVolume(track.volume);
+					if(trackPanel.getLength() != track.length)
+						trackPanel.setLength(track.length);
+				}
+				// The track now has the file's events, so the next reload needn't hash them again
+				SimpleSequencer sequencer = tracks.get(i).getSequencer();
+				trackHashes.put(sequencer, new long[] {sequencer.getModificationCount(), fileHashes[i]});
+			}
+			if(song.getLength() != contents.songLength)
+				song.setLength(contents.songLength);
+			if(rebind)
+				song.setEvents(SongFiles.bindTrackEvents(contents.songEvents, tracks));
+		}
+	}
+
+	/**
+	 * Creates a reloader.
+	 *
+	 * @param synthesizer - used by reloaded events
+	 */
+	public SongReloader(SynthesizerBackend synthesizer) {
+		this.synthesizer = synthesizer;
+	}
+
+	/**
+	 * Reads a song file and works out how the panels must change to match it.
+	 * Must not be called on the event dispatch thread, where the panels are
+	 * looked at in between.
+	 *
+	 * @param file - the changed song file
+	 * @param tracks - the track panels showing the song
+	 * @param song - the song panel showing the song
+	 * @param width - of added track panels
+	 * @param height - of added track panels
+	 * @return the changes
+	 * @throws IOException if the file can't be read
+	 */
+	public Plan plan(File file, BetterDynamicArray<TrackPanel> tracks, SongPanel song, int width, int height) throws IOException {
+		SongSnapshot contents = SongFiles.read(file, synthesizer, ProgressListener.NONE);
+
+		// The events of every track as they are now; only the lists are copied
+		SimpleSequencer[] sequencers = new SimpleSequencer[contents.tracks.length];
+		int[] modificationCounts = new int[sequencers.length];
+		SongSnapshot[] current = new SongSnapshot[1];
+		SongFiles.attach(ProgressListener.NONE, () -> {
+			current[0] = new SongSnapshot(0, tracks, song);
+			for(int i = 0; i < sequencers.length && i < tracks.size(); i++) {
+				sequencers[i] = tracks.get(i).getSequencer();
+				modificationCounts[i] = sequencers[i].getModificationCount();
+			}
+		});
+
+		Plan plan = new Plan(contents, tracks, song, width, height,
+				hash(Arrays.asList(contents.songEvents)) != hash(Arrays.asList(current[0].songEvents)));
+		if(plan.songChanged || current[0].songLength != contents.songLength)
+			plan.changeCount++;
+		for(int i = 0; i < contents.tracks.length; i++) {
+			SongSnapshot.Track track = contents.tracks[i];
+			BetterDynamicArray<AudioEvent> events = track.events.load();
+			plan.fileHashes[i] = hash(events);
+			if(i >= current[0].tracks.length)
+				continue;
+			SongSnapshot.Track shown = current[0].tracks[i];
+			if(plan.fileHashes[i] != hashOf(sequencers[i], modificationCounts[i], shown)) {
+				plan.changedEvents[i] = events;
+				plan.changeCount++;
+			} else if(track.instrument != shown.instrument || track.volume != shown.volume || track.length != shown.length) {
+				plan.changeCount++;
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Gets the hash of a shown track's events, computing it only if the
+	 * track was edited since it was last computed.
+	 */
+	private long hashOf(SimpleSequencer sequencer, int modificationCount, SongSnapshot.Track track) throws IOException {
+		long[] known = trackHashes.get(sequencer);
+		if(known != null && known[0] == modificationCount)
+			return known[1];
+		long hash = hash(track.events.load());
+		trackHashes.put(sequencer, new long[] {modificationCount, hash});
+		return hash;
+	}
+
+	/**
+	 * Hashes events so that the same events in any order have the same hash.
+	 *
+	 * @param events - to hash
+	 * @return the hash
+	 */
+	static long hash(Iterable<AudioEvent> events) {
+		long hash = 0;
+		long count = 0;
+		for(AudioEvent event : events) {
+			hash += hash(event);
+			count++;
+		}
+		return hash + mix(count);
+	}
+
+	/**
+	 * Hashes everything about an event that is saved in a song file.
+	 */
+	private static long hash(AudioEvent event) {
+		long hash = event.getName().hashCode();
+		hash = mix(hash * 31 + event.getTime());
+		hash = mix(hash * 31 + event.getChannel());
+		if(event instanceof NoteEvent note) {
+			hash = mix(hash * 31 + note.getPitch());
+			hash = mix(hash * 31 + note.getDuration());
+		} else if(event instanceof ChangeEvent change) {
+			hash = mix(hash * 31 + change.getValue() + 1000003);
+		} else if(event instanceof TrackEvent track) {
+			hash = mix(hash * 31 + track.getDuration() + 2000003);
+		}
+		return hash;
+	}
+
+	// The finalizer of SplitMix64, so the sum of many hashes doesn't cancel out
+	private static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+}
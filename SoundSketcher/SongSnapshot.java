@@ -0,0 +1,131 @@
+package assign11;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A copy of everything that is saved in a song file, taken at one moment so
+ * the song can be written in the background while it is still being edited.
+ * Taking a snapshot copies the lists of events but not the events themselves,
+ * which are never changed once created. Each snapshot has a random id that is
+ * saved with it, so an edit journal can tell which save a file came from.
+ *
+ * Song files are also read into a snapshot before they are given to the
+ * panels (see SongFiles.read). The track events of a song read from a file
+ * have no sequencer until the song is attached to track panels.
+ *
+ * @version 2026-10-19
+ */
+public class SongSnapshot {
+	public final int saveId;
+	public final int tempo;
+	public final int songLength;
+	public final AudioEvent[] songEvents;
+	public final Track[] tracks;
+
+	/**
+	 * The settings and events of one track.
+	 */
+	public static class Track {
+		public final int trackNumber;
+		public final int instrument;
+		public final int volume;
+		public final int length;
+		public final int eventCount;
+		// True if the events are still on disk and should stay there until needed
+		public final boolean deferred;
+		public final SimpleSequencer.EventLoader events;
+
+		private Track(TrackPanel panel, int trackNumber) {
+			SimpleSequencer sequencer = panel.getSequencer();
+			this.trackNumber = trackNumber;
+			instrument = panel.getInstrument();
+			volume = panel.getVolume();
+			length = panel.getLength();
+			eventCount = sequencer.getEventCount();
+			deferred = !sequencer.isLoaded();
+			events = sequencer.snapshot();
+		}
+
+		/**
+		 * Creates a track read from a file.
+		 *
+		 * @param trackNumber - of the track
+		 * @param instrument - of the track
+		 * @param volume - of the track
+		 * @param length - of the track in beats
+		 * @param events - the track's events, already read
+		 */
+		public Track(int trackNumber, int instrument, int volume, int length, BetterDynamicArray<AudioEvent> events) {
+			this(trackNumber, instrument, volume, length, events.size(), false, () -> events);
+		}
+
+		/**
+		 * Creates a track read from a file.
+		 *
+		 * @param trackNumber - of the track
+		 * @param instrument - of the track
+		 * @param volume - of the track
+		 * @param length - of the track in beats
+		 * @param eventCount - the number of events the loader will return
+		 * @param deferred - true to leave the events on disk until the track is opened or played
+		 * @param events - loads the track's events
+		 */
+		public Track(int trackNumber, int instrument, int volume, int length, int eventCount, boolean deferred,
+				SimpleSequencer.EventLoader events) {
+			this.trackNumber = trackNumber;
+			this.instrument = instrument;
+			this.volume = volume;
+			this.length = length;
+			this.eventCount = eventCount;
+			this.deferred = deferred;
+			this.events = events;
+		}
+	}
+
+	/**
+	 * Takes a snapshot of a song. This must be called on the event
+	 * dispatch thread, where the song is edited.
+	 *
+	 * @param tempo - of the song
+	 * @param trackPanels - all track panels of the song
+	 * @param songPanel - the song panel with the arrangement
+	 */
+	public SongSnapshot(int tempo, BetterDynamicArray<TrackPanel> trackPanels, SongPanel songPanel) {
+		saveId = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+		this.tempo = tempo;
+		songLength = songPanel.getLength();
+		songEvents = songPanel.getSequencer().toArray();
+		tracks = new Track[trackPanels.size()];
+		for(int i = 0; i < tracks.length; i++)
+			tracks[i] = new Track(trackPanels.get(i), i);
+	}
+
+	/**
+	 * Creates a snapshot of a song read from a file.
+	 *
+	 * @param saveId - of the save that wrote the file, or 0 if it has none
+	 * @param tempo - of the song
+	 * @param songLength - of the song in beats
+	 * @param songEvents - the arrangement, with track events that have no sequencer yet
+	 * @param tracks - the song's tracks
+	 */
+	public SongSnapshot(int saveId, int tempo, int songLength, AudioEvent[] songEvents, Track[] tracks) {
+		this.saveId = saveId;
+		this.tempo = tempo;
+		this.songLength = songLength;
+		this.songEvents = songEvents;
+		this.tracks = tracks;
+	}
+
+	/**
+	 * Gets the number of events in the song and all its tracks.
+	 *
+	 * @return number of events
+	 */
+	public long getEventCount() {
+		long count = songEvents.length;
+		for(Track track : tracks)
+			count += track.eventCount;
+		return count;
+	}
+}
@@ -0,0 +1,202 @@
+package assign11;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits a text song file into whitespace separated tokens.
+ *
+ * The file is read in large blocks through a FileChannel and scanned byte by
+ * byte. Numbers are parsed straight from the bytes, and words are matched
+ * against the words already seen, so reading a file creates a String only
+ * the first time each different word appears. It throws the same exceptions
+ * as java.util.Scanner when the input doesn't match.
+ *
+ * @version 2026-10-19
+ */
+public class SongTokenizer implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_WORDS = 256;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+	private int position, limit;
+	private long bufferStart;
+	private boolean endOfFile;
+
+	// Words seen so far, with their bytes for matching
+	private final String[] words;
+	private final byte[][] wordBytes;
+	private int wordCount;
+	private byte[] token;
+	private int tokenLength;
+
+	/**
+	 * Opens a file for reading.
+	 *
+	 * @param file - to read
+	 * @throws IOException if the file can't be opened
+	 */
+	public SongTokenizer(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		bytes = buffer.array();
+		words = new String[MAX_WORDS];
+		wordBytes = new byte[MAX_WORDS][];
+		token = new byte[64];
+	}
+
+	/**
+	 * Reads the next token as an int.
+	 *
+	 * @return the number
+	 * @throws InputMismatchException if the token is not an int
+	 * @throws NoSuchElementException if there are no more tokens
+	 * @throws IOException if the file can't be read
+	 */
+	public int nextInt() throws IOException {
+		if(!skipWhitespace())
+			throw new NoSuchElementException();
+		boolean negative = false;
+		if(bytes[position] == '-' || bytes[position] == '+') {
+			negative = bytes[position] == '-';
+			position++;
+		}
+		long value = 0;
+		int digits = 0;
+		while(position < limit || fill()) {
+			int b = bytes[position];
+			if(b < '0' || b > '9')
+				break;
+			value = value * 10 + (b - '0');
+			if(value > 1L + Integer.MAX_VALUE)
+				throw new InputMismatchException("Number out of range");
+			digits++;
+			position++;
+		}
+		if(digits == 0 || (position < limit && !isWhitespace(bytes[position])))
+			throw new InputMismatchException("Expected a number");
+		if(negative)
+			value = -value;
+		if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+			throw new InputMismatchException("Number out of range");
+		return (int) value;
+	}
+
+	/**
+	 * Reads the next token as a word. The same String is returned every
+	 * time the same word appears, so words can be compared with ==.
+	 *
+	 * @return the word
+	 * @throws NoSuchElementException if there are no more tokens
+	 * @throws IOException if the file can't be read
+	 */
+	public String next() throws IOException {
+		if(!skipWhitespace())
+			throw new NoSuchElementException();
+		tokenLength = 0;
+		while(position < limit || fill()) {
+			byte b = bytes[position];
+			if(isWhitespace(b))
+				break;
+			if(tokenLength == token.length)
+				token = Arrays.copyOf(token, tokenLength * 2);
+			token[tokenLength++] = b;
+			position++;
+		}
+		return intern();
+	}
+
+	/**
+	 * Gets how far into the file the tokenizer has read.
+	 *
+	 * @return number of bytes before the next token
+	 */
+	public long getPosition() {
+		return bufferStart + position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Finds the current token among the words seen so far, or adds it.
+	 *
+	 * @return the word
+	 */
+	private String intern() {
+		search:
+		for(int w = 0; w < wordCount; w++) {
+			byte[] word = wordBytes[w];
+			if(word.length != tokenLength)
+				continue;
+			for(int i = 0; i < tokenLength; i++)
+				if(word[i] != token[i])
+					continue search;
+			return words[w];
+		}
+		String word = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+		// Files with many different words still work, they just aren't all remembered
+		if(wordCount < MAX_WORDS) {
+			words[wordCount] = word;
+			wordBytes[wordCount] = Arrays.copyOf(token, tokenLength);
+			wordCount++;
+		}
+		return word;
+	}
+
+	/**
+	 * Moves past whitespace to the start of the next token.
+	 *
+	 * @return false if the end of the file was reached first
+	 * @throws IOException if the file can't be read
+	 */
+	private boolean skipWhitespace() throws IOException {
+		while(position < limit || fill()) {
+			if(!isWhitespace(bytes[position]))
+				return true;
+			position++;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next block of the file into the buffer.
+	 *
+	 * @return false if there is nothing more to read
+	 * @throws IOException if the file can't be read
+	 */
+	private boolean fill() throws IOException {
+		if(endOfFile)
+			return false;
+		bufferStart += limit;
+		buffer.clear();
+		int read;
+		do {
+			read = channel.read(buffer);
+		} while(read == 0);
+		if(read < 0) {
+			endOfFile = true;
+			position = limit = 0;
+			return false;
+		}
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+	}
+}
@@ -13,6 +13,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The SoundSketcherFrame class represents the main graphical user interface 
@@ -22,8 +26,10 @@ import java.io.IOException;
 public class SoundSketcherFrame extends JFrame implements ActionListener, ChangeListener {
 	
 	private final int maxTracks = 16;
+	public static final int DEFAULT_AUTOSAVE_SECONDS = 5;
 	private boolean addingTrack;
 	private SongPanel songPanel;
+	private MeterPanel meterPanel;
 	private BetterDynamicArray<TrackPanel> trackPanels;
 	private JTabbedPane tracksPane;
 	private JToggleButton playButton, loopButton;
@@ -31,8 +37,18 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 	private JLabel tempoLabel;
 	private JMenuItem loadMenuItem;
     private JMenuItem saveMenuItem;
+    private JMenuItem exportMenuItem;
+    private JMenuItem exportMidiMenuItem;
+    private RenderCache renderCache;
+    private EditJournal journal;
+    private Timer autosaveTimer;
+    private SongFileWatcher watcher;
+    private SongReloader reloader;
+    // Ids of the saves written by this frame, whose changes to the watched file aren't reloaded
+    private final Set<Integer> savedIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean fileTaskRunning;
 	private int panelWidth, panelHeight;
-	private SimpleSynthesizer simpleSynth;
+	private SynthesizerBackend simpleSynth;
 	
 	/**
      * Creates a control panel with playback controls, loop toggles, and a tempo slider.
@@ -67,6 +83,13 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 	
 	/**
      * Constructs a new SoundSketcherFrame with specified dimensions.
+     * The synthesizer backend is chosen with the soundsketcher.synth system
+     * property (see SynthesizerBackend.create) and is limited to the number of
+     * voices in the soundsketcher.voices property. The meters refresh at most
+     * soundsketcher.meterFps times per second, and the playheads move at most
+     * soundsketcher.playheadFps times per second. Once the song has a file, edits
+     * are autosaved to its journal every soundsketcher.autosave seconds, and
+     * changes other programs make to the file are reloaded.
      *
      * @param width  the width of the frame
      * @param height the height of the frame
@@ -76,16 +99,27 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 		this.panelWidth = width;
 		this.panelHeight = height;
 		
-		this.simpleSynth = new SimpleSynthesizer();
+		this.simpleSynth = new VoiceManager(SynthesizerBackend.create(System.getProperty("soundsketcher.synth")),
+				Integer.getInteger("soundsketcher.voices", VoiceManager.DEFAULT_VOICE_LIMIT));
 		
+		renderCache = new RenderCache();
+		reloader = new SongReloader(simpleSynth);
 		trackPanels = new BetterDynamicArray<>();
 		songPanel = new SongPanel(panelWidth, panelHeight);
 		songPanel.setTempo(120);
+		songPanel.setLiveSynthesizer(findSoftwareSynthesizer(simpleSynth));
 		
 		TrackPanel initialTrack = new TrackPanel(panelWidth, panelHeight, 0, simpleSynth);
 		trackPanels.add(initialTrack);
 		songPanel.setTrackList(trackPanels);
 		
+		PlayheadTicker.setFrameRate(Integer.getInteger("soundsketcher.playheadFps", PlayheadTicker.DEFAULT_FRAME_RATE));
+		
+		meterPanel = new MeterPanel(panelWidth, 80,
+				Integer.getInteger("soundsketcher.meterFps", MeterPanel.DEFAULT_REFRESH_RATE));
+		meterPanel.setLiveSynthesizer(findSoftwareSynthesizer(simpleSynth));
+		meterPanel.setTrackList(trackPanels);
+		
 		JPanel controlPanel = createControlPanel();
 		
 		tracksPane = new JTabbedPane();
@@ -100,6 +134,7 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 		JPanel mainPanel = new JPanel(new BorderLayout());
 		mainPanel.add(controlPanel, BorderLayout.NORTH);
 		mainPanel.add(tracksPane, BorderLayout.CENTER);
+		mainPanel.add(meterPanel, BorderLayout.SOUTH);
 		
 	    JMenuBar menuBar = new JMenuBar();
 	    JMenu fileMenu = new JMenu("File");
@@ -112,10 +147,28 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
         saveMenuItem.addActionListener(this); 
         fileMenu.add(saveMenuItem); 
 
+        exportMenuItem = new JMenuItem("Export Audio");
+        exportMenuItem.addActionListener(this); 
+        fileMenu.add(exportMenuItem); 
+
+        exportMidiMenuItem = new JMenuItem("Export MIDI");
+        exportMidiMenuItem.addActionListener(this); 
+        fileMenu.add(exportMidiMenuItem); 
+
         menuBar.add(fileMenu);
 
         setJMenuBar(menuBar);
 		
+		autosaveTimer = new Timer(1000 * Integer.getInteger("soundsketcher.autosave", DEFAULT_AUTOSAVE_SECONDS), e -> autosave());
+		autosaveTimer.start();
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				watch(null);
+				setJournal(null);
+			}
+		});
+		
 		setContentPane(mainPanel);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setSize(panelWidth, panelHeight + 100);
@@ -125,6 +178,22 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 		pack();
 	}
 	
+	/**
+	 * Finds the software synthesizer behind a backend, if it uses one.
+	 *
+	 * @param backend - the frame's synthesizer backend
+	 * @return the software synthesizer, or null if the backend doesn't use one
+	 */
+	private static SoftwareSynthesizer findSoftwareSynthesizer(SynthesizerBackend backend) {
+		if (backend instanceof VoiceManager voiceManager)
+			backend = voiceManager.getBackend();
+		if (backend instanceof SoftwareSynthesizer software)
+			return software;
+		if (backend instanceof SimpleSynthesizer simple)
+			return simple.getFallback();
+		return null;
+	}
+	
 	/**
 	 * Adds a new track panel to the next tab if possible.
 	 * This is only possible if the number of tracks is less than the maximum.
@@ -133,10 +202,13 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 	public void addTrack() {
 	    addingTrack = true;
 	    if(trackPanels.size() < maxTracks) {
-	        TrackPanel newTrack = new TrackPanel(panelWidth, panelHeight, trackPanels.size(), new SimpleSynthesizer());
+	        TrackPanel newTrack = new TrackPanel(panelWidth, panelHeight, trackPanels.size(), simpleSynth);
 	        newTrack.setTempo(tempoSlider.getValue());
 	        newTrack.setLoop(loopButton.isSelected());
+	        newTrack.setJournal(journal);
 	        trackPanels.add(newTrack);
+	        if (journal != null)
+	        	journal.record(EditJournal.TRACK_ADDED, trackPanels.size() - 1, 0, 0, 0);
 	        tracksPane.insertTab("Track " + (trackPanels.size() - 1), null, 
 	                            trackPanels.get(trackPanels.size() - 1), null,
 	                            tracksPane.getTabCount() - 1);
@@ -172,6 +244,8 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 			}
 		} else if (e.getSource() == saveMenuItem) {
 	        JFileChooser fileChooser = new JFileChooser();
+	        FileNameExtensionFilter archiveFilter = new FileNameExtensionFilter("Song archives (compressed)", SongArchiveFormat.EXTENSION);
+	        fileChooser.addChoosableFileFilter(archiveFilter);
 	        fileChooser.setFileFilter(new FileNameExtensionFilter("SongFiles", "song"));
 	        fileChooser.setDialogTitle("Select save location");
 	        if (fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
@@ -179,20 +253,348 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 	        	return;
 	        }
 	        
-	        SongFiles.writeFile(fileChooser.getSelectedFile(), tempoSlider.getValue(), trackPanels, songPanel);
+	        // The snapshot is written in the background while editing goes on
+	        SongSnapshot snapshot = new SongSnapshot(tempoSlider.getValue(), trackPanels, songPanel);
+	        File chosenFile = fileChooser.getSelectedFile();
+	        // Songs are saved as archives by their extension
+	        if (fileChooser.getFileFilter() == archiveFilter && !SongArchiveFormat.hasExtension(chosenFile))
+	        	chosenFile = new File(chosenFile.getPath() + "." + SongArchiveFormat.EXTENSION);
+	        File saveFile = chosenFile;
+	        // Edits from now on are journaled against this save
+	        if (journal != null && journal.getSongFile().equals(saveFile)) {
+	        	journal.beginSave(snapshot);
+	        } else {
+	        	try {
+	        		setJournal(new EditJournal(saveFile, snapshot.saveId));
+	        	} catch (IOException ex) {
+	        		System.out.println("Couldn't start the edit journal");
+	        		ex.printStackTrace();
+	        		setJournal(null);
+	        	}
+	        }
+	        EditJournal saveJournal = journal;
+	        savedIds.add(snapshot.saveId);
+	        new SongFileTask("Save", "Saving " + saveFile.getName(), snapshot.getEventCount(), true) {
+	        	@Override
+	        	protected Integer doInBackground() throws IOException {
+	        		if (saveJournal != null)
+	        			saveJournal.save(snapshot, listener);
+	        		else
+	        			SongFiles.save(saveFile, snapshot, listener);
+	        		return snapshot.tempo;
+	        	}
+	        	
+	        	@Override
+	        	protected void finished(Integer tempo) {
+	        		if (tempo != null && (watcher == null || !watcher.getFile().equals(saveFile)))
+	        			watch(saveFile);
+	        	}
+	        }.execute();
+	    } else if (e.getSource() == exportMenuItem) {
+	        JFileChooser fileChooser = new JFileChooser();
+	        FileNameExtensionFilter wavFilter = new FileNameExtensionFilter("WAV files", "wav");
+	        FileNameExtensionFilter flacFilter = new FileNameExtensionFilter("FLAC files (lossless, smaller)", "flac");
+	        fileChooser.addChoosableFileFilter(wavFilter);
+	        fileChooser.addChoosableFileFilter(flacFilter);
+	        fileChooser.setFileFilter(wavFilter);
+	        fileChooser.setDialogTitle("Select export location");
+	        if (fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION)
+	        	return;
+	        
+	        // Add the extension of the chosen format if the name has none
+	        File exportFile = fileChooser.getSelectedFile();
+	        String exportName = exportFile.getName().toLowerCase();
+	        if (!exportName.endsWith(".wav") && !exportName.endsWith(".flac"))
+	        	exportFile = new File(exportFile.getPath() + (fileChooser.getFileFilter() == flacFilter ? ".flac" : ".wav"));
+	        
+	        // The song is copied now, then rendered, mixed and written in the background
+	        SongExporter.Snapshot snapshot = SongExporter.snapshot(trackPanels, songPanel);
+	        int tempo = tempoSlider.getValue();
+	        File audioFile = exportFile;
+	        new SongFileTask("Export", "Exporting " + audioFile.getName(), snapshot.getWork(), false) {
+	        	@Override
+	        	protected Integer doInBackground() throws IOException {
+	        		SongExporter.export(audioFile, snapshot, renderCache, listener);
+	        		return tempo;
+	        	}
+	        	
+	        	@Override
+	        	protected void finished(Integer tempo) {
+	        	}
+	        }.execute();
+	    } else if (e.getSource() == exportMidiMenuItem) {
+	        JFileChooser fileChooser = new JFileChooser();
+	        fileChooser.setFileFilter(new FileNameExtensionFilter("MIDI files", "mid", "midi"));
+	        fileChooser.setDialogTitle("Select export location");
+	        if (fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION)
+	        	return;
+	        
+	        File exportFile = fileChooser.getSelectedFile();
+	        String exportName = exportFile.getName().toLowerCase();
+	        if (!exportName.endsWith(".mid") && !exportName.endsWith(".midi"))
+	        	exportFile = new File(exportFile.getPath() + ".mid");
+	        
+	        // Like a save, the snapshot is written in the background; the song's journal is unchanged
+	        SongSnapshot snapshot = new SongSnapshot(tempoSlider.getValue(), trackPanels, songPanel);
+	        File midiFile = exportFile;
+	        new SongFileTask("Export", "Exporting " + midiFile.getName(), snapshot.getEventCount(), true) {
+	        	@Override
+	        	protected Integer doInBackground() throws IOException {
+	        		MidiFiles.save(midiFile, snapshot, listener);
+	        		return snapshot.tempo;
+	        	}
+	        	
+	        	@Override
+	        	protected void finished(Integer tempo) {
+	        	}
+	        }.execute();
 	    } else if (e.getSource() == loadMenuItem) {
 	        JFileChooser fileChooser = new JFileChooser();
-	        fileChooser.showOpenDialog(null);
+	        fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Song archives", SongArchiveFormat.EXTENSION));
+	        fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("MIDI files", "mid", "midi"));
 	        fileChooser.setFileFilter(new FileNameExtensionFilter("Song files", "song"));
 	        fileChooser.setDialogTitle("Select file to load");
+	        if (fileChooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION)
+	        	return;
 	        
-	        setTempoSlider(SongFiles.readFile(fileChooser.getSelectedFile(), simpleSynth, trackPanels, songPanel, getWidth(), getHeight()));
-	        
-	        updateTabs();
-	        repaint();
+	        File loadFile = fileChooser.getSelectedFile();
+	        int width = getWidth(), height = getHeight();
+	        new SongFileTask("Load", "Loading " + loadFile.getName(), loadFile.length(), false) {
+	        	// Kept for its save id, so the file needn't be read again to find the journal
+	        	private SongSnapshot contents;
+	        	
+	        	@Override
+	        	protected Integer doInBackground() throws IOException {
+	        		contents = SongFiles.read(loadFile, simpleSynth, listener);
+	        		SongFiles.attach(listener, () -> SongFiles.attach(contents, simpleSynth, trackPanels, songPanel, width, height));
+	        		return contents.tempo;
+	        	}
+	        	
+	        	@Override
+	        	protected void finished(Integer tempo) {
+	        		if (tempo != null) {
+	        			// The old song's journal is kept until the new song has replaced it
+	        			setJournal(null);
+	        			setTempoSlider(tempo);
+	        			recover(loadFile, contents.saveId, width, height);
+	        			watch(loadFile);
+	        		}
+	        		// A failed load may have replaced some of the tracks
+	        		updateTabs();
+	        		repaint();
+	        	}
+	        }.execute();
 	    }
 	}
 	
+	/**
+	 * Replays the journaled edits of a song that was just loaded, made after
+	 * the song file was saved, and keeps journaling edits of the song.
+	 * Songs in the text format, or saved before save ids, have no journal
+	 * until they are saved again.
+	 * 
+	 * @param songFile - the file the song was loaded from
+	 * @param saveId - the id of the save that wrote the file, or 0 if it has none
+	 * @param width - of replayed track panels
+	 * @param height - of replayed track panels
+	 */
+	private void recover(File songFile, int saveId, int width, int height) {
+		if (saveId == 0)
+			return;
+		int tempo = EditJournal.replay(songFile, saveId, simpleSynth, trackPanels, songPanel, width, height);
+		if (tempo > 0)
+			setTempoSlider(tempo);
+		try {
+			setJournal(new EditJournal(songFile, saveId));
+		} catch (IOException e) {
+			System.out.println("Couldn't open the edit journal");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Replaces the journal that edits are recorded in, closing the old one.
+	 * 
+	 * @param newJournal - the journal, or null to stop journaling
+	 */
+	private void setJournal(EditJournal newJournal) {
+		if (journal != null && journal != newJournal) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		journal = newJournal;
+		songPanel.setJournal(newJournal);
+		for (int i = 0; i < trackPanels.size(); i++)
+			trackPanels.get(i).setJournal(newJournal);
+	}
+	
+	/**
+	 * Starts watching a song file, so that changes other programs make to it
+	 * are reloaded, and stops watching the one watched before.
+	 * 
+	 * @param songFile - the file the song was loaded from or saved to, or null to stop watching
+	 */
+	private void watch(File songFile) {
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			watcher = null;
+		}
+		if (songFile == null)
+			return;
+		try {
+			watcher = new SongFileWatcher(songFile, () -> reload(songFile));
+		} catch (IOException e) {
+			System.out.println("Couldn't watch " + songFile.getName() + " for changes");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Brings the song up to date with its file after another program changed
+	 * it. The file is read and compared on the watcher's thread, and only the
+	 * tracks that differ are changed, so playback goes on. Runs on the
+	 * watcher's thread.
+	 * 
+	 * @param songFile - the watched file
+	 */
+	private void reload(File songFile) {
+		if (savedIds.contains(SongFiles.readSaveId(songFile)))
+			return;
+		try {
+			SongReloader.Plan plan = reloader.plan(songFile, trackPanels, songPanel, panelWidth, panelHeight);
+			SongFiles.attach(ProgressListener.NONE, () -> {
+				// A load or save started meanwhile, or another file is open now
+				if (fileTaskRunning || watcher == null || !watcher.getFile().equals(songFile))
+					return;
+				if (plan.isEmpty() && plan.getTempo() == tempoSlider.getValue())
+					return;
+				boolean tracksChanged = plan.changesTrackCount();
+				plan.apply();
+				for (int i = 0; i < trackPanels.size(); i++) {
+					trackPanels.get(i).setTempo(tempoSlider.getValue());
+					trackPanels.get(i).setLoop(loopButton.isSelected());
+				}
+				setTempoSlider(plan.getTempo());
+				// The song matches the file again, so journaling starts over from it
+				setJournal(null);
+				recover(songFile, plan.getSaveId(), panelWidth, panelHeight);
+				if (tracksChanged)
+					updateTabs();
+				repaint();
+			});
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Couldn't reload " + songFile.getName());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Writes the edits made since the last autosave to the journal, and
+	 * saves the whole song if the journal has grown long.
+	 */
+	private void autosave() {
+		if (journal == null)
+			return;
+		if (journal.needsCompaction()) {
+			SongSnapshot snapshot = new SongSnapshot(tempoSlider.getValue(), trackPanels, songPanel);
+			savedIds.add(snapshot.saveId);
+			journal.compact(snapshot);
+		} else
+			journal.autosave();
+	}
+	
+	/**
+	 * Loads, saves or exports a song file on a background thread while a
+	 * progress monitor shows how far along it is. Cancelling the monitor
+	 * stops the task at its next progress report. Loading, saving and
+	 * exporting are turned off in the menu until the task is done.
+	 */
+	private abstract class SongFileTask extends SwingWorker<Integer, Void> {
+		private final String action;
+		private final long total;
+		private final boolean countEvents;
+		private final ProgressMonitor monitor;
+		private volatile boolean cancelRequested;
+		
+		// Reports progress to the monitor; the song file methods check it for cancellation
+		protected final ProgressListener listener = new ProgressListener() {
+			@Override
+			public void progress(long bytes, long events) {
+				long done = countEvents ? events : bytes;
+				setProgress((int) Math.min(100, 100 * done / total));
+			}
+			
+			@Override
+			public boolean isCancelled() {
+				return cancelRequested;
+			}
+		};
+		
+		/**
+		 * Creates a task and turns off loading, saving and exporting until it is done.
+		 * 
+		 * @param action - "Load", "Save" or "Export", for messages
+		 * @param message - shown in the progress monitor
+		 * @param total - the number of bytes or events the task will process
+		 * @param countEvents - true to measure progress in events instead of bytes
+		 */
+		SongFileTask(String action, String message, long total, boolean countEvents) {
+			this.action = action;
+			this.total = Math.max(1, total);
+			this.countEvents = countEvents;
+			monitor = new ProgressMonitor(SoundSketcherFrame.this, message, null, 0, 100);
+			addPropertyChangeListener(e -> {
+				if ("progress".equals(e.getPropertyName()))
+					monitor.setProgress(getProgress());
+				if (monitor.isCanceled())
+					cancelRequested = true;
+			});
+			fileTaskRunning = true;
+			loadMenuItem.setEnabled(false);
+			saveMenuItem.setEnabled(false);
+			exportMenuItem.setEnabled(false);
+			exportMidiMenuItem.setEnabled(false);
+		}
+		
+		/**
+		 * Called on the event dispatch thread when the task is done.
+		 * 
+		 * @param result - the result of doInBackground, or null if the task failed or was cancelled
+		 */
+		protected abstract void finished(Integer result);
+		
+		@Override
+		protected void done() {
+			monitor.close();
+			fileTaskRunning = false;
+			loadMenuItem.setEnabled(true);
+			saveMenuItem.setEnabled(true);
+			exportMenuItem.setEnabled(true);
+			exportMidiMenuItem.setEnabled(true);
+			Integer result = null;
+			try {
+				result = get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof InterruptedIOException) {
+					JOptionPane.showMessageDialog(SoundSketcherFrame.this, action + " cancelled");
+				} else {
+					e.getCause().printStackTrace();
+					JOptionPane.showMessageDialog(SoundSketcherFrame.this, action + " failed: " + e.getCause().getMessage());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finished(result);
+		}
+	}
+	
 	/**
 	 * Updates the tabbed pane after loading a file.
 	 */
@@ -241,6 +643,8 @@ public class SoundSketcherFrame extends JFrame implements ActionListener, Change
 			for ( int i = 0; i < trackPanels.size(); i++) {
 				trackPanels.get(i).setTempo(tempo);
 			}
+			if (journal != null && !tempoSlider.getValueIsAdjusting())
+				journal.record(EditJournal.TEMPO, 0, tempo, 0, 0);
 		} else if (e.getSource() == tracksPane && tracksPane.getSelectedIndex() == tracksPane.getTabCount() -1 && !addingTrack) {
 			addTrack();
 		}
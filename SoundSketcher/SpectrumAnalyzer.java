@@ -0,0 +1,124 @@
+package assign11;
+
+/**
+ * Computes the frequency spectrum of the most recent audio in an AudioRingBuffer.
+ * The FFT works in place on arrays allocated once in the constructor, so
+ * analyzing does not allocate any memory.
+ *
+ * @version 2026-10-19
+ */
+public class SpectrumAnalyzer {
+	private final int size;
+	private final float[] real, imaginary, right;
+	private final float[] window;
+	private final float[] cosTable, sinTable;
+	private final int[] reversed;
+	private final float[] magnitudes;
+
+	/**
+	 * Creates an analyzer.
+	 *
+	 * @param size - number of frames per analysis, a power of two
+	 * @throws IllegalArgumentException if size is not a power of two
+	 */
+	public SpectrumAnalyzer(int size) {
+		if(size < 2 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("FFT size must be a power of two");
+		this.size = size;
+		real = new float[size];
+		imaginary = new float[size];
+		right = new float[size];
+		magnitudes = new float[size / 2];
+
+		// Hann window
+		window = new float[size];
+		for(int i = 0; i < size; i++)
+			window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (size - 1)));
+
+		cosTable = new float[size / 2];
+		sinTable = new float[size / 2];
+		for(int i = 0; i < size / 2; i++) {
+			cosTable[i] = (float) Math.cos(2 * Math.PI * i / size);
+			sinTable[i] = (float) -Math.sin(2 * Math.PI * i / size);
+		}
+
+		int bits = Integer.numberOfTrailingZeros(size);
+		reversed = new int[size];
+		for(int i = 0; i < size; i++)
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+	}
+
+	/**
+	 * Gets the number of frequency bins, which is half the FFT size.
+	 *
+	 * @return number of bins
+	 */
+	public int getBinCount() {
+		return magnitudes.length;
+	}
+
+	/**
+	 * Analyzes the latest audio in a ring buffer.
+	 *
+	 * @param buffer - to read from
+	 * @return true if new magnitudes were computed
+	 */
+	public boolean analyze(AudioRingBuffer buffer) {
+		if(!buffer.readLatest(real, right, size))
+			return false;
+		for(int i = 0; i < size; i++) {
+			real[i] = (real[i] + right[i]) * 0.5f * window[i];
+			imaginary[i] = 0f;
+		}
+		transform();
+		for(int i = 0; i < magnitudes.length; i++) {
+			float magnitude = (float) Math.sqrt(real[i] * real[i] + imaginary[i] * imaginary[i]) * 4f / size;
+			magnitudes[i] = (float) (20.0 * Math.log10(magnitude + 1e-9));
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the level of a frequency bin from the last analysis.
+	 * Bin i covers frequencies around i * sampleRate / size.
+	 *
+	 * @param bin - index of the bin
+	 * @return level in decibels relative to full scale
+	 */
+	public float getMagnitude(int bin) {
+		return magnitudes[bin];
+	}
+
+	/**
+	 * Iterative radix-2 FFT of real and imaginary, in place.
+	 */
+	private void transform() {
+		for(int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if(j > i) {
+				float temp = real[i];
+				real[i] = real[j];
+				real[j] = temp;
+				temp = imaginary[i];
+				imaginary[i] = imaginary[j];
+				imaginary[j] = temp;
+			}
+		}
+		for(int length = 2; length <= size; length <<= 1) {
+			int half = length / 2;
+			int step = size / length;
+			for(int start = 0; start < size; start += length) {
+				for(int k = 0; k < half; k++) {
+					float wr = cosTable[k * step], wi = sinTable[k * step];
+					int a = start + k, b = a + half;
+					float tr = real[b] * wr - imaginary[b] * wi;
+					float ti = real[b] * wi + imaginary[b] * wr;
+					real[b] = real[a] - tr;
+					imaginary[b] = imaginary[a] - ti;
+					real[a] += tr;
+					imaginary[a] += ti;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package assign11;
+
+import java.util.ArrayList;
+
+/**
+ * Anything that can play the notes and channel changes produced by the
+ * sequencers and editors. Events and editors only talk to this interface,
+ * so the sound can come from the Java Sound synthesizer, an external midi
+ * device, the built-in software synthesizer, or nowhere at all.
+ *
+ * Channels are numbered 0 to 15 and pitches 0 to 127, as in midi.
+ *
+ * @version 2026-10-19
+ */
+public interface SynthesizerBackend {
+
+	/**
+	 * Gets a list of available instrument names.
+	 * The index of a name is the index used by setInstrument.
+	 *
+	 * @return list of instrument names
+	 */
+	ArrayList<String> getInstrumentNames();
+
+	/**
+	 * Gets a list of valid channel indices.
+	 *
+	 * @return list of valid indices
+	 */
+	ArrayList<Integer> getValidChannelIndices();
+
+	/**
+	 * Sets the current instrument on a given channel.
+	 *
+	 * @param channel - index of channel
+	 * @param instrumentIndex - index of instrument in the list
+	 * @throws IllegalArgumentException if either index is invalid
+	 */
+	void setInstrument(int channel, int instrumentIndex);
+
+	/**
+	 * Sets the volume of a given channel.
+	 * The value is clamped between 0 and 127.
+	 *
+	 * @param channel - to set the volume of
+	 * @param volume value that will be clamped between 0 and 127
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	void setVolume(int channel, int volume);
+
+	/**
+	 * Returns the current volume value for a given channel.
+	 *
+	 * @param channel - to get the volume of
+	 * @return volume value on that channel
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	int getVolume(int channel);
+
+	/**
+	 * Mutes or unmutes a given channel.
+	 *
+	 * @param channel - to mute
+	 * @param mute - true to mute, false to unmute
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	void setMute(int channel, boolean mute);
+
+	/**
+	 * Sets a pitch bend on a given channel.
+	 * The amount is clamped between -8192 and 8191, with 0 being the center.
+	 *
+	 * @param channel - to bend the pitch of
+	 * @param amount - to bend the pitch between -8192 and 8191 (0 is center)
+	 * @throws IllegalArgumentException if channel index is invalid
+	 */
+	void setPitchBend(int channel, int amount);
+
+	/**
+	 * Begins playing a given pitch on the given channel.
+	 * The note will not end until noteOff is called for the same pitch and channel.
+	 *
+	 * @param channel - to use
+	 * @param pitch - to turn on
+	 */
+	void noteOn(int channel, int pitch);
+
+	/**
+	 * Stops playing a given pitch on a given channel.
+	 * If the pitch was not already playing, nothing happens.
+	 *
+	 * @param channel - to use
+	 * @param pitch - to turn off
+	 */
+	void noteOff(int channel, int pitch);
+
+	/**
+	 * Turns off all notes that are playing on all channels.
+	 */
+	void allNotesOff();
+
+	/**
+	 * Creates a backend from a short name. This is used to choose the
+	 * backend with the soundsketcher.synth system property.
+	 * <ul>
+	 * <li>"javasound" - the Java Sound synthesizer (the default)</li>
+	 * <li>"software" - the built-in SoftwareSynthesizer</li>
+	 * <li>"null" - discards everything</li>
+	 * <li>"record" - records every message into a RecordingBackend</li>
+	 * <li>"midi:name" - an external midi output whose name contains name</li>
+	 * </ul>
+	 * Unknown names give the Java Sound synthesizer.
+	 *
+	 * @param name - of the backend
+	 * @return a new backend
+	 */
+	static SynthesizerBackend create(String name) {
+		if(name == null)
+			return new SimpleSynthesizer();
+		if(name.equals("software")) {
+			SoftwareSynthesizer software = new SoftwareSynthesizer();
+			software.open();
+			return software;
+		}
+		if(name.equals("null"))
+			return new RecordingBackend(0);
+		if(name.equals("record"))
+			return new RecordingBackend(RecordingBackend.DEFAULT_CAPACITY);
+		if(name.startsWith("midi:"))
+			return new MidiOutBackend(name.substring(5));
+		return new SimpleSynthesizer();
+	}
+}
@@ -1,7 +1,7 @@
 /**
  * The TrackEditor class provides a graphical interface for editing a specific audio track.
  * It extends GridCanvas to allow users to visually create, modify, and manage note events
- * on a track, integrating with a SimpleSynthesizer and SimpleSequencer for playback.
+ * on a track, integrating with a SynthesizerBackend and SimpleSequencer for playback.
  * This editor allows for pitch manipulation, instrument selection, volume control, and more,
  * providing an intuitive interface for music composition.
  * @version 11/22/2024
@@ -9,16 +9,22 @@
  */
 package assign11;
 
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Set;
 import java.util.Vector;
 
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
 public class TrackEditor extends GridCanvas {
-    private SimpleSynthesizer synthesizer;
+    private SynthesizerBackend synthesizer;
     private SimpleSequencer sequencer;
     private int trackNumber;
     private int width, height, currentPitch;
+    private EditJournal journal;
 
     /**
      * Constructs a TrackEditor with the specified dimensions, track number, 
@@ -29,7 +35,7 @@ public class TrackEditor extends GridCanvas {
      * @param trackNumber the track number this editor is associated with
      * @param synthesizer the synthesizer used for audio playback
      */
-    public TrackEditor(int width, int height, int trackNumber, SimpleSynthesizer synthesizer) {
+    public TrackEditor(int width, int height, int trackNumber, SynthesizerBackend synthesizer) {
         super(width, height, 120, 16, 12, 4);
         this.width = width;
         this.height = height;
@@ -41,6 +47,32 @@ public class TrackEditor extends GridCanvas {
 
         setRestrictions(1, -1); // Restrict height to 1, width unrestricted
         this.sequencer = new SimpleSequencer(16);
+        PlayheadTicker.follow(this, sequencer);
+        // The grid shows the sequencer's notes, so it repaints where they change
+        sequencer.addSequenceListener(new SimpleSequencer.SequenceListener() {
+            @Override
+            public void eventAdded(AudioEvent event) {
+                repaintEvent(event);
+            }
+
+            @Override
+            public void eventRemoved(AudioEvent event) {
+                repaintEvent(event);
+            }
+
+            @Override
+            public void sequenceChanged() {
+                repaint();
+            }
+
+            @Override
+            public void loadFailed(IOException e) {
+                // Loading can happen while painting, so the message waits until after
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(TrackEditor.this,
+                        "Couldn't load Track " + trackNumber + ": " + e.getMessage()
+                        + "\nThe song can't be saved until the track is cleared or the song is loaded again."));
+            }
+        });
 
         addMouseListener(this);
         addMouseMotionListener(this);
@@ -119,34 +151,80 @@ public class TrackEditor extends GridCanvas {
         return sequencer;
     }
 
+    /**
+     * Sets the journal that notes added and removed in the editor are
+     * recorded in.
+     *
+     * @param journal the journal, or null to stop recording
+     */
+    public void setJournal(EditJournal journal) {
+        this.journal = journal;
+    }
+
     /**
      * Clears all note events from the sequencer and resets the grid.
      */
-    @Override
     public void clear() {
-        super.clear();
         sequencer.stop();
         sequencer.clear();
     }
 
     /**
      * Sets a sequence of audio events in the editor.
-     * Updates the grid and sequencer with the new events.
+     * Updates the sequencer with the new events, which the grid shows.
+     * A playing sequencer keeps playing.
      *
      * @param newEvents the list of AudioEvent objects to set
      */
     public void setEvents(BetterDynamicArray<AudioEvent> newEvents) {
-        clear();
-        for (AudioEvent event : newEvents) {
+        sequencer.updateSequence(newEvents);
+    }
+
+    /**
+     * Sets events that stay on disk until they are needed. The sequencer
+     * loads the events the first time it needs them, or when the grid is
+     * first painted.
+     *
+     * @param loader     loads the events
+     * @param eventCount the number of events the loader will return
+     */
+    public void setPendingEvents(SimpleSequencer.EventLoader loader, int eventCount) {
+        sequencer.stop();
+        sequencer.setPendingEvents(loader, eventCount);
+    }
+
+    /**
+     * Shows the notes of the sequencer as cells, with the pitch as the row.
+     *
+     * @param firstRow the lowest pitch of the range
+     * @param lastRow  the highest pitch of the range
+     * @param firstCol the first beat of the range
+     * @param lastCol  the last beat of the range
+     * @param visitor  called with the cell of each note in the range
+     */
+    @Override
+    public void forEachCell(int firstRow, int lastRow, int firstCol, int lastCol, CellVisitor visitor) {
+        sequencer.forEachBetween(firstCol, lastCol, firstRow, lastRow, event -> {
             if (event instanceof NoteEvent noteEvent) {
-                addCell(noteEvent.getPitch(), noteEvent.getTime(), 1, noteEvent.getDuration());
+                visitor.visit(noteEvent.getPitch(), noteEvent.getTime(), 1, noteEvent.getDuration());
             }
+        });
+    }
+
+    /**
+     * Repaints the cell of a note that was added or removed.
+     *
+     * @param event the changed event
+     */
+    private void repaintEvent(AudioEvent event) {
+        if (event instanceof NoteEvent noteEvent) {
+            repaintCells(noteEvent.getPitch(), noteEvent.getTime(), 1, noteEvent.getDuration());
         }
-        sequencer.updateSequence(newEvents);
     }
 
     /**
      * Paints the track editor, including the grid and a time indicator.
+     * The time indicator is moved by a PlayheadTicker while the sequence plays.
      *
      * @param g the Graphics object used for painting
      */
@@ -155,13 +233,6 @@ public class TrackEditor extends GridCanvas {
         this.width = getWidth();
         this.height = getHeight();
         super.paintComponent(g);
-
-        // Draw time indicator
-        int timeX = (int) (sequencer.getElapsedTime() * width / sequencer.getLength());
-        g.setColor(Color.RED);
-        g.fillRect(timeX, 0, 2, height);
-
-        repaint(); // Continuously repaint to update the time indicator
     }
 
     /**
@@ -208,22 +279,43 @@ public class TrackEditor extends GridCanvas {
         if (colSpan > 0) {
             NoteEvent note = new NoteEvent(col, "Note", trackNumber, colSpan, row, synthesizer);
             sequencer.add(note);
+            if (journal != null)
+                journal.record(EditJournal.NOTE_ADDED, trackNumber, col, row, colSpan);
         }
         synthesizer.noteOff(trackNumber, currentPitch);
     }
 
     /**
-     * Handles cell removal events. Removes the corresponding NoteEvent from the sequencer.
+     * Handles cell removal events. Removes the NoteEvents with the pitch and
+     * start time of the cell from the sequencer.
      *
      * @param row the row index of the removed cell
      * @param col the column index of the removed cell
      */
     @Override
     public void onCellRemoved(int row, int col) {
-        for (AudioEvent event : sequencer) {
-            if (event instanceof NoteEvent noteEvent && noteEvent.getPitch() == row && noteEvent.getTime() == col) {
-                sequencer.remove(noteEvent);
-            }
+        sequencer.removeAt(col, event -> event instanceof NoteEvent noteEvent && noteEvent.getPitch() == row);
+        if (journal != null)
+            journal.record(EditJournal.NOTE_REMOVED, trackNumber, col, row, 0);
+    }
+
+    /**
+     * Handles the removal of many cells at once. The NoteEvents starting at
+     * the cells are removed from the sequencer in one pass.
+     *
+     * @param starts the row (y) and column (x) of each removed cell
+     */
+    @Override
+    public void onCellsRemoved(Set<Point> starts) {
+        int firstCol = Integer.MAX_VALUE, lastCol = Integer.MIN_VALUE;
+        for (Point start : starts) {
+            firstCol = Math.min(firstCol, start.x);
+            lastCol = Math.max(lastCol, start.x);
         }
+        sequencer.removeStartingBetween(firstCol, lastCol, event -> event instanceof NoteEvent noteEvent
+                && starts.contains(new Point(noteEvent.getTime(), noteEvent.getPitch())));
+        if (journal != null)
+            for (Point start : starts)
+                journal.record(EditJournal.NOTE_REMOVED, trackNumber, start.x, start.y, 0);
     }
 }
@@ -6,33 +6,40 @@ import javax.swing.event.ChangeEvent;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The TrackPanel class provides a graphical user interface for editing and managing 
  * individual tracks in a multi-track audio sequencer. It allows users to control track 
  * properties such as volume, instrument, and length, as well as mute or unmute the track.
+ * A track can also be frozen, which renders it to audio once so playback streams the
+ * audio instead of using the synthesizer.
  */
 public class TrackPanel extends SketchingPanel implements ActionListener, ChangeListener {
 	private TrackEditor trackEditor;
-	private JToggleButton muteButton;
+	private JToggleButton muteButton, freezeButton;
 	private JSpinner lengthSpinner;
 	private JSlider volumeSlider;
-	private JComboBox<String> instrumentBox;
+	private JComboBox<String> instrumentBox, effectBox;
+	private EffectChain effects;
 	private int trackNumber;
 	private int instrumentNumber;
-	private JLabel lengthLabel, volumeLabel, instrumentLabel;
-	private SimpleSynthesizer simpleSynth;
+	private JLabel lengthLabel, volumeLabel, instrumentLabel, effectLabel;
+	private SynthesizerBackend simpleSynth;
+	private EditJournal journal;
 	
 	/**
      * Constructs a new TrackPanel with the specified dimensions and track number.
      * The panel includes controls for volume, instrument selection, length adjustment, 
-     * and mute/unmute functionality. It also features a track editor for audio events.
+     * and mute/unmute functionality. It also features a track editor for audio events,
+     * which scrolls once it is zoomed.
      *
      * @param width       the width of the panel in pixels
      * @param height      the height of the panel in pixels
      * @param trackNumber the number of the track represented by this panel
      */
-	public TrackPanel(int width, int height, int trackNumber, SimpleSynthesizer simpleSynth) {
+	public TrackPanel(int width, int height, int trackNumber, SynthesizerBackend simpleSynth) {
 		setLayout(new BorderLayout());
 		
 		this.trackNumber = trackNumber;
@@ -45,6 +52,10 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
 		muteButton.addActionListener(this);
 		controlPanel.add(muteButton);
 		
+		freezeButton = new JToggleButton("Freeze");
+		freezeButton.addActionListener(this);
+		controlPanel.add(freezeButton);
+		
 		lengthLabel = new JLabel("Track Length (beats)");
 		controlPanel.add(lengthLabel);
 		
@@ -71,8 +82,24 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
 		instrumentBox.addActionListener(this);
 		controlPanel.add(instrumentBox);
 		
+		effects = new EffectChain();
+		effectLabel = new JLabel("Effect: ");
+		controlPanel.add(effectLabel);
+		
+		effectBox = new JComboBox<>(EffectChain.PRESETS) {
+			@Override
+			public String getToolTipText(MouseEvent e) {
+				return getEffectsToolTip();
+			}
+
+			private static final long serialVersionUID = 1L;
+		};
+		ToolTipManager.sharedInstance().registerComponent(effectBox);
+		effectBox.addActionListener(this);
+		controlPanel.add(effectBox);
+		
 		add(controlPanel, BorderLayout.EAST);
-		add(trackEditor, BorderLayout.CENTER);
+		add(new JScrollPane(trackEditor), BorderLayout.CENTER);
 	}
 	
 	/**
@@ -95,6 +122,15 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
 		volumeSlider.setValue(volume);
 	}
 	
+	/**
+     * Tells whether the track is muted.
+     *
+     * @return true if the mute button is selected
+     */
+	public boolean isMuted() {
+		return muteButton.isSelected();
+	}
+	
 	 /**
      * Retrieves the currently selected instrument for the track.
      *
@@ -111,10 +147,106 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
      * @param instrument the index of the instrument to set
      */
 	public void setInstrument(int instrument) {
+		if(instrument != instrumentNumber)
+			getSequencer().unfreeze();
 		this.instrumentNumber = instrument;
 		instrumentBox.setSelectedIndex(instrument);
 		trackEditor.setInstrument(instrument);
 	}
+	
+	/**
+	 * Gets the insert effects of this track. These are used when the track
+	 * is frozen or exported; live midi playback has no effects.
+	 *
+	 * @return the track's effect chain
+	 */
+	public EffectChain getEffects() {
+		return effects;
+	}
+
+	/**
+	 * Describes how long the track's effects take while the frozen track
+	 * plays, for the tool tip of the effect box.
+	 *
+	 * @return the tool tip, or null if the track has no effects
+	 */
+	private String getEffectsToolTip() {
+		if (effects.isEmpty())
+			return null;
+		if (!getSequencer().isFrozen() || getSequencer().getFrozenTrack().getEffects() == null)
+			return "Effects are heard when the track is frozen or exported";
+		return getSequencer().getFrozenTrack().getEffects().getCpuToolTip("CPU time while playing:");
+	}
+
+	/**
+	 * Sets the journal that edits of this track are recorded in.
+	 *
+	 * @param journal the journal, or null to stop recording
+	 */
+	public void setJournal(EditJournal journal) {
+		this.journal = journal;
+		trackEditor.setJournal(journal);
+	}
+
+	/**
+	 * Gets the meter that measures this track's audio. A frozen track is
+	 * measured as it streams; otherwise the track's channel of the live
+	 * software synthesizer is measured.
+	 *
+	 * @param liveSynth the software synthesizer playing live, or null if there is none
+	 * @return the track's meter, or null if its audio can't be measured
+	 */
+	public LevelMeter getMeter(SoftwareSynthesizer liveSynth) {
+		if (getSequencer().isFrozen())
+			return getSequencer().getFrozenTrack().getMeter();
+		if (liveSynth == null || trackNumber >= SoftwareSynthesizer.CHANNEL_COUNT)
+			return null;
+		return liveSynth.getChannelMeter(trackNumber);
+	}
+
+	/**
+	 * Renders the track to audio in the background and freezes its sequencer
+	 * with the result. If the track is edited while rendering, the result is
+	 * thrown away and the track stays unfrozen.
+	 */
+	public void freeze() {
+		SimpleSequencer sequencer = getSequencer();
+		AudioEvent[] events = sequencer.toArray();
+		int length = sequencer.getLength();
+		double speed = sequencer.getSpeedFactor();
+		int instrument = instrumentNumber;
+		int modificationCount = sequencer.getModificationCount();
+		freezeButton.setEnabled(false);
+		
+		new SwingWorker<RenderedTrack, Void>() {
+			@Override
+			protected RenderedTrack doInBackground() throws IOException {
+				return TrackRenderer.render(events, length, speed, instrument);
+			}
+			
+			@Override
+			protected void done() {
+				freezeButton.setEnabled(true);
+				try {
+					RenderedTrack track = get();
+					if(sequencer.getModificationCount() != modificationCount || instrument != instrumentNumber
+							|| !freezeButton.isSelected()) {
+						track.dispose();
+						freezeButton.setSelected(false);
+						return;
+					}
+					track.setGain(getVolume() / 127f);
+					track.setMute(muteButton.isSelected());
+					track.setEffects(effects.copy());
+					sequencer.freeze(track, () -> SwingUtilities.invokeLater(() -> freezeButton.setSelected(false)));
+				} catch (InterruptedException | ExecutionException e) {
+					System.out.println("Couldn't freeze the track");
+					e.printStackTrace();
+					freezeButton.setSelected(false);
+				}
+			}
+		}.execute();
+	}
 
 	/**
      * Handles changes to the spinner and slider components. When the track 
@@ -127,6 +259,14 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
 		if (e.getSource() == lengthSpinner) {
 			int length = (Integer) lengthSpinner.getValue();
 			setLength(length);
+			if (journal != null)
+				journal.record(EditJournal.TRACK_LENGTH, trackNumber, length, 0, 0);
+		} else if (e.getSource() == volumeSlider) {
+			trackEditor.setVolume(volumeSlider.getValue());
+			if (getSequencer().isFrozen())
+				getSequencer().getFrozenTrack().setGain(volumeSlider.getValue() / 127f);
+			if (journal != null && !volumeSlider.getValueIsAdjusting())
+				journal.record(EditJournal.VOLUME, trackNumber, volumeSlider.getValue(), 0, 0);
 		}
 	}
 
@@ -144,8 +284,21 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
 			} else { 
 				trackEditor.setMute(false);
 			}
+			if (getSequencer().isFrozen())
+				getSequencer().getFrozenTrack().setMute(muteButton.isSelected());
+		} else if (e.getSource() == effectBox) {
+			effects = EffectChain.preset((String) effectBox.getSelectedItem(), SoftwareSynthesizer.SAMPLE_RATE);
+			if (getSequencer().isFrozen())
+				getSequencer().getFrozenTrack().setEffects(effects.copy());
+		} else if (e.getSource() == freezeButton) {
+			if (freezeButton.isSelected())
+				freeze();
+			else
+				getSequencer().unfreeze();
 		} else if (e.getSource() == instrumentBox) {
 			int selectedInstrument = instrumentBox.getSelectedIndex();
+			if (journal != null && selectedInstrument != instrumentNumber)
+				journal.record(EditJournal.INSTRUMENT, trackNumber, selectedInstrument, 0, 0);
 			setInstrument(selectedInstrument);
 			requestFocus();
 		}
@@ -183,6 +336,17 @@ public class TrackPanel extends SketchingPanel implements ActionListener, Change
 		trackEditor.setEvents(events);
 	}
 
+	/**
+     * Sets events for this track that stay on disk until they are needed:
+     * when the track's tab is opened or the track is played.
+     *
+     * @param loader     loads the events
+     * @param eventCount the number of events the loader will return
+     */
+	public void setPendingEvents(SimpleSequencer.EventLoader loader, int eventCount) {
+		trackEditor.setPendingEvents(loader, eventCount);
+	}
+
 	 /**
      * Clears all audio events from the track. This resets the track editor 
      * to an empty state, removing any existing events or patterns.
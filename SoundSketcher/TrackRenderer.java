@@ -0,0 +1,85 @@
+package assign11;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Utility class for rendering a track's notes to audio without playing it.
+ * A private SoftwareSynthesizer is used, so rendering can happen on any
+ * thread while the live synthesizer keeps playing.
+ *
+ * The track's instrument index is mapped onto the software synthesizer's
+ * instruments, so a rendered track can sound different from the midi
+ * synthesizer on machines that have one.
+ */
+public class TrackRenderer {
+
+	/**
+	 * Converts a time in tics to a frame number, matching the way
+	 * SimpleSequencer converts tics to milliseconds.
+	 *
+	 * @param tics - time to convert
+	 * @param ticsPerMillisecond - speed factor of the sequencer
+	 * @return frame at that time
+	 */
+	public static long ticsToFrames(int tics, double ticsPerMillisecond) {
+		return (long) ((int) (tics / ticsPerMillisecond) * (double) SoftwareSynthesizer.SAMPLE_RATE / 1000.0);
+	}
+
+	/**
+	 * Renders the notes of a track to a RenderedTrack whose length matches
+	 * the track length. Events other than notes are ignored.
+	 *
+	 * @param events - of the track
+	 * @param lengthTics - length of the track in tics
+	 * @param ticsPerMillisecond - speed factor of the track's sequencer
+	 * @param instrument - instrument index of the track
+	 * @return the rendered audio
+	 * @throws IOException if a large track can't be mapped to a temporary file
+	 */
+	public static RenderedTrack render(AudioEvent[] events, int lengthTics, double ticsPerMillisecond, int instrument) throws IOException {
+		SoftwareSynthesizer synth = new SoftwareSynthesizer();
+		synth.setInstrument(0, Math.max(0, instrument) % synth.getInstrumentNames().size());
+
+		// Pack every note on and off as frame << 9 | on << 8 | pitch, so that
+		// sorting puts them in time order with note offs before note ons.
+		int noteCount = 0;
+		for(AudioEvent event : events)
+			if(event instanceof NoteEvent)
+				noteCount++;
+		long[] changes = new long[noteCount * 2];
+		int index = 0;
+		for(AudioEvent event : events) {
+			if(event instanceof NoteEvent note) {
+				int pitch = note.getPitch() & 0xFF;
+				changes[index++] = ticsToFrames(note.getTime(), ticsPerMillisecond) << 9 | 1 << 8 | pitch;
+				changes[index++] = ticsToFrames(note.getTime() + note.getDuration(), ticsPerMillisecond) << 9 | pitch;
+			}
+		}
+		Arrays.sort(changes);
+
+		RenderedTrack track = RenderedTrack.allocate(ticsToFrames(lengthTics, ticsPerMillisecond));
+		float[] left = new float[SoftwareSynthesizer.BLOCK_SIZE];
+		float[] right = new float[SoftwareSynthesizer.BLOCK_SIZE];
+		int total = track.getFrameCount();
+		int frame = 0;
+		int next = 0;
+		while(frame < total) {
+			while(next < changes.length && (changes[next] >> 9) <= frame) {
+				int pitch = (int) (changes[next] & 0xFF);
+				if((changes[next] & (1 << 8)) != 0)
+					synth.noteOn(0, pitch);
+				else
+					synth.noteOff(0, pitch);
+				next++;
+			}
+			int block = Math.min(SoftwareSynthesizer.BLOCK_SIZE, total - frame);
+			if(next < changes.length)
+				block = (int) Math.min(block, (changes[next] >> 9) - frame);
+			synth.render(left, right, block);
+			track.write(frame, left, right, block);
+			frame += block;
+		}
+		return track;
+	}
+}
@@ -0,0 +1,390 @@
+package assign11;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Sits between the sequencers and a SynthesizerBackend and keeps track of
+ * every note that is currently sounding. It enforces a limit on the total
+ * number of notes and on the number of notes per channel. When a limit
+ * would be exceeded, one playing note is stopped first ("stolen") according
+ * to the steal policy. Ties are always broken by age, so the same song
+ * steals the same notes every time it is played.
+ *
+ * @version 2026-10-19
+ */
+public class VoiceManager implements SynthesizerBackend {
+	public static final int DEFAULT_VOICE_LIMIT = 64;
+	// Channel limit of a channel that may use all of the voices
+	private static final int NO_CHANNEL_LIMIT = -1;
+
+	/**
+	 * How to choose the note to stop when a limit is reached.
+	 */
+	public enum StealPolicy {
+		/** Stop the note that started first. */
+		OLDEST,
+		/** Stop the note on the quietest channel, the oldest one if several are equal. */
+		QUIETEST
+	}
+
+	private final SynthesizerBackend backend;
+	private StealPolicy policy;
+	private int voiceLimit;
+	private final int[] channelLimits;
+
+	// Sounding notes, kept packed at the front of these arrays
+	private int[] voiceChannel;
+	private int[] voicePitch;
+	private long[] voiceOrder;
+	private int activeCount;
+	private final int[] channelCounts;
+	private long noteCounter;
+
+	// Channel state needed to judge loudness
+	private final int[] volumes;
+	private final boolean[] muted;
+
+	// Metrics
+	private int peakCount;
+	private long stolenCount;
+
+	/**
+	 * Creates a voice manager in front of a backend. Every channel may use
+	 * all of the voices until a channel limit is set.
+	 *
+	 * @param backend - that plays the notes
+	 * @param voiceLimit - maximum number of notes sounding at once
+	 * @throws IllegalArgumentException if voiceLimit is not positive
+	 */
+	public VoiceManager(SynthesizerBackend backend, int voiceLimit) {
+		if(voiceLimit < 1)
+			throw new IllegalArgumentException("The voice limit must be positive");
+		this.backend = backend;
+		this.voiceLimit = voiceLimit;
+		this.policy = StealPolicy.OLDEST;
+		voiceChannel = new int[voiceLimit];
+		voicePitch = new int[voiceLimit];
+		voiceOrder = new long[voiceLimit];
+		channelLimits = new int[16];
+		Arrays.fill(channelLimits, NO_CHANNEL_LIMIT);
+		channelCounts = new int[16];
+		volumes = new int[16];
+		muted = new boolean[16];
+		ArrayList<Integer> validChannels = backend.getValidChannelIndices();
+		for(int i = 0; i < 16; i++) {
+			volumes[i] = validChannels.contains(i) ? backend.getVolume(i) : 0;
+		}
+	}
+
+	/**
+	 * Gets the backend that plays the notes.
+	 *
+	 * @return the wrapped backend
+	 */
+	public SynthesizerBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Sets how notes are chosen for stealing.
+	 *
+	 * @param policy - the steal policy
+	 */
+	public synchronized void setStealPolicy(StealPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets how notes are chosen for stealing.
+	 *
+	 * @return the steal policy
+	 */
+	public synchronized StealPolicy getStealPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Sets the maximum number of notes sounding at once across all channels.
+	 * If more notes are playing, notes are stolen until the limit is met.
+	 * Channels without a channel limit may use all of the new voices.
+	 *
+	 * @param limit - maximum number of notes
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public synchronized void setVoiceLimit(int limit) {
+		if(limit < 1)
+			throw new IllegalArgumentException("The voice limit must be positive");
+		while(activeCount > limit)
+			stopVoice(chooseVictim(-1));
+		if(limit > voiceChannel.length) {
+			voiceChannel = Arrays.copyOf(voiceChannel, limit);
+			voicePitch = Arrays.copyOf(voicePitch, limit);
+			voiceOrder = Arrays.copyOf(voiceOrder, limit);
+		}
+		voiceLimit = limit;
+	}
+
+	/**
+	 * Gets the maximum number of notes sounding at once.
+	 *
+	 * @return the voice limit
+	 */
+	public synchronized int getVoiceLimit() {
+		return voiceLimit;
+	}
+
+	/**
+	 * Sets the maximum number of notes sounding at once on one channel.
+	 *
+	 * @param channel - to limit
+	 * @param limit - maximum number of notes on the channel
+	 * @throws IllegalArgumentException if the channel is invalid or limit is not positive
+	 */
+	public synchronized void setChannelLimit(int channel, int limit) {
+		checkChannel(channel);
+		if(limit < 1)
+			throw new IllegalArgumentException("The voice limit must be positive");
+		while(channelCounts[channel] > limit)
+			stopVoice(chooseVictim(channel));
+		channelLimits[channel] = limit;
+	}
+
+	/**
+	 * Gets the maximum number of notes sounding at once on one channel.
+	 * A channel without a channel limit may use all of the voices.
+	 *
+	 * @param channel - to check
+	 * @return the channel's voice limit
+	 * @throws IllegalArgumentException if the channel is invalid
+	 */
+	public synchronized int getChannelLimit(int channel) {
+		checkChannel(channel);
+		if(channelLimits[channel] == NO_CHANNEL_LIMIT)
+			return voiceLimit;
+		return channelLimits[channel];
+	}
+
+	/**
+	 * Removes the limit of one channel, so it may use all of the voices again.
+	 *
+	 * @param channel - to stop limiting
+	 * @throws IllegalArgumentException if the channel is invalid
+	 */
+	public synchronized void clearChannelLimit(int channel) {
+		checkChannel(channel);
+		channelLimits[channel] = NO_CHANNEL_LIMIT;
+	}
+
+	/**
+	 * Gets the number of notes currently sounding.
+	 *
+	 * @return number of active voices
+	 */
+	public synchronized int getActiveVoiceCount() {
+		return activeCount;
+	}
+
+	/**
+	 * Gets the number of notes currently sounding on a channel.
+	 *
+	 * @param channel - to check
+	 * @return number of active voices on the channel
+	 * @throws IllegalArgumentException if the channel is invalid
+	 */
+	public synchronized int getActiveVoiceCount(int channel) {
+		checkChannel(channel);
+		return channelCounts[channel];
+	}
+
+	/**
+	 * Gets the largest number of notes that have sounded at once
+	 * since the last call to resetMetrics.
+	 *
+	 * @return peak number of active voices
+	 */
+	public synchronized int getPeakVoiceCount() {
+		return peakCount;
+	}
+
+	/**
+	 * Gets the number of notes that were stopped early to stay under
+	 * a limit since the last call to resetMetrics.
+	 *
+	 * @return number of stolen voices
+	 */
+	public synchronized long getStolenVoiceCount() {
+		return stolenCount;
+	}
+
+	/**
+	 * Resets the peak and stolen voice counts.
+	 */
+	public synchronized void resetMetrics() {
+		peakCount = activeCount;
+		stolenCount = 0;
+	}
+
+	/**
+	 * Starts a note, stealing another note first if a limit is reached.
+	 * Starting a pitch that is already sounding on the channel restarts it.
+	 */
+	@Override
+	public synchronized void noteOn(int channel, int pitch) {
+		if(channel < 0 || channel > 15)
+			return;
+		int existing = findVoice(channel, pitch);
+		if(existing >= 0)
+			stopVoice(existing);
+		else if(channelLimits[channel] != NO_CHANNEL_LIMIT && channelCounts[channel] >= channelLimits[channel]) {
+			stopVoice(chooseVictim(channel));
+			stolenCount++;
+		} else if(activeCount >= voiceLimit) {
+			stopVoice(chooseVictim(-1));
+			stolenCount++;
+		}
+
+		voiceChannel[activeCount] = channel;
+		voicePitch[activeCount] = pitch;
+		voiceOrder[activeCount] = noteCounter++;
+		activeCount++;
+		channelCounts[channel]++;
+		peakCount = Math.max(peakCount, activeCount);
+		backend.noteOn(channel, pitch);
+	}
+
+	@Override
+	public synchronized void noteOff(int channel, int pitch) {
+		int voice = findVoice(channel, pitch);
+		if(voice >= 0)
+			stopVoice(voice);
+		else
+			backend.noteOff(channel, pitch);
+	}
+
+	@Override
+	public synchronized void allNotesOff() {
+		activeCount = 0;
+		for(int i = 0; i < 16; i++)
+			channelCounts[i] = 0;
+		backend.allNotesOff();
+	}
+
+	/**
+	 * Finds the voice playing a pitch on a channel.
+	 *
+	 * @param channel - of the note
+	 * @param pitch - of the note
+	 * @return index of the voice, or -1 if the note isn't sounding
+	 */
+	private int findVoice(int channel, int pitch) {
+		for(int i = 0; i < activeCount; i++)
+			if(voiceChannel[i] == channel && voicePitch[i] == pitch)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Chooses the voice to steal according to the policy.
+	 *
+	 * @param channel - to steal from, or -1 for any channel
+	 * @return index of the voice to steal
+	 */
+	private int chooseVictim(int channel) {
+		int victim = -1;
+		for(int i = 0; i < activeCount; i++) {
+			if(channel >= 0 && voiceChannel[i] != channel)
+				continue;
+			if(victim < 0) {
+				victim = i;
+				continue;
+			}
+			if(policy == StealPolicy.QUIETEST) {
+				int loudness = loudnessOf(voiceChannel[i]);
+				int victimLoudness = loudnessOf(voiceChannel[victim]);
+				if(loudness != victimLoudness) {
+					if(loudness < victimLoudness)
+						victim = i;
+					continue;
+				}
+			}
+			if(voiceOrder[i] < voiceOrder[victim])
+				victim = i;
+		}
+		return victim;
+	}
+
+	/**
+	 * Gets how loud notes on a channel are. Every note has the same velocity,
+	 * so this only depends on the channel volume and mute.
+	 *
+	 * @param channel - of the note
+	 * @return loudness from 0 to 127
+	 */
+	private int loudnessOf(int channel) {
+		return muted[channel] ? 0 : volumes[channel];
+	}
+
+	/**
+	 * Stops a voice and removes it by moving the last voice into its place.
+	 *
+	 * @param voice - index of the voice to stop
+	 */
+	private void stopVoice(int voice) {
+		int channel = voiceChannel[voice];
+		backend.noteOff(channel, voicePitch[voice]);
+		channelCounts[channel]--;
+		activeCount--;
+		voiceChannel[voice] = voiceChannel[activeCount];
+		voicePitch[voice] = voicePitch[activeCount];
+		voiceOrder[voice] = voiceOrder[activeCount];
+	}
+
+	@Override
+	public ArrayList<String> getInstrumentNames() {
+		return backend.getInstrumentNames();
+	}
+
+	@Override
+	public ArrayList<Integer> getValidChannelIndices() {
+		return backend.getValidChannelIndices();
+	}
+
+	@Override
+	public void setInstrument(int channel, int instrumentIndex) {
+		backend.setInstrument(channel, instrumentIndex);
+	}
+
+	@Override
+	public synchronized void setVolume(int channel, int volume) {
+		backend.setVolume(channel, volume);
+		volumes[channel] = Math.max(0, Math.min(127, volume));
+	}
+
+	@Override
+	public int getVolume(int channel) {
+		return backend.getVolume(channel);
+	}
+
+	@Override
+	public synchronized void setMute(int channel, boolean mute) {
+		backend.setMute(channel, mute);
+		muted[channel] = mute;
+	}
+
+	@Override
+	public void setPitchBend(int channel, int amount) {
+		backend.setPitchBend(channel, amount);
+	}
+
+	/**
+	 * Checks that a channel index is valid.
+	 *
+	 * @param channel - index to check
+	 * @throws IllegalArgumentException if the channel index is invalid
+	 */
+	private static void checkChannel(int channel) {
+		if(channel < 0 || channel > 15)
+			throw new IllegalArgumentException("Invalid channel");
+	}
+}
@@ -0,0 +1,83 @@
+package assign11;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes 16 bit stereo audio to a WAV file a block at a time, so a whole
+ * song never has to be held in memory. The number of frames must be known
+ * when the file is created, since it is part of the WAV header.
+ *
+ * @version 2026-10-19
+ */
+public class WavWriter implements AudioFileWriter {
+	private final OutputStream out;
+	private final byte[] block;
+
+	/**
+	 * Creates a WAV file and writes its header.
+	 *
+	 * @param file - to write
+	 * @param frames - number of stereo frames that will be written
+	 * @throws IOException if the file can't be written
+	 */
+	public WavWriter(File file, long frames) throws IOException {
+		out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		block = new byte[SoftwareSynthesizer.BLOCK_SIZE * 4];
+		int sampleRate = (int) SoftwareSynthesizer.SAMPLE_RATE;
+		long dataBytes = frames * 4;
+		if(dataBytes + 36 > 0xFFFFFFFFL)
+			throw new IOException("Song is too long for a WAV file");
+
+		writeAscii("RIFF");
+		writeInt((int) (36 + dataBytes));
+		writeAscii("WAVE");
+		writeAscii("fmt ");
+		writeInt(16);            // size of the format chunk
+		writeShort(1);           // PCM
+		writeShort(2);           // channels
+		writeInt(sampleRate);
+		writeInt(sampleRate * 4); // bytes per second
+		writeShort(4);           // bytes per frame
+		writeShort(16);          // bits per sample
+		writeAscii("data");
+		writeInt((int) dataBytes);
+	}
+
+	@Override
+	public void write(float[] left, float[] right, int frames) throws IOException {
+		int b = 0;
+		for(int i = 0; i < frames; i++) {
+			int l = SoftwareSynthesizer.toPcm(left[i]);
+			int r = SoftwareSynthesizer.toPcm(right[i]);
+			block[b++] = (byte) l;
+			block[b++] = (byte) (l >> 8);
+			block[b++] = (byte) r;
+			block[b++] = (byte) (r >> 8);
+		}
+		out.write(block, 0, b);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeAscii(String text) throws IOException {
+		for(int i = 0; i < text.length(); i++)
+			out.write(text.charAt(i));
+	}
+
+	private void writeInt(int value) throws IOException {
+		writeShort(value);
+		writeShort(value >> 16);
+	}
+
+	private void writeShort(int value) throws IOException {
+		out.write(value);
+		out.write(value >> 8);
+	}
+}